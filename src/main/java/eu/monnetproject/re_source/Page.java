@@ -0,0 +1,80 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source;
+
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.URIRef;
+import java.util.List;
+
+/**
+ * A page of the triples of a resource that is too large to be returned in one
+ * response
+ *
+ * @author John McCrae
+ */
+public class Page {
+
+    private final URIRef head;
+    private final List<Resource> resources;
+    private final String next;
+
+    /**
+     * Create a page
+     * @param head The resource as a whole
+     * @param resources The resources of the page that are not linked to from
+     * any other resource of the page (these may include the head)
+     * @param next The token for the next page or null if this is the last page
+     */
+    public Page(URIRef head, List<Resource> resources, String next) {
+        this.head = head;
+        this.resources = resources;
+        this.next = next;
+    }
+
+    /**
+     * The resource as a whole
+     */
+    public URIRef getHead() {
+        return head;
+    }
+
+    /**
+     * The resources of the page that are not linked to from any other
+     * resource of the page, from which all the triples of the page can be
+     * reached
+     */
+    public List<Resource> getResources() {
+        return resources;
+    }
+
+    /**
+     * The token for the next page or null if this is the last page
+     */
+    public String getNext() {
+        return next;
+    }
+}
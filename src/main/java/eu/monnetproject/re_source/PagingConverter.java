@@ -0,0 +1,65 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+
+/**
+ * A converter that can return a large resource in pages, each of which can be
+ * converted without converting the resource before it
+ *
+ * @author John McCrae
+ */
+public interface PagingConverter extends Converter {
+
+    /**
+     * Check if a resource should be returned in pages
+     * @param url The URL of the physical resource
+     * @throws IOException If the resource cannot be accessed
+     * @return true if the resource is supported by this converter and is
+     * large enough to be paged
+     */
+    boolean isPaged(URL url) throws IOException;
+
+    /**
+     * Convert a page of the resource
+     * @param url The URL of the physical resource
+     * @param resourceURI The URI that the resource is to be published at
+     * @param pageToken The token of the page, from {@link Page#getNext()},
+     * or null for the first page
+     * @param servletPrefix The prefix for the server (for example for relating to the ontology)
+     * @throws SourceParseException If the resource exists but could not be parsed
+     * @throws IOException If the resource cannot be accessed
+     * @throws IllegalArgumentException If the token is not valid, e.g.,
+     * because the resource has changed since it was created
+     * @return The page or null if the converter does not support this type of
+     * resource
+     */
+    Page convertPage(URL url, URI resourceURI, String pageToken, String servletPrefix) throws SourceParseException, IOException;
+}
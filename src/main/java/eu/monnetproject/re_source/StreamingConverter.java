@@ -0,0 +1,54 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source;
+
+import eu.monnetproject.re_source.rdf.TripleSink;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+
+/**
+ * A converter that can send triples to a sink as they are produced, rather
+ * than building the whole graph in memory
+ *
+ * @author John McCrae
+ */
+public interface StreamingConverter extends Converter {
+
+    /**
+     * Convert the resource to a stream of triples
+     * @param url The URL of the physical resource
+     * @param resourceURI The URI that the resource is to be published at
+     * @param servletPrefix The prefix for the server (for example for relating to the ontology)
+     * @param sink The sink to send the triples to. This must not be called if
+     * the converter does not support this type of resource
+     * @throws SourceParseException If the resource exists but could not be parsed
+     * @throws IOException If the resource cannot be accessed
+     * @return false if the converter does not support this type of resource
+     */
+    boolean convert(URL url, URI resourceURI, String servletPrefix, TripleSink sink) throws SourceParseException, IOException;
+}
@@ -0,0 +1,155 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A fully serialized response together with its validators and compressed
+ * variants of its body
+ *
+ * @author John McCrae
+ */
+public final class CachedResponse {
+
+    private final String mimeType;
+    private final byte[] body;
+    private final String etag;
+    private final long lastModified;
+    private final String link;
+    private final Map<String, byte[]> encodedBodies;
+    private final long created;
+
+    /**
+     * Create a cached response
+     * @param mimeType The MIME type of the body
+     * @param body The encoded body (not to be modified after creation)
+     * @param etag The (strong) entity tag
+     * @param lastModified The modification time of the resource the body was created from
+     */
+    public CachedResponse(String mimeType, byte[] body, String etag, long lastModified) {
+        this(mimeType, body, etag, lastModified, null, Collections.<String, byte[]>emptyMap(), System.currentTimeMillis());
+    }
+
+    /**
+     * Create a cached response with a Link header
+     * @param mimeType The MIME type of the body
+     * @param body The encoded body (not to be modified after creation)
+     * @param etag The (strong) entity tag
+     * @param lastModified The modification time of the resource the body was created from
+     * @param link The value of the Link header (or null for none)
+     */
+    public CachedResponse(String mimeType, byte[] body, String etag, long lastModified, String link) {
+        this(mimeType, body, etag, lastModified, link, Collections.<String, byte[]>emptyMap(), System.currentTimeMillis());
+    }
+
+    private CachedResponse(String mimeType, byte[] body, String etag, long lastModified, String link, Map<String, byte[]> encodedBodies, long created) {
+        this.mimeType = mimeType;
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.link = link;
+        this.encodedBodies = encodedBodies;
+        this.created = created;
+    }
+
+    /**
+     * Create a copy of this response with an additional content coding
+     * @param encoding The content coding (e.g., "gzip")
+     * @param encodedBody The body in this content coding
+     * @return A new cached response
+     */
+    public CachedResponse withEncodedBody(String encoding, byte[] encodedBody) {
+        final Map<String, byte[]> newBodies = new HashMap<String, byte[]>(encodedBodies);
+        newBodies.put(encoding, encodedBody);
+        return new CachedResponse(mimeType, body, etag, lastModified, link, Collections.unmodifiableMap(newBodies), created);
+    }
+
+    /**
+     * The body in a given content coding. This array must not be modified
+     * @param encoding The content coding (e.g., "gzip")
+     * @return The encoded body or null if it has not been created yet
+     */
+    public byte[] getEncodedBody(String encoding) {
+        return encodedBodies.get(encoding);
+    }
+
+    /**
+     * The total size of the body and all encoded bodies
+     */
+    public long size() {
+        long size = body.length;
+        for (byte[] b : encodedBodies.values()) {
+            size += b.length;
+        }
+        return size;
+    }
+
+    /**
+     * The MIME type of the response
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * The encoded body of the response. This array must not be modified
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * The entity tag of the response (including quotes)
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * The modification time of the resource this response was created from
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * The value of the Link header of the response or null if none
+     */
+    public String getLink() {
+        return link;
+    }
+
+    /**
+     * The time this response was created, in milliseconds since the epoch
+     */
+    public long getCreated() {
+        return created;
+    }
+}
@@ -0,0 +1,222 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletContext;
+
+/**
+ * Watches directory trees for changes and tells the listeners which files have
+ * changed. Changes are collected until no change has been seen for a given
+ * time (or for at most ten times as long), so that a file being written or a
+ * directory being copied results in one notification.
+ *
+ * @author John McCrae
+ */
+public class ChangeMonitor {
+
+    private final WatchService watchService;
+    private final long debounceMillis;
+    private final ServletContext context;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<WatchKey, Path>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+    private Thread thread;
+
+    /**
+     * Create a monitor
+     * @param debounceMillis The time without changes to wait for before the
+     * listeners are notified
+     * @throws IOException If the file system cannot be watched
+     */
+    public ChangeMonitor(long debounceMillis) throws IOException {
+        this(debounceMillis, null);
+    }
+
+    /**
+     * Create a monitor that reports errors to the log of a web application
+     * @param debounceMillis The time without changes to wait for before the
+     * listeners are notified
+     * @param context The servlet context whose log errors are written to, or
+     * null to print them
+     * @throws IOException If the file system cannot be watched
+     */
+    public ChangeMonitor(long debounceMillis, ServletContext context) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debounceMillis = debounceMillis;
+        this.context = context;
+    }
+
+    /**
+     * Watch a directory and all directories below it
+     * @param root The directory
+     * @throws IOException If the directory cannot be watched
+     */
+    public void watch(File root) throws IOException {
+        register(root.toPath().toAbsolutePath());
+    }
+
+    /**
+     * Add a listener
+     */
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener
+     */
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start watching on a background thread
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    monitor();
+                }
+            }, "change-monitor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop watching
+     */
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException x) {
+            log("Could not stop watching", x);
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                directories.put(d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void monitor() {
+        try {
+            while (true) {
+                final Set<File> changed = new LinkedHashSet<File>();
+                process(watchService.take(), changed);
+                // Wait until the changes stop, but do not wait forever if they never do
+                final long deadline = System.currentTimeMillis() + 10 * debounceMillis;
+                WatchKey key;
+                while (System.currentTimeMillis() < deadline
+                        && (key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    process(key, changed);
+                }
+                if (!changed.isEmpty()) {
+                    notifyListeners(changed);
+                }
+            }
+        } catch (InterruptedException x) {
+            // Stopped
+        } catch (ClosedWatchServiceException x) {
+            // Stopped
+        }
+    }
+
+    private void process(WatchKey key, Set<File> changed) {
+        final Path dir = directories.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so anything below the directory may have changed
+                changed.add(dir.toFile());
+                continue;
+            }
+            final Path path = dir.resolve((Path) event.context());
+            changed.add(path.toFile());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(path);
+                } catch (IOException x) {
+                    log("Could not watch " + path, x);
+                }
+            }
+        }
+        if (!key.reset()) {
+            // The directory was deleted
+            directories.remove(key);
+        }
+    }
+
+    private void notifyListeners(Set<File> changed) {
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.changed(changed);
+            } catch (RuntimeException x) {
+                log("Change listener failed", x);
+            }
+        }
+    }
+
+    // Write an error to the servlet log, or print it outside of a container
+    private void log(String message, Throwable x) {
+        if (context != null) {
+            context.log(message, x);
+        } else {
+            System.err.println(message + ": " + x);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import eu.monnetproject.re_source.rdf.ColumnarGraph;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of converted graphs. Graphs are identified by the URL of the legacy
+ * resource and the URI they are published at, and are only returned if the
+ * legacy resource has not been modified since it was converted. Graphs are held
+ * as {@link ColumnarGraph}s and the cache is bounded by their total
+ * {@link ColumnarGraph#footprint() footprint}.
+ *
+ * @author John McCrae
+ */
+public class GraphCache {
+
+    private final LRUCache<String, Entry> cache;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * Create a graph cache
+     * @param maxBytes The maximum number of bytes of graphs to hold in the cache
+     */
+    public GraphCache(long maxBytes) {
+        this.cache = new LRUCache<String, Entry>(maxBytes) {
+            @Override
+            protected long weigh(String key, Entry value) {
+                return value.graph.footprint();
+            }
+        };
+    }
+
+    private static String key(URL url, URI resourceURI) {
+        return url.toString() + " " + resourceURI.toString();
+    }
+
+    /**
+     * Get a graph from the cache
+     * @param url The URL of the legacy resource
+     * @param resourceURI The URI the resource is published at
+     * @param lastModified The current modification time of the legacy resource
+     * @return The graph or null if there is no cached graph for the current
+     * version of this resource
+     */
+    public ColumnarGraph get(URL url, URI resourceURI, long lastModified) {
+        final String key = key(url, resourceURI);
+        final Entry entry = cache.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        } else if (entry.lastModified != lastModified) {
+            misses.incrementAndGet();
+            cache.remove(key);
+            return null;
+        } else {
+            hits.incrementAndGet();
+            return entry.graph;
+        }
+    }
+
+    /**
+     * Put a graph in the cache
+     * @param url The URL of the legacy resource
+     * @param resourceURI The URI the resource is published at
+     * @param lastModified The modification time of the legacy resource when it was converted
+     * @param graph The converted graph
+     */
+    public void put(URL url, URI resourceURI, long lastModified, ColumnarGraph graph) {
+        cache.put(key(url, resourceURI), new Entry(lastModified, graph));
+    }
+
+    /**
+     * Remove all graphs converted from a given legacy resource
+     * @param url The URL of the legacy resource
+     */
+    public void invalidate(URL url) {
+        final String prefix = url.toString() + " ";
+        for (String key : cache.keys()) {
+            if (key.startsWith(prefix)) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Remove all graphs from the cache
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * The number of requests served from the cache
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of requests not served from the cache
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "GraphCache[hits=" + hits + " misses=" + misses + " entries=" + cache.size()
+                + " bytes=" + cache.weight() + "/" + cache.maxWeight() + " evictions=" + cache.evictions() + "]";
+    }
+
+    private static final class Entry {
+
+        final long lastModified;
+        final ColumnarGraph graph;
+
+        Entry(long lastModified, ColumnarGraph graph) {
+            this.lastModified = lastModified;
+            this.graph = graph;
+        }
+    }
+}
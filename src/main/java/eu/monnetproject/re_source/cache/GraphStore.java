@@ -0,0 +1,184 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import eu.monnetproject.re_source.rdf.RDFFactory;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.binary.BinaryGraphReader;
+import eu.monnetproject.re_source.rdf.binary.BinaryGraphWriter;
+import static eu.monnetproject.re_source.util.URLUtils.fileName;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A persistent store of converted graphs, so that legacy resources need not be
+ * re-parsed after a restart. Each graph is stored in its own file in the
+ * format of {@link BinaryGraphWriter}, preceded by the modification time of
+ * the legacy resource and the key of the graph. Files are memory-mapped when
+ * they are read.
+ *
+ * @author John McCrae
+ */
+public class GraphStore {
+
+    private static final String EXTENSION = ".rsg";
+    private final File directory;
+
+    /**
+     * Create a graph store
+     * @param directory The directory to store the graphs in, it is created if
+     * it does not exist
+     * @throws IOException If the directory could not be created
+     */
+    public GraphStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create graph store at " + directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Read a graph from the store
+     * @param url The URL of the legacy resource
+     * @param resourceURI The URI the resource is published at
+     * @param lastModified The current modification time of the legacy resource
+     * @param factory The factory used to create the RDF elements
+     * @return The graph or null if there is no stored graph for the current
+     * version of this resource
+     * @throws IOException If the stored graph could not be read
+     */
+    public URIRef get(URL url, URI resourceURI, long lastModified, RDFFactory factory) throws IOException {
+        final File file = file(url, resourceURI);
+        if (!file.exists()) {
+            return null;
+        }
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getLong() != lastModified) {
+                return null;
+            }
+            final byte[] key = key(url, resourceURI);
+            final int keyLength = buffer.getInt();
+            if (keyLength != key.length || keyLength > buffer.remaining()) {
+                return null;
+            }
+            final byte[] storedKey = new byte[keyLength];
+            buffer.get(storedKey);
+            // Guard against hash collisions
+            if (!Arrays.equals(key, storedKey)) {
+                return null;
+            }
+            return BinaryGraphReader.read(buffer, factory);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write a graph to the store, replacing any previous version
+     * @param url The URL of the legacy resource
+     * @param resourceURI The URI the resource is published at
+     * @param lastModified The modification time of the legacy resource when it was converted
+     * @param graph The converted graph
+     * @throws IOException If the graph could not be written
+     */
+    public void put(URL url, URI resourceURI, long lastModified, URIRef graph) throws IOException {
+        final File file = file(url, resourceURI);
+        final File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream header = new DataOutputStream(buffer);
+        final byte[] key = key(url, resourceURI);
+        header.writeLong(lastModified);
+        header.writeInt(key.length);
+        header.write(key);
+        BinaryGraphWriter.write(graph, buffer);
+        // Write to a temporary file first so readers never see a partial graph
+        final File tmp = File.createTempFile("graph", ".tmp", dir);
+        try {
+            final FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                buffer.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("Could not write " + file);
+            }
+        } finally {
+            if (tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Remove all graphs converted from a given legacy resource
+     * @param url The URL of the legacy resource
+     */
+    public void invalidate(URL url) {
+        final File dir = new File(directory, fileName(url.toString()));
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private File file(URL url, URI resourceURI) {
+        return new File(new File(directory, fileName(url.toString())), fileName(resourceURI.toString()) + EXTENSION);
+    }
+
+    private static byte[] key(URL url, URI resourceURI) {
+        try {
+            return (url.toString() + " " + resourceURI.toString()).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GraphStore[" + directory + "]";
+    }
+}
@@ -0,0 +1,198 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A least-recently used cache, whose capacity is given as a total weight
+ * (e.g., number of triples or bytes) rather than number of entries. By default
+ * every entry has weight 1, subclasses may override {@link #weigh(Object, Object)}.
+ * All methods are thread-safe.
+ *
+ * @author John McCrae
+ */
+public class LRUCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    private final long maxWeight;
+    private long weight = 0;
+    private long hits = 0, misses = 0, evictions = 0;
+
+    /**
+     * Create a cache
+     * @param maxWeight The maximum total weight of entries in the cache, if
+     * this is zero or less nothing is ever cached
+     */
+    public LRUCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * The weight of a single entry
+     * @param key The key
+     * @param value The value
+     * @return The weight (should be positive)
+     */
+    protected long weigh(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Get a value from the cache and mark it as recently used
+     * @param key The key
+     * @return The value or null if the key is not in the cache
+     */
+    public synchronized V get(K key) {
+        final Entry<V> entry = map.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        } else {
+            hits++;
+            return entry.value;
+        }
+    }
+
+    /**
+     * Put a value in the cache, evicting the least recently used entries if
+     * the cache is full
+     * @param key The key
+     * @param value The value
+     * @return true if the value was cached, false if the value is heavier than
+     * the cache
+     */
+    public synchronized boolean put(K key, V value) {
+        final long w = weigh(key, value);
+        remove(key);
+        if (w > maxWeight) {
+            return false;
+        }
+        map.put(key, new Entry<V>(value, w));
+        weight += w;
+        final Iterator<Entry<V>> iter = map.values().iterator();
+        while (weight > maxWeight && iter.hasNext()) {
+            weight -= iter.next().weight;
+            iter.remove();
+            evictions++;
+        }
+        return true;
+    }
+
+    /**
+     * Remove a value from the cache
+     * @param key The key
+     * @return The removed value or null if there was no value for this key
+     */
+    public synchronized V remove(K key) {
+        final Entry<V> entry = map.remove(key);
+        if (entry == null) {
+            return null;
+        } else {
+            weight -= entry.weight;
+            return entry.value;
+        }
+    }
+
+    /**
+     * Remove all values from the cache
+     */
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    /**
+     * Get all keys currently in the cache
+     * @return A copy of the key set, in order from least to most recently used
+     */
+    public synchronized List<K> keys() {
+        return new ArrayList<K>(map.keySet());
+    }
+
+    /**
+     * The number of entries in the cache
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * The total weight of all entries in the cache
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * The maximum weight of this cache
+     */
+    public long maxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * The number of calls to get that returned a value
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * The number of calls to get that did not return a value
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * The number of entries removed to make room for new entries
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "entries=" + map.size() + " weight=" + weight + "/" + maxWeight
+                + " hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+    }
+
+    private static final class Entry<V> {
+
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import static eu.monnetproject.re_source.util.URLUtils.contentLength;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of serialized responses, bounded by the total size of the cached
+ * bodies. This also calculates entity tags for responses, which are derived
+ * from the version of the legacy resource (its modification time and length,
+ * or its content if these are not known) and the identity of the variant
+ * (i.e., the writer, MIME type and server).
+ *
+ * @author John McCrae
+ */
+public class ResponseCache {
+
+    private static final int MAX_DIGESTS = 10000;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final LRUCache<String, CachedResponse> cache;
+    private final LRUCache<String, SourceDigest> digests = new LRUCache<String, SourceDigest>(MAX_DIGESTS);
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), staleHits = new AtomicLong();
+    private final boolean keepStale;
+
+    /**
+     * Create a response cache
+     * @param maxBytes The maximum total size of responses in the cache
+     */
+    public ResponseCache(long maxBytes) {
+        this(maxBytes, false);
+    }
+
+    /**
+     * Create a response cache
+     * @param maxBytes The maximum total size of responses in the cache
+     * @param keepStale If responses for earlier versions of resources are
+     * kept until they are replaced, for {@link #getStale(String, long, long)}
+     */
+    public ResponseCache(long maxBytes, boolean keepStale) {
+        this.keepStale = keepStale;
+        this.cache = new LRUCache<String, CachedResponse>(maxBytes) {
+            @Override
+            protected long weigh(String key, CachedResponse value) {
+                return value.size();
+            }
+        };
+    }
+
+    /**
+     * Create a key for a response
+     * @param path The path of the resource
+     * @param mimeType The MIME type of the response
+     * @param servletPath The URL of the servlet (as the response contains absolute URIs)
+     * @return The key
+     */
+    public static String key(String path, String mimeType, String servletPath) {
+        return path + " " + mimeType + " " + servletPath;
+    }
+
+    /**
+     * Get a response from the cache
+     * @param key The key as created by {@link #key(String, String, String)}
+     * @param lastModified The current modification time of the resource
+     * @return The response or null if there is no response for the current
+     * version of the resource. A response for an earlier version is removed,
+     * unless stale responses are kept
+     */
+    public CachedResponse get(String key, long lastModified) {
+        final CachedResponse response = cache.get(key);
+        if (response == null) {
+            misses.incrementAndGet();
+            return null;
+        } else if (response.getLastModified() != lastModified) {
+            misses.incrementAndGet();
+            if (!keepStale) {
+                cache.remove(key);
+            }
+            return null;
+        } else {
+            hits.incrementAndGet();
+            return response;
+        }
+    }
+
+    /**
+     * Get a response for an earlier version of a resource, to send while the
+     * current version is converted
+     * @param key The key as created by {@link #key(String, String, String)}
+     * @param lastModified The current modification time of the resource
+     * @param maxStale How long after the resource was modified an earlier
+     * version may be sent, in milliseconds
+     * @return The response or null if there is none or the resource was
+     * modified too long ago (or at an unknown time)
+     */
+    public CachedResponse getStale(String key, long lastModified, long maxStale) {
+        final CachedResponse response = cache.get(key);
+        if (response == null || response.getLastModified() == lastModified || lastModified <= 0
+                || System.currentTimeMillis() - lastModified > maxStale) {
+            return null;
+        }
+        staleHits.incrementAndGet();
+        return response;
+    }
+
+    /**
+     * Put a response into the cache
+     * @param key The key as created by {@link #key(String, String, String)}
+     * @param response The response
+     */
+    public void put(String key, CachedResponse response) {
+        cache.put(key, response);
+    }
+
+    /**
+     * Add a body in a content coding to a cached response. The body is only
+     * added if the cached response is still the one it was encoded from, so
+     * that a newer response is not replaced and bodies encoded at the same
+     * time in different codings are all kept
+     * @param key The key as created by {@link #key(String, String, String)}
+     * @param etag The entity tag of the response the body was encoded from
+     * @param encoding The content coding
+     * @param encodedBody The encoded body
+     */
+    public void putEncodedBody(String key, String etag, String encoding, byte[] encodedBody) {
+        // The cache's methods lock the cache, so this makes the update atomic
+        synchronized (cache) {
+            final CachedResponse current = cache.get(key);
+            if (current != null && current.getETag().equals(etag) && current.getEncodedBody(encoding) == null) {
+                cache.put(key, current.withEncodedBody(encoding, encodedBody));
+            }
+        }
+    }
+
+    /**
+     * Remove all responses for a given resource, including its pages and
+     * nodes (or for a directory, all resources below it)
+     * @param path The path of the resource
+     */
+    public void invalidate(String path) {
+        for (String key : cache.keys()) {
+            if (key.startsWith(path + " ") || key.startsWith(path + "?") || key.startsWith(path + "/")) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Remove all responses from the cache
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Calculate a strong entity tag for a variant of a resource. The resource
+     * is only read if its modification time or length is not known, as the
+     * tag is needed before any conversion starts
+     * @param source The legacy resource
+     * @param lastModified The modification time of the legacy resource
+     * @param variant A string identifying the variant (e.g., writer and MIME type)
+     * @return The entity tag (including quotes)
+     * @throws IOException If the resource could not be read
+     */
+    public String etag(URL source, long lastModified, String variant) throws IOException {
+        final MessageDigest md = sha1();
+        md.update(sourceDigest(source, lastModified));
+        try {
+            md.update(variant.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException x) {
+            throw new RuntimeException(x);
+        }
+        final byte[] digest = md.digest();
+        final StringBuilder sb = new StringBuilder(26).append('"');
+        // 96 bits are sufficient to identify a variant
+        for (int i = 0; i < 12; i++) {
+            sb.append(HEX[(digest[i] >> 4) & 0xf]).append(HEX[digest[i] & 0xf]);
+        }
+        return sb.append('"').toString();
+    }
+
+    private byte[] sourceDigest(URL source, long lastModified) throws IOException {
+        final long length = lastModified > 0 ? contentLength(source) : -1;
+        if (length >= 0) {
+            return ByteBuffer.allocate(16).putLong(lastModified).putLong(length).array();
+        }
+        final String key = source.toString();
+        final SourceDigest cached = digests.get(key);
+        if (cached != null && cached.lastModified == lastModified) {
+            return cached.digest;
+        }
+        final MessageDigest md = sha1();
+        final InputStream in = source.openStream();
+        try {
+            final byte[] buf = new byte[32768];
+            int s;
+            while ((s = in.read(buf)) != -1) {
+                md.update(buf, 0, s);
+            }
+        } finally {
+            in.close();
+        }
+        final byte[] digest = md.digest();
+        digests.put(key, new SourceDigest(lastModified, digest));
+        return digest;
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException x) {
+            // Every Java platform is required to support SHA-1
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * The number of requests served from the cache
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of requests not served from the cache
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * The number of responses for earlier versions of resources sent
+     */
+    public long staleHits() {
+        return staleHits.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache[hits=" + hits + " misses=" + misses + " stale=" + staleHits + " entries=" + cache.size()
+                + " bytes=" + cache.weight() + "/" + cache.maxWeight() + " evictions=" + cache.evictions() + "]";
+    }
+
+    private static final class SourceDigest {
+
+        final long lastModified;
+        final byte[] digest;
+
+        SourceDigest(long lastModified, byte[] digest) {
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shares the result of a call between threads that make the same call at the
+ * same time, so that a value that is missing from a cache is only computed
+ * once however many requests ask for it. The first thread runs the call and
+ * the others wait for its result or failure, or join the call to have it
+ * passed to a callback without waiting. Calls are forgotten as soon as they
+ * finish, so this does not cache anything itself.
+ *
+ * @author John McCrae
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Flight<V>> calls = new ConcurrentHashMap<K, Flight<V>>();
+
+    /**
+     * Receives the result of a call that was joined
+     */
+    public interface Callback<V> {
+
+        /**
+         * Called by the thread that ran the call as soon as it finishes, so
+         * this should be quick and must not throw
+         *
+         * @param value The result of the call, or null if it failed
+         * @param failure The exception thrown by the call, or null if it
+         * succeeded
+         */
+        void done(V value, Throwable failure);
+    }
+
+    /**
+     * Run a call, or wait for the same call if another thread is running it
+     *
+     * @param key The key of the call, which should include the version of
+     * the data it is made from
+     * @param call The call
+     * @param timeout How long to wait for a call in another thread
+     * @param unit The unit of the timeout
+     * @return The result of the call
+     * @throws ExecutionException If the call failed, the cause is the
+     * exception it threw
+     * @throws TimeoutException If the call in another thread did not finish
+     * in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public V run(K key, Callable<V> call, long timeout, TimeUnit unit) throws ExecutionException, TimeoutException, InterruptedException {
+        final Flight<V> task = new Flight<V>(call);
+        final Flight<V> running = calls.putIfAbsent(key, task);
+        if (running != null) {
+            return running.get(timeout, unit);
+        }
+        try {
+            task.run();
+        } finally {
+            calls.remove(key, task);
+        }
+        return task.get();
+    }
+
+    /**
+     * Have the result of a call that another thread is running passed to a
+     * callback, rather than waiting for it
+     *
+     * @param key The key of the call
+     * @param callback The callback
+     * @return false if no such call is running, in which case the callback is
+     * never called
+     */
+    public boolean join(K key, Callback<V> callback) {
+        final Flight<V> running = calls.get(key);
+        return running != null && running.join(callback);
+    }
+
+    /**
+     * The number of calls running
+     */
+    public int running() {
+        return calls.size();
+    }
+
+    private static final class Flight<V> extends FutureTask<V> {
+
+        private List<Callback<V>> callbacks = new ArrayList<Callback<V>>();
+
+        Flight(Callable<V> call) {
+            super(call);
+        }
+
+        synchronized boolean join(Callback<V> callback) {
+            if (callbacks == null) {
+                return false;
+            }
+            callbacks.add(callback);
+            return true;
+        }
+
+        @Override
+        protected void done() {
+            final List<Callback<V>> joined;
+            synchronized (this) {
+                joined = callbacks;
+                callbacks = null;
+            }
+            V value = null;
+            Throwable failure = null;
+            try {
+                value = get();
+            } catch (ExecutionException x) {
+                failure = x.getCause();
+            } catch (InterruptedException x) {
+                // Not possible as the call has finished
+                failure = x;
+            }
+            for (Callback<V> callback : joined) {
+                callback.done(value, failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact, immutable representation of a graph. Terms are held in a
+ * {@link TermDictionary} and the triples in three integer columns, sorted by
+ * subject and grouped by property within each subject. Terms are numbered
+ * in the order they are found from the head resource, so the head's triples
+ * come first. A triple costs 12 bytes, compared to several hundred in a graph
+ * of {@link Resource}s, so this is the form in which graphs should be cached.
+ * The graph may be shared between threads.
+ *
+ * @author John McCrae
+ */
+public final class ColumnarGraph {
+
+    private final TermDictionary terms;
+    private final int head;
+    private final int[] subjects;
+    private final int[] properties;
+    private final int[] objects;
+
+    private ColumnarGraph(TermDictionary terms, int head, int[] subjects, int[] properties, int[] objects) {
+        this.terms = terms;
+        this.head = head;
+        this.subjects = subjects;
+        this.properties = properties;
+        this.objects = objects;
+    }
+
+    /**
+     * Create a graph of all triples reachable from a resource
+     * @param headResource The head resource
+     * @return The graph
+     */
+    public static ColumnarGraph fromResource(URIRef headResource) {
+        return fromResources(headResource, Collections.<Resource>emptyList());
+    }
+
+    /**
+     * Create a graph of all triples reachable from a resource or from any of
+     * a number of other resources, e.g., those of a {@link eu.monnetproject.re_source.Page}
+     * that the head does not link to
+     * @param headResource The head resource
+     * @param resources The other resources
+     * @return The graph
+     */
+    public static ColumnarGraph fromResources(URIRef headResource, Collection<? extends Resource> resources) {
+        final TermDictionary.Builder builder = new TermDictionary.Builder();
+        int[] s = new int[64], p = new int[64], o = new int[64];
+        int n = 0;
+        final int head = builder.id(headResource);
+        final Set<Resource> done = new HashSet<Resource>();
+        final LinkedList<Resource> queue = new LinkedList<Resource>();
+        queue.add(headResource);
+        done.add(headResource);
+        for (Resource resource : resources) {
+            if (done.add(resource)) {
+                queue.add(resource);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final Resource resource = queue.poll();
+            final int subject = builder.id(resource);
+            for (Map.Entry<URIRef, Set<Value>> e : resource.getTriples().entrySet()) {
+                final int property = builder.id(e.getKey());
+                for (Value value : e.getValue()) {
+                    if (value instanceof Resource && done.add((Resource) value)) {
+                        queue.add((Resource) value);
+                    }
+                    if (n == s.length) {
+                        s = Arrays.copyOf(s, n * 2);
+                        p = Arrays.copyOf(p, n * 2);
+                        o = Arrays.copyOf(o, n * 2);
+                    }
+                    s[n] = subject;
+                    p[n] = property;
+                    o[n] = builder.id(value);
+                    n++;
+                }
+            }
+        }
+        final TermDictionary terms = builder.build();
+        // Resources are mostly visited in the order they were numbered, but
+        // not if they were first seen as a property or datatype
+        final int[] start = new int[terms.size() + 1];
+        for (int i = 0; i < n; i++) {
+            start[s[i] + 1]++;
+        }
+        for (int i = 0; i < terms.size(); i++) {
+            start[i + 1] += start[i];
+        }
+        final int[] subjects = new int[n], properties = new int[n], objects = new int[n];
+        for (int i = 0; i < n; i++) {
+            final int j = start[s[i]]++;
+            subjects[j] = s[i];
+            properties[j] = p[i];
+            objects[j] = o[i];
+        }
+        return new ColumnarGraph(terms, head, subjects, properties, objects);
+    }
+
+    /**
+     * Create the graph as {@link Resource}s, e.g., for writers that do not
+     * support {@link TripleSink}s
+     * @param factory The factory to create the elements with
+     * @return The head resource
+     */
+    public URIRef toResource(RDFFactory factory) {
+        final Value[] values = new Value[terms.size()];
+        for (int i = 0; i < subjects.length; i++) {
+            ((Resource) value(subjects[i], values, factory)).addTriple(
+                    (URIRef) value(properties[i], values, factory), value(objects[i], values, factory));
+        }
+        return (URIRef) value(head, values, factory);
+    }
+
+    /**
+     * Send all triples of the graph to a sink, in order
+     * @param sink The sink
+     */
+    public void replay(TripleSink sink) {
+        final RDFFactory factory = new RDFFactory();
+        final Value[] values = new Value[terms.size()];
+        sink.startDocument((URIRef) value(head, values, factory), Collections.<String>emptyList());
+        for (int i = 0; i < subjects.length; i++) {
+            sink.triple((Resource) value(subjects[i], values, factory),
+                    (URIRef) value(properties[i], values, factory), value(objects[i], values, factory));
+        }
+        sink.endDocument();
+    }
+
+    private Value value(int id, Value[] values, RDFFactory factory) {
+        if (values[id] == null) {
+            values[id] = terms.value(id, factory);
+        }
+        return values[id];
+    }
+
+    /**
+     * The dictionary of terms in this graph
+     */
+    public TermDictionary terms() {
+        return terms;
+    }
+
+    /**
+     * The term of the head resource
+     */
+    public int head() {
+        return head;
+    }
+
+    /**
+     * The number of triples
+     */
+    public int size() {
+        return subjects.length;
+    }
+
+    /**
+     * The subject of the i-th triple
+     */
+    public int subject(int i) {
+        return subjects[i];
+    }
+
+    /**
+     * The property of the i-th triple
+     */
+    public int property(int i) {
+        return properties[i];
+    }
+
+    /**
+     * The object of the i-th triple
+     */
+    public int object(int i) {
+        return objects[i];
+    }
+
+    /**
+     * Find the triples of a subject
+     * @param subject The term of the subject
+     * @return The index of its first triple, equal to {@link #end(int)} if it
+     * has none
+     */
+    public int start(int subject) {
+        int lo = 0, hi = subjects.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (subjects[mid] < subject) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Find the triples of a subject
+     * @param subject The term of the subject
+     * @return The index after its last triple
+     */
+    public int end(int subject) {
+        return start(subject + 1);
+    }
+
+    /**
+     * The approximate number of bytes used by the graph
+     */
+    public long footprint() {
+        return 64 + terms.footprint() + 12L * subjects.length;
+    }
+}
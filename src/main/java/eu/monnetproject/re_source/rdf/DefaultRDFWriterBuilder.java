@@ -29,13 +29,15 @@ package eu.monnetproject.re_source.rdf;
 import eu.monnetproject.re_source.rdf.html.HTMLWriter;
 import eu.monnetproject.re_source.rdf.turtle.TurtleWriter;
 import eu.monnetproject.re_source.rdf.xml.RDFXMLWriter;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The standard RDF Writer Builder (supports RDF/XML, Turtle and XHTML+RDFa)
  * 
  * @author John McCrae
  */
-public class DefaultRDFWriterBuilder implements RDFWriterBuilder {
+public class DefaultRDFWriterBuilder implements EnumerableRDFWriterBuilder {
 
     @Override
     public RDFWriter getWriter(String mimeType, String localURL) {
@@ -60,5 +62,10 @@ public class DefaultRDFWriterBuilder implements RDFWriterBuilder {
         return "application/rdf+xml";
     }
 
+    @Override
+    public List<String> supportedMIMETypes() {
+        return Arrays.asList("application/rdf+xml", "text/turtle", "application/xhtml+xml", "text/html");
+    }
+
     
 }
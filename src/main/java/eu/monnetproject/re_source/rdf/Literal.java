@@ -26,18 +26,21 @@
  *********************************************************************************/
 package eu.monnetproject.re_source.rdf;
 
+import static eu.monnetproject.re_source.util.EscapingWriter.escapeLiteral;
 import java.net.URI;
 
 /**
- * A literal in the RDF graph
+ * A literal in the RDF graph. Numeric and boolean literals are
+ * {@link PrimitiveLiteral}s.
  * 
  * @author John McCrae
  */
-public final class Literal extends Value {
+public class Literal extends Value {
     private final String value, language;
     private final URI datatype;
 
     
+    // Do not create subclasses other than the one here
     Literal(String value) {
         this.value = value;
         this.language = null;
@@ -82,18 +85,14 @@ public final class Literal extends Value {
         return language;
     }
 
-    private static String escapeLiteral(String v) {
-        return v.replaceAll("\n", "\\\\n").replaceAll("\"", "\\\\\"").replaceAll("\r","\\\\r").replaceAll("\t","\\\\t");
-    }
-    
     @Override
     public String toString() {
         if(language != null) {
-            return "\"" + escapeLiteral(value) + "\"@" + language;
+            return "\"" + escapeLiteral(getValue()) + "\"@" + language;
         } else if(datatype != null) {
-            return "\"" + escapeLiteral(value) + "\"^^" + datatype;
+            return "\"" + escapeLiteral(getValue()) + "\"^^<" + datatype + ">";
         } else {
-            return "\"" + escapeLiteral(value) + "\"";
+            return "\"" + escapeLiteral(getValue()) + "\"";
         }
     }
 
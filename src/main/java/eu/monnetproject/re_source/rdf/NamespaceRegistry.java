@@ -0,0 +1,146 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The namespaces and prefixes used across a dataset. Namespaces are registered
+ * from the configuration and from the ontology, and a namespace keeps its
+ * prefix once registered. Writers declare all registered namespaces in their
+ * header, so that they can write a graph in a single pass and use the same
+ * prefixes for every document, and declare the namespaces of any other
+ * properties where they are used. As writers do not register namespaces, the
+ * output for a document only changes when the registry does. All methods are
+ * thread-safe.
+ *
+ * @author John McCrae
+ */
+public final class NamespaceRegistry {
+
+    private static final NamespaceRegistry instance = new NamespaceRegistry(256);
+    private final int maxNamespaces;
+    private final Map<String, String> full2prefix = new HashMap<String, String>();
+    private final Map<String, String> prefix2full = new LinkedHashMap<String, String>();
+    private volatile Map<String, String> namespaces;
+
+    /**
+     * Create a registry containing the rdf, rdfs, owl and xsd namespaces
+     * @param maxNamespaces The largest number of namespaces to register, as
+     * all are written in the header of every document
+     */
+    public NamespaceRegistry(int maxNamespaces) {
+        this.maxNamespaces = maxNamespaces;
+        register("rdf", RDF);
+        register("rdfs", RDFS);
+        register("owl", OWL);
+        register("xsd", XSD);
+    }
+
+    /**
+     * The registry shared by the writers of this application
+     */
+    public static NamespaceRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Register a namespace with a given prefix
+     * @param prefix The prefix
+     * @param namespace The namespace
+     * @return true if the namespace now has this prefix, false if either
+     * already has another, the prefix is not valid or the registry is full
+     */
+    public synchronized boolean register(String prefix, String namespace) {
+        if (prefix.equals(full2prefix.get(namespace))) {
+            return true;
+        } else if (full2prefix.containsKey(namespace) || prefix2full.containsKey(prefix)
+                || !PrefixTool.isValidName(prefix) || prefix.equals(PrefixTool.RESERVED_NS)
+                || prefix2full.size() >= maxNamespaces) {
+            return false;
+        }
+        full2prefix.put(namespace, prefix);
+        prefix2full.put(prefix, namespace);
+        namespaces = Collections.unmodifiableMap(new LinkedHashMap<String, String>(prefix2full));
+        return true;
+    }
+
+    /**
+     * Register a namespace, choosing a prefix for it from its last path
+     * segment (numbered if that prefix is taken)
+     * @param namespace The namespace, ending in '#' or '/'
+     * @return The prefix or null if no valid prefix could be made or the
+     * registry is full
+     */
+    public synchronized String register(String namespace) {
+        final String known = full2prefix.get(namespace);
+        if (known != null) {
+            return known;
+        }
+        int end = namespace.length();
+        if (end > 0 && (namespace.charAt(end - 1) == '#' || namespace.charAt(end - 1) == '/')) {
+            end--;
+        }
+        final String name = namespace.substring(namespace.lastIndexOf('/', end - 1) + 1, end);
+        if (!PrefixTool.isValidName(name)) {
+            return null;
+        }
+        String prefix = name;
+        for (int i = 2; prefix2full.containsKey(prefix) || prefix.equals(PrefixTool.RESERVED_NS); i++) {
+            prefix = name + i;
+        }
+        return register(prefix, namespace) ? prefix : null;
+    }
+
+    /**
+     * The registered namespaces
+     * @return A map from prefix to namespace in order of registration
+     */
+    public Map<String, String> namespaces() {
+        return namespaces;
+    }
+
+    /**
+     * The number of registered namespaces, which changes whenever one is
+     * registered
+     */
+    public int size() {
+        return namespaces.size();
+    }
+
+    /**
+     * A hash of the registered namespaces and their prefixes, which changes
+     * (almost certainly) whenever one is registered
+     */
+    public int fingerprint() {
+        return namespaces.hashCode();
+    }
+}
@@ -30,11 +30,15 @@ import static eu.monnetproject.re_source.rdf.RDFPrefixes.*;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 /**
- * Create pretty and unique prefixes
+ * Create pretty and unique prefixes. Namespaces are kept in a character trie,
+ * so that a URI is split by its longest namespace in a single scan, and the
+ * split of each URI is remembered. A prefix tool may start from the namespaces
+ * of a {@link NamespaceRegistry}.
  *
  * @author John McCrae
  */
@@ -42,24 +46,47 @@ public class PrefixTool {
 
     private static final String validPrefixStartChar = "[A-Za-z\u00C0-\u00D6\u00D8-\u00F6\u00F8-\u02FF\u0370-\u037D\u037F-\u1FFF\u200C-\u200D\u2070-\u218F\u2C00-\u2FEF\u3001-\uD7FF\uF900-\uFDCF\uFDF0-\uFFFD";
     private static final String validPrefixChar = validPrefixStartChar + "\\-0-9\u00B7\u0300-\u036F\u203F-\u2040]";
+    /**
+     * A regular expression for valid prefixes and local names, see {@link #isValidName(String)}
+     */
     public static final String validPrefix = validPrefixStartChar + "]" + validPrefixChar + "*";
     /**
      * To cover a minor technical issue with RDF/XML serialization, "ns" is not a valid namespace
      */
     public static final String RESERVED_NS = "ns";
-    private final Map<String, String> prefix2full = new HashMap<String, String>();
+    // Remembered splits are dropped when there are more than this many
+    private static final int MAX_SPLITS = 100000;
+    private final Map<String, String> prefix2full = new LinkedHashMap<String, String>();
     private final Map<String, String> full2prefix = new HashMap<String, String>();
+    private final Node root = new Node();
+    private final Map<URI, String[]> splits = new HashMap<URI, String[]>();
 
     public PrefixTool() {
-        prefix2full.put("rdf", RDF);
-        prefix2full.put("rdfs", RDFS);
-        prefix2full.put("owl", OWL);
-        prefix2full.put("xsd", XSD);
+        put("rdf", RDF);
+        put("rdfs", RDFS);
+        put("owl", OWL);
+        put("xsd", XSD);
+    }
 
-        full2prefix.put(RDF, "rdf");
-        full2prefix.put(RDFS, "rdfs");
-        full2prefix.put(OWL, "owl");
-        full2prefix.put(XSD, "xsd");
+    /**
+     * Create a prefix tool with the namespaces of a registry
+     * @param registry The registry
+     */
+    public PrefixTool(NamespaceRegistry registry) {
+        for (Map.Entry<String, String> e : registry.namespaces().entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    private void put(String prefix, String full) {
+        prefix2full.put(prefix, full);
+        full2prefix.put(full, prefix);
+        Node node = root;
+        for (int i = 0; i < full.length(); i++) {
+            node = node.child(full.charAt(i), true);
+        }
+        node.prefix = prefix;
+        splits.clear();
     }
 
     public void add(URIRef ref) {
@@ -69,18 +96,28 @@ public class PrefixTool {
             pt = uriStr.lastIndexOf('/');
         }
         if (pt >= 0) {
-            int pt2 = uriStr.lastIndexOf("/", pt);
-            if (pt2 > 0 && pt - pt2 - 1 > 0) {
-                final String prefix = uriStr.substring(pt2 + 1, pt);
-                final String full = uriStr.substring(0, pt+1);
-
-                if (!prefix2full.containsKey(prefix) && prefix.matches(validPrefix) && !prefix.equals(RESERVED_NS)) {
-                    prefix2full.put(prefix, full);
-                    full2prefix.put(full, prefix);
-                }
-            }
+            addNamespace(uriStr.substring(0, pt + 1));
+        }
+
+    }
+
+    /**
+     * Add a namespace, choosing a prefix for it from its last path segment
+     * @param full The namespace, ending in '#' or '/'
+     */
+    public void addNamespace(String full) {
+        if (full2prefix.containsKey(full)) {
+            return;
         }
+        final int pt = full.length() - 1;
+        int pt2 = full.lastIndexOf("/", pt);
+        if (pt2 > 0 && pt - pt2 - 1 > 0) {
+            final String prefix = full.substring(pt2 + 1, pt);
 
+            if (!prefix2full.containsKey(prefix) && isValidName(prefix) && !prefix.equals(RESERVED_NS)) {
+                put(prefix, full);
+            }
+        }
     }
 
     public void addRecursively(Resource resource) {
@@ -107,19 +144,120 @@ public class PrefixTool {
         }
     }
 
+    /**
+     * Split a URI into a prefix and local name, using the longest namespace
+     * that leaves a valid local name
+     * @param uri The URI
+     * @return The prefix and the local name, or the URI as a string if no
+     * namespace applies (the array is shared and must not be modified)
+     */
     public String[] split(URI uri) {
-        final String uriStr = uri.toString();
-        for (String full : full2prefix.keySet()) {
-            if (uriStr.startsWith(full)) {
-                final String name = uriStr.substring(full.length(), uriStr.length());
-                if (name.matches(validPrefix)) {
-                    return new String[]{full2prefix.get(full), name};
+        String[] split = splits.get(uri);
+        if (split == null) {
+            split = doSplit(uri.toString());
+            if (splits.size() >= MAX_SPLITS) {
+                splits.clear();
+            }
+            splits.put(uri, split);
+        }
+        return split;
+    }
+
+    private String[] doSplit(String uriStr) {
+        // The ends of all namespaces that the URI starts with
+        int[] ends = null;
+        Node[] nodes = null;
+        int n = 0;
+        Node node = root;
+        for (int i = 0; i < uriStr.length() && node != null; i++) {
+            node = node.child(uriStr.charAt(i), false);
+            if (node != null && node.prefix != null) {
+                if (ends == null) {
+                    ends = new int[4];
+                    nodes = new Node[4];
+                } else if (n == ends.length) {
+                    final int[] e = new int[n * 2];
+                    final Node[] ns = new Node[n * 2];
+                    System.arraycopy(ends, 0, e, 0, n);
+                    System.arraycopy(nodes, 0, ns, 0, n);
+                    ends = e;
+                    nodes = ns;
                 }
+                ends[n] = i + 1;
+                nodes[n++] = node;
+            }
+        }
+        for (int j = n - 1; j >= 0; j--) {
+            if (isValidName(uriStr, ends[j])) {
+                return new String[]{nodes[j].prefix, uriStr.substring(ends[j])};
             }
         }
         return new String[]{uriStr};
     }
 
+    /**
+     * Split a URI that no namespace applies to after its last '#' or '/', or
+     * failing that before its last character, so that it can be written with a
+     * locally declared prefix
+     * @param uriStr The URI
+     * @return The namespace and the local name, or null if the URI has no
+     * valid local name
+     */
+    public static String[] splitLocal(String uriStr) {
+        int n = uriStr.lastIndexOf('#') + 1;
+        if (n <= 0 || !isValidName(uriStr, n)) {
+            n = uriStr.lastIndexOf('/') + 1;
+            if (n <= 0 || !isValidName(uriStr, n)) {
+                n = uriStr.length() - 1;
+                if (n < 0 || !isValidName(uriStr, n)) {
+                    return null;
+                }
+            }
+        }
+        return new String[]{uriStr.substring(0, n), uriStr.substring(n)};
+    }
+
+    /**
+     * Check if a string is a valid prefix or local name, i.e., matches {@link #validPrefix}
+     * @param name The string
+     * @return true if the name is valid
+     */
+    public static boolean isValidName(String name) {
+        return isValidName(name, 0);
+    }
+
+    private static boolean isValidName(String s, int start) {
+        if (start >= s.length() || !isNameStartChar(s.charAt(start))) {
+            return false;
+        }
+        for (int i = start + 1; i < s.length(); i++) {
+            if (!isNameChar(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameStartChar(char c) {
+        if (c < 0x80) {
+            return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+        }
+        return (c >= '\u00C0' && c <= '\u00D6') || (c >= '\u00D8' && c <= '\u00F6')
+                || (c >= '\u00F8' && c <= '\u02FF') || (c >= '\u0370' && c <= '\u037D')
+                || (c >= '\u037F' && c <= '\u1FFF') || (c >= '\u200C' && c <= '\u200D')
+                || (c >= '\u2070' && c <= '\u218F') || (c >= '\u2C00' && c <= '\u2FEF')
+                || (c >= '\u3001' && c <= '\uD7FF') || (c >= '\uF900' && c <= '\uFDCF')
+                || (c >= '\uFDF0' && c <= '\uFFFD');
+    }
+
+    private static boolean isNameChar(char c) {
+        if (c < 0x80) {
+            return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-';
+        }
+        return isNameStartChar(c) || c == '\u00B7' || (c >= '\u0300' && c <= '\u036F')
+                || (c >= '\u203F' && c <= '\u2040');
+    }
+
     public String toString(Value resource) {
         if (!(resource instanceof URIRef)) {
             return resource.toString();
@@ -140,4 +278,43 @@ public class PrefixTool {
     public String full(String prefix) {
         return prefix2full.get(prefix);
     }
+
+    /**
+     * A node of the namespace trie, children are kept in a small sorted array
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        // The prefix of the namespace ending here or null
+        private String prefix;
+
+        Node child(char c, boolean create) {
+            int lo = 0, hi = keys.length - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (keys[mid] < c) {
+                    lo = mid + 1;
+                } else if (keys[mid] > c) {
+                    hi = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            final char[] k = new char[keys.length + 1];
+            final Node[] ch = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, k, 0, lo);
+            System.arraycopy(children, 0, ch, 0, lo);
+            System.arraycopy(keys, lo, k, lo + 1, keys.length - lo);
+            System.arraycopy(children, lo, ch, lo + 1, keys.length - lo);
+            k[lo] = c;
+            ch[lo] = new Node();
+            keys = k;
+            children = ch;
+            return ch[lo];
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.XSD;
+import eu.monnetproject.re_source.util.EscapingWriter;
+import java.net.URI;
+
+/**
+ * A numeric or boolean literal, stored as a primitive. The lexical form is
+ * only created when asked for. Literals are only stored this way if their
+ * lexical form is canonical, so that writing them gives the same text as was
+ * read.
+ *
+ * @author John McCrae
+ */
+public final class PrimitiveLiteral extends Literal {
+
+    public static final URI XSD_INTEGER = URI.create(XSD + "integer");
+    public static final URI XSD_INT = URI.create(XSD + "int");
+    public static final URI XSD_LONG = URI.create(XSD + "long");
+    public static final URI XSD_DECIMAL = URI.create(XSD + "decimal");
+    public static final URI XSD_DOUBLE = URI.create(XSD + "double");
+    public static final URI XSD_BOOLEAN = URI.create(XSD + "boolean");
+    private static final byte INTEGER = 0, DECIMAL = 1, BOOLEAN = 2;
+    private static final PrimitiveLiteral TRUE = new PrimitiveLiteral(BOOLEAN, 1, XSD_BOOLEAN);
+    private static final PrimitiveLiteral FALSE = new PrimitiveLiteral(BOOLEAN, 0, XSD_BOOLEAN);
+    // Indexes of elements are mostly small
+    private static final PrimitiveLiteral[] SMALL_INTEGERS = new PrimitiveLiteral[1024];
+
+    static {
+        for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+            SMALL_INTEGERS[i] = new PrimitiveLiteral(INTEGER, i, XSD_INTEGER);
+        }
+    }
+    private final byte kind;
+    // The value, or the bits of the double value for decimals
+    private final long bits;
+
+    private PrimitiveLiteral(byte kind, long bits, URI datatype) {
+        super(null, datatype);
+        this.kind = kind;
+        this.bits = bits;
+    }
+
+    /**
+     * Get an xsd:integer literal
+     */
+    static PrimitiveLiteral valueOf(long value) {
+        if (value >= 0 && value < SMALL_INTEGERS.length) {
+            return SMALL_INTEGERS[(int) value];
+        }
+        return new PrimitiveLiteral(INTEGER, value, XSD_INTEGER);
+    }
+
+    /**
+     * Get an xsd:double literal
+     */
+    static PrimitiveLiteral valueOf(double value) {
+        return new PrimitiveLiteral(DECIMAL, Double.doubleToLongBits(value), XSD_DOUBLE);
+    }
+
+    /**
+     * Get an xsd:boolean literal
+     */
+    static PrimitiveLiteral valueOf(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * Read a literal as a primitive
+     * @param value The lexical form
+     * @param datatype The datatype
+     * @return The literal or null if the datatype is not numeric or boolean or
+     * the lexical form is not canonical
+     */
+    static PrimitiveLiteral parse(String value, URI datatype) {
+        try {
+            if (XSD_INTEGER.equals(datatype) || XSD_INT.equals(datatype) || XSD_LONG.equals(datatype)) {
+                final long l = Long.parseLong(value);
+                if (!Long.toString(l).equals(value)) {
+                    return null;
+                }
+                return XSD_INTEGER.equals(datatype) ? valueOf(l)
+                        : new PrimitiveLiteral(INTEGER, l, XSD_INT.equals(datatype) ? XSD_INT : XSD_LONG);
+            } else if (XSD_DECIMAL.equals(datatype) || XSD_DOUBLE.equals(datatype)) {
+                final double d = Double.parseDouble(value);
+                if (!Double.toString(d).equals(value)) {
+                    return null;
+                }
+                return new PrimitiveLiteral(DECIMAL, Double.doubleToLongBits(d), XSD_DECIMAL.equals(datatype) ? XSD_DECIMAL : XSD_DOUBLE);
+            } else if (XSD_BOOLEAN.equals(datatype)) {
+                return value.equals("true") ? TRUE : value.equals("false") ? FALSE : null;
+            } else {
+                return null;
+            }
+        } catch (NumberFormatException x) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the value of an integer literal
+     */
+    public long longValue() {
+        return kind == DECIMAL ? (long) doubleValue() : bits;
+    }
+
+    /**
+     * Get the value of a numeric literal
+     */
+    public double doubleValue() {
+        return kind == DECIMAL ? Double.longBitsToDouble(bits) : bits;
+    }
+
+    /**
+     * Get the value of a boolean literal
+     */
+    public boolean booleanValue() {
+        return bits != 0;
+    }
+
+    @Override
+    public String getValue() {
+        switch (kind) {
+            case INTEGER:
+                return Long.toString(bits);
+            case DECIMAL:
+                return Double.toString(doubleValue());
+            default:
+                return bits != 0 ? "true" : "false";
+        }
+    }
+
+    /**
+     * Write the lexical form, which never needs escaping
+     * @param out The writer
+     */
+    public void print(EscapingWriter out) {
+        switch (kind) {
+            case INTEGER:
+                out.print(bits);
+                break;
+            case DECIMAL:
+                out.print(Double.toString(doubleValue()));
+                break;
+            default:
+                out.print(bits != 0 ? "true" : "false");
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final PrimitiveLiteral other = (PrimitiveLiteral) obj;
+        return this.kind == other.kind && this.bits == other.bits && getDatatype().equals(other.getDatatype());
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 83 * hash + (int) (this.bits ^ (this.bits >>> 32));
+        hash = 83 * hash + getDatatype().hashCode();
+        return hash;
+    }
+}
@@ -27,21 +27,32 @@
 package eu.monnetproject.re_source.rdf;
 
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Factory for making RDF elements. Ensures that these elements are unique
+ * Factory for making RDF elements. Ensures that these elements are unique. The
+ * factory may be shared between threads. Literals, datatypes and language
+ * tags are shared with other factories through a {@link TermInterner}.
  * 
  * @author John McCrae
  */
 public class RDFFactory {
     
-    private final Map<URI,URIRef> uriRefs = new HashMap<URI, URIRef>();
-    private final Map<String,BNode> bNodes = new HashMap<String, BNode>();
+    private final ConcurrentMap<URI,URIRef> uriRefs = new ConcurrentHashMap<URI, URIRef>();
+    private final ConcurrentMap<String,BNode> bNodes = new ConcurrentHashMap<String, BNode>();
+    private final TermInterner interner;
     
     public RDFFactory() {
-        
+        this(TermInterner.getInstance());
+    }
+    
+    /**
+     * Create a factory
+     * @param interner The interner to share elements with
+     */
+    public RDFFactory(TermInterner interner) {
+        this.interner = interner;
     }
     
     /**
@@ -51,7 +62,10 @@ public class RDFFactory {
     public BNode newBNode(String id) {
         BNode bn = bNodes.get(id);
         if(bn == null) {
-            bNodes.put(id, bn = new BNode(id));
+            final BNode existing = bNodes.putIfAbsent(id, bn = new BNode(id));
+            if(existing != null) {
+                return existing;
+            }
         }
         return bn;
     }
@@ -61,7 +75,7 @@ public class RDFFactory {
      * @param value The value of the literal
      */
     public Literal newLiteral(String value) {
-        return new Literal(value);
+        return interner.literal(new Literal(value));
     }
     
     /**
@@ -70,7 +84,7 @@ public class RDFFactory {
      * @param language The language as an IETF code (e.g., "en", "eng" or "en-GB")
      */
     public Literal newLiteral(String value, String language) {
-        return new Literal(value, language);
+        return interner.literal(new Literal(value, interner.language(language)));
     }
     
     /**
@@ -79,7 +93,35 @@ public class RDFFactory {
      * @param datatype The data type (e.g., according to XSD URI)
      */
     public Literal newLiteral(String value, URI dataType) {
-        return new Literal(value, dataType);
+        final Literal primitive = PrimitiveLiteral.parse(value, dataType);
+        if(primitive != null) {
+            return primitive;
+        }
+        return interner.literal(new Literal(value, interner.uri(dataType)));
+    }
+    
+    /**
+     * Create an xsd:integer literal
+     * @param value The value of the literal
+     */
+    public Literal newLiteral(long value) {
+        return PrimitiveLiteral.valueOf(value);
+    }
+    
+    /**
+     * Create an xsd:double literal
+     * @param value The value of the literal
+     */
+    public Literal newLiteral(double value) {
+        return PrimitiveLiteral.valueOf(value);
+    }
+    
+    /**
+     * Create an xsd:boolean literal
+     * @param value The value of the literal
+     */
+    public Literal newLiteral(boolean value) {
+        return PrimitiveLiteral.valueOf(value);
     }
     
     /**
@@ -89,8 +131,38 @@ public class RDFFactory {
     public URIRef newURIRef(URI uri) {
         URIRef uriRef = uriRefs.get(uri);
         if(uriRef == null) {
-            uriRefs.put(uri,uriRef = new URIRef(uri));
+            final URIRef existing = uriRefs.putIfAbsent(uri, uriRef = new URIRef(uri));
+            if(existing != null) {
+                return existing;
+            }
         }
         return uriRef;
     }
+    
+    /**
+     * Create a URI ref that the factory does not hold on to, for resources
+     * that are only referred to while they are made, as when a document is
+     * streamed. The ref is equal to, but not the same as, the one made by
+     * {@link #newURIRef(java.net.URI)}
+     * @param uri The URI
+     */
+    public URIRef newTransientURIRef(URI uri) {
+        return new URIRef(uri);
+    }
+    
+    /**
+     * The number of URI refs and blank nodes held by this factory
+     */
+    public int size() {
+        return uriRefs.size() + bNodes.size();
+    }
+    
+    /**
+     * Create a URI ref for a property or class. The URI is parsed once and
+     * shared with other factories
+     * @param uri The URI
+     */
+    public URIRef newProperty(String uri) {
+        return newURIRef(interner.uri(uri));
+    }
 }
@@ -40,4 +40,7 @@ public final class RDFPrefixes {
     public static final String RDFS= "http://www.w3.org/2000/01/rdf-schema#";
     public static final String OWL = "http://www.w3.org/2002/07/owl#";
     public static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+    public static final String HYDRA = "http://www.w3.org/ns/hydra/core#";
+    public static final String DCTERMS = "http://purl.org/dc/terms/";
+    public static final String DCAT = "http://www.w3.org/ns/dcat#";
 }
@@ -26,10 +26,14 @@
  *********************************************************************************/
 package eu.monnetproject.re_source.rdf;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -41,7 +45,13 @@ import java.util.Set;
  * @author John McCrae
  */
 public class Resource extends Value {
-    protected final Map<URIRef,Set<Value>> triples = new HashMap<URIRef, Set<Value>>();
+    // Most nodes have only a few triples, so these are stored in an array of
+    // property-value pairs (grouped by property) until there are too many
+    private static final int MAX_INLINE = 8;
+    private Object[] inline;
+    private int inlineSize = 0;
+    private Map<URIRef,Set<Value>> triples;
+    private Map<URIRef,Set<Value>> view;
     
     // Do not create subclasses other than the one here
     Resource() {
@@ -54,6 +64,32 @@ public class Resource extends Value {
      * @return true if the properties of this resource changed
      */
     public boolean addTriple(URIRef property, Value value) {
+        if(triples == null) {
+            int insert = inlineSize;
+            for(int i = 0; i < inlineSize; i++) {
+                if(inline[2 * i].equals(property)) {
+                    if(inline[2 * i + 1].equals(value)) {
+                        return false;
+                    }
+                    insert = i + 1;
+                }
+            }
+            if(inlineSize < MAX_INLINE) {
+                if(inline == null) {
+                    inline = new Object[4];
+                } else if(inline.length == 2 * inlineSize) {
+                    final Object[] newInline = new Object[Math.min(4 * inlineSize, 2 * MAX_INLINE)];
+                    System.arraycopy(inline, 0, newInline, 0, 2 * inlineSize);
+                    inline = newInline;
+                }
+                System.arraycopy(inline, 2 * insert, inline, 2 * insert + 2, 2 * (inlineSize - insert));
+                inline[2 * insert] = property;
+                inline[2 * insert + 1] = value;
+                inlineSize++;
+                return true;
+            }
+            promote();
+        }
         if(triples.containsKey(property)) {
             return triples.get(property).add(value);
         } else {
@@ -64,6 +100,19 @@ public class Resource extends Value {
         }
     }
     
+    private void promote() {
+        triples = new HashMap<URIRef, Set<Value>>();
+        for(int i = 0; i < inlineSize; i++) {
+            Set<Value> set = triples.get((URIRef) inline[2 * i]);
+            if(set == null) {
+                triples.put((URIRef) inline[2 * i], set = new HashSet<Value>());
+            }
+            set.add((Value) inline[2 * i + 1]);
+        }
+        inline = null;
+        inlineSize = 0;
+    }
+    
     /**
      * Remove a triple
      * @param property The property
@@ -71,7 +120,17 @@ public class Resource extends Value {
      * @return true if the properties of this resource changed
      */
     public boolean removeTriple(URIRef property, Value value) {
-        if(triples.containsKey(property)) {
+        if(triples == null) {
+            for(int i = 0; i < inlineSize; i++) {
+                if(inline[2 * i].equals(property) && inline[2 * i + 1].equals(value)) {
+                    System.arraycopy(inline, 2 * i + 2, inline, 2 * i, 2 * (inlineSize - i - 1));
+                    inlineSize--;
+                    inline[2 * inlineSize] = inline[2 * inlineSize + 1] = null;
+                    return true;
+                }
+            }
+            return false;
+        } else if(triples.containsKey(property)) {
             if(triples.get(property).size() == 1) {
                 if(triples.get(property).iterator().next().equals(value)) {
                     triples.remove(property);
@@ -92,6 +151,164 @@ public class Resource extends Value {
      * @return An immutable map from properties to values
      */
     public Map<URIRef, Set<Value>> getTriples() {
-        return Collections.unmodifiableMap(triples);
+        if(view == null) {
+            view = new TripleView();
+        }
+        return view;
+    }
+    
+    private int find(Object property, int from) {
+        for(int i = from; i < inlineSize; i++) {
+            if(inline[2 * i].equals(property)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * A read-only view of the triples, which remains valid if the storage
+     * changes
+     */
+    private final class TripleView extends AbstractMap<URIRef, Set<Value>> {
+        private Map<URIRef, Set<Value>> hashed;
+        
+        private Map<URIRef, Set<Value>> hashed() {
+            if(hashed == null) {
+                hashed = Collections.unmodifiableMap(triples);
+            }
+            return hashed;
+        }
+
+        @Override
+        public Set<Value> get(Object key) {
+            if(triples != null) {
+                return hashed().get(key);
+            }
+            return find(key, 0) >= 0 ? new Values((URIRef) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return triples != null ? triples.containsKey(key) : find(key, 0) >= 0;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return triples != null ? triples.isEmpty() : inlineSize == 0;
+        }
+
+        @Override
+        public int size() {
+            if(triples != null) {
+                return triples.size();
+            }
+            int n = 0;
+            for(int i = 0; i < inlineSize; i++) {
+                if(i == 0 || !inline[2 * i].equals(inline[2 * i - 2])) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public Set<Entry<URIRef, Set<Value>>> entrySet() {
+            if(triples != null) {
+                return hashed().entrySet();
+            }
+            return new AbstractSet<Entry<URIRef, Set<Value>>>() {
+                @Override
+                public Iterator<Entry<URIRef, Set<Value>>> iterator() {
+                    return new Iterator<Entry<URIRef, Set<Value>>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < inlineSize;
+                        }
+
+                        @Override
+                        public Entry<URIRef, Set<Value>> next() {
+                            if(next >= inlineSize) {
+                                throw new NoSuchElementException();
+                            }
+                            final URIRef property = (URIRef) inline[2 * next];
+                            // Skip to the next property
+                            do {
+                                next++;
+                            } while(next < inlineSize && inline[2 * next].equals(property));
+                            return new SimpleImmutableEntry<URIRef, Set<Value>>(property, new Values(property));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return TripleView.this.size();
+                }
+            };
+        }
+    }
+    
+    /**
+     * The values of a property stored inline
+     */
+    private final class Values extends AbstractSet<Value> {
+        private final URIRef property;
+
+        public Values(URIRef property) {
+            this.property = property;
+        }
+        
+        private Set<Value> promoted() {
+            final Set<Value> values = triples.get(property);
+            return values == null ? Collections.<Value>emptySet() : Collections.unmodifiableSet(values);
+        }
+
+        @Override
+        public Iterator<Value> iterator() {
+            if(triples != null) {
+                return promoted().iterator();
+            }
+            return new Iterator<Value>() {
+                private int next = find(property, 0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0 && next < inlineSize && inline[2 * next].equals(property);
+                }
+
+                @Override
+                public Value next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return (Value) inline[2 * next++ + 1];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            if(triples != null) {
+                return promoted().size();
+            }
+            int n = 0;
+            for(int i = find(property, 0); i >= 0 && i < inlineSize && inline[2 * i].equals(property); i++) {
+                n++;
+            }
+            return n;
+        }
     }
 }
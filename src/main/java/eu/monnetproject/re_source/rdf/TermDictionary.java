@@ -0,0 +1,226 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dictionary of the terms (URIs, blank nodes and literals) of a graph, which
+ * are identified by consecutive integers. The lexical forms of all terms are
+ * stored in a single UTF-8 encoded array, so a term costs only a few bytes
+ * more than its text. The dictionary is immutable and may be shared between
+ * threads.
+ *
+ * @author John McCrae
+ */
+public final class TermDictionary {
+
+    /**
+     * A URI, the lexical form is the URI
+     */
+    public static final byte URI = 0;
+    /**
+     * A blank node, the lexical form is the node ID
+     */
+    public static final byte BNODE = 1;
+    /**
+     * An untyped literal
+     */
+    public static final byte LITERAL = 2;
+    /**
+     * A literal with a language, the tag is the term of the language
+     */
+    public static final byte LANG_LITERAL = 3;
+    /**
+     * A literal with a datatype, the tag is the URI term of the datatype
+     */
+    public static final byte TYPED_LITERAL = 4;
+    /**
+     * A language of a literal (not a node of the graph)
+     */
+    public static final byte LANGUAGE = 5;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final byte[] kinds;
+    private final int[] tags;
+    private final int[] offsets;
+    private final byte[] text;
+
+    private TermDictionary(byte[] kinds, int[] tags, int[] offsets, byte[] text) {
+        this.kinds = kinds;
+        this.tags = tags;
+        this.offsets = offsets;
+        this.text = text;
+    }
+
+    /**
+     * The number of terms
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Get the kind of a term
+     * @param id The term
+     * @return One of {@link #URI}, {@link #BNODE}, {@link #LITERAL},
+     * {@link #LANG_LITERAL}, {@link #TYPED_LITERAL} or {@link #LANGUAGE}
+     */
+    public byte kind(int id) {
+        return kinds[id];
+    }
+
+    /**
+     * Get the lexical form of a term
+     * @param id The term
+     * @return The URI, blank node ID, value of the literal or language
+     */
+    public String lexicalForm(int id) {
+        return new String(text, offsets[id], offsets[id + 1] - offsets[id], UTF8);
+    }
+
+    /**
+     * Get the language or datatype of a literal
+     * @param id The term
+     * @return The term of the language or datatype, or -1 if the term has
+     * neither
+     */
+    public int tag(int id) {
+        return tags[id];
+    }
+
+    /**
+     * Create an RDF element for a term
+     * @param id The term (not a language)
+     * @param factory The factory to create the element with
+     * @return The element
+     */
+    public Value value(int id, RDFFactory factory) {
+        switch (kinds[id]) {
+            case URI:
+                return factory.newURIRef(java.net.URI.create(lexicalForm(id)));
+            case BNODE:
+                return factory.newBNode(lexicalForm(id));
+            case LITERAL:
+                return factory.newLiteral(lexicalForm(id));
+            case LANG_LITERAL:
+                return factory.newLiteral(lexicalForm(id), lexicalForm(tags[id]));
+            case TYPED_LITERAL:
+                return factory.newLiteral(lexicalForm(id), java.net.URI.create(lexicalForm(tags[id])));
+            default:
+                throw new IllegalArgumentException("Term " + id + " is not a value");
+        }
+    }
+
+    /**
+     * The approximate number of bytes used by the dictionary
+     */
+    public long footprint() {
+        return 64 + kinds.length + 4L * tags.length + 4L * offsets.length + text.length;
+    }
+
+    /**
+     * Assigns identifiers to terms as they are added
+     */
+    static final class Builder {
+
+        private final Map<Object, Integer> ids = new HashMap<Object, Integer>();
+        private byte[] kinds = new byte[64];
+        private int[] tags = new int[64];
+        private int[] offsets = new int[65];
+        private byte[] text = new byte[1024];
+        private int size = 0;
+
+        /**
+         * Get the identifier of a value, adding it if necessary
+         */
+        public int id(Value value) {
+            final Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            if (value instanceof URIRef) {
+                return add(value, URI, ((URIRef) value).getURI().toString(), -1);
+            } else if (value instanceof BNode) {
+                return add(value, BNODE, ((BNode) value).getId(), -1);
+            } else {
+                final Literal literal = (Literal) value;
+                // Tags are added before the literal that refers to them
+                if (literal.getLanguage() != null) {
+                    return add(value, LANG_LITERAL, literal.getValue(), language(literal.getLanguage()));
+                } else if (literal.getDatatype() != null) {
+                    return add(value, TYPED_LITERAL, literal.getValue(), datatype(literal.getDatatype()));
+                } else {
+                    return add(value, LITERAL, literal.getValue(), -1);
+                }
+            }
+        }
+
+        private int language(String language) {
+            // Languages are keyed by a string so they cannot clash with values
+            final Integer id = ids.get(language);
+            return id != null ? id : add(language, LANGUAGE, language, -1);
+        }
+
+        private int datatype(URI datatype) {
+            // Equal to the URIRef of the datatype, so shared with it
+            final URIRef key = new URIRef(datatype);
+            final Integer id = ids.get(key);
+            return id != null ? id : add(key, URI, datatype.toString(), -1);
+        }
+
+        private int add(Object key, byte kind, String lexicalForm, int tag) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                tags = Arrays.copyOf(tags, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2 + 1);
+            }
+            kinds[size] = kind;
+            tags[size] = tag;
+            final byte[] bytes = lexicalForm.getBytes(UTF8);
+            final int offset = offsets[size];
+            if (offset + bytes.length > text.length) {
+                text = Arrays.copyOf(text, Math.max(offset + bytes.length, text.length * 2));
+            }
+            System.arraycopy(bytes, 0, text, offset, bytes.length);
+            offsets[size + 1] = offset + bytes.length;
+            ids.put(key, size);
+            return size++;
+        }
+
+        /**
+         * Create the dictionary of the terms added so far
+         */
+        public TermDictionary build() {
+            return new TermDictionary(Arrays.copyOf(kinds, size), Arrays.copyOf(tags, size),
+                    Arrays.copyOf(offsets, size + 1), Arrays.copyOf(text, offsets[size]));
+        }
+    }
+}
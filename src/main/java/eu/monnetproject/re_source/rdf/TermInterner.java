@@ -0,0 +1,128 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares the immutable parts of RDF elements between all {@link RDFFactory}s:
+ * the URIs of properties and datatypes, language tags and short literals.
+ * Resources are not shared, as they hold their own triples. Each table is
+ * cleared when it is full, so that interning cannot leak memory. All methods
+ * are thread-safe.
+ *
+ * @author John McCrae
+ */
+public final class TermInterner {
+
+    private static final TermInterner instance = new TermInterner(50000, 32);
+    private final int maxEntries;
+    private final int maxLiteralLength;
+    private final ConcurrentMap<String, URI> uris = new ConcurrentHashMap<String, URI>();
+    private final ConcurrentMap<String, String> languages = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<Literal, Literal> literals = new ConcurrentHashMap<Literal, Literal>();
+
+    /**
+     * Create an interner
+     * @param maxEntries The largest number of entries in each table
+     * @param maxLiteralLength The length of the longest literal to intern
+     */
+    public TermInterner(int maxEntries, int maxLiteralLength) {
+        this.maxEntries = maxEntries;
+        this.maxLiteralLength = maxLiteralLength;
+    }
+
+    /**
+     * The interner shared by the factories of this application
+     */
+    public static TermInterner getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get a URI, parsing it only if it is not already known. Use this only
+     * for URIs that occur in many documents, such as properties and datatypes
+     * @param uri The URI as a string
+     * @return The URI
+     * @throws IllegalArgumentException If the string is not a valid URI
+     */
+    public URI uri(String uri) {
+        final URI u = uris.get(uri);
+        return u != null ? u : intern(uris, uri, URI.create(uri));
+    }
+
+    /**
+     * Get the shared instance of a URI
+     * @param uri The URI (may be null)
+     * @return A URI equal to the given one
+     */
+    public URI uri(URI uri) {
+        if (uri == null) {
+            return null;
+        }
+        final String key = uri.toString();
+        final URI u = uris.get(key);
+        return u != null ? u : intern(uris, key, uri);
+    }
+
+    /**
+     * Get the shared instance of a language tag
+     * @param language The language tag (may be null)
+     * @return An equal string
+     */
+    public String language(String language) {
+        if (language == null) {
+            return null;
+        }
+        final String l = languages.get(language);
+        return l != null ? l : intern(languages, language, language);
+    }
+
+    /**
+     * Get the shared instance of a literal
+     * @param literal The literal
+     * @return An equal literal, which is the same one if the literal is too
+     * long to intern
+     */
+    public Literal literal(Literal literal) {
+        if (literal.getValue().length() > maxLiteralLength) {
+            return literal;
+        }
+        final Literal l = literals.get(literal);
+        return l != null ? l : intern(literals, literal, literal);
+    }
+
+    private <K, V> V intern(ConcurrentMap<K, V> table, K key, V value) {
+        if (table.size() >= maxEntries) {
+            table.clear();
+        }
+        final V existing = table.putIfAbsent(key, value);
+        return existing != null ? existing : value;
+    }
+}
@@ -0,0 +1,63 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import java.util.Collection;
+
+/**
+ * A receiver of triples as they are produced, so that a document can be
+ * converted and serialized without building the graph in memory. Triples may
+ * arrive in any order, and the triples of a subject may be interleaved with
+ * those of other subjects.
+ *
+ * @author John McCrae
+ */
+public interface TripleSink {
+
+    /**
+     * Called before any triples are sent
+     * @param headResource The head resource of the document
+     * @param namespaces The namespaces (full URIs, e.g., ending in '#') that
+     * the URIs in the document are expected to use. Writers should declare
+     * prefixes for these namespaces, as they cannot examine the document in
+     * advance
+     */
+    void startDocument(URIRef headResource, Collection<String> namespaces);
+
+    /**
+     * Receive a triple
+     * @param subject The subject
+     * @param property The property
+     * @param object The object
+     */
+    void triple(Resource subject, URIRef property, Value object);
+
+    /**
+     * Called after all triples have been sent
+     */
+    void endDocument();
+}
@@ -0,0 +1,168 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf.binary;
+
+import eu.monnetproject.re_source.rdf.RDFFactory;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import static eu.monnetproject.re_source.rdf.binary.BinaryGraphWriter.*;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a graph written by {@link BinaryGraphWriter}. The data is read from a
+ * {@link ByteBuffer} so that it can be memory-mapped.
+ *
+ * @author John McCrae
+ */
+public class BinaryGraphReader {
+
+    private final ByteBuffer buffer;
+    private final RDFFactory factory;
+    private byte[] stringBuffer = new byte[256];
+
+    private BinaryGraphReader(ByteBuffer buffer, RDFFactory factory) {
+        this.buffer = buffer;
+        this.factory = factory;
+    }
+
+    /**
+     * Read a graph
+     * @param buffer The buffer, positioned at the start of the graph
+     * @param factory The factory used to create the RDF elements
+     * @return The head resource of the graph
+     * @throws IOException If the data is not a valid graph
+     */
+    public static URIRef read(ByteBuffer buffer, RDFFactory factory) throws IOException {
+        try {
+            return new BinaryGraphReader(buffer, factory).doRead();
+        } catch (BufferUnderflowException x) {
+            throw new IOException("Truncated graph");
+        } catch (RuntimeException x) {
+            // e.g., bad indexes, lengths or URIs
+            throw new IOException("Corrupt graph", x);
+        }
+    }
+
+    private URIRef doRead() throws IOException {
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) {
+                throw new IOException("Not a binary graph");
+            }
+        }
+        if (buffer.get() != VERSION) {
+            throw new IOException("Unsupported binary graph version");
+        }
+        final int nTerms = readVarInt();
+        // Every term takes at least two bytes, so this also stops a bad count allocating too much
+        if (nTerms < 0 || nTerms > buffer.remaining() / 2) {
+            throw new IOException("Corrupt graph");
+        }
+        // Values for nodes and literals, Strings for language tags and datatypes
+        final Object[] terms = new Object[nTerms];
+        final URI[] datatypes = new URI[nTerms];
+        for (int i = 0; i < nTerms; i++) {
+            final byte kind = buffer.get();
+            switch (kind) {
+                case TERM_URI:
+                    terms[i] = factory.newURIRef(URI.create(readString()));
+                    break;
+                case TERM_BNODE:
+                    terms[i] = factory.newBNode(readString());
+                    break;
+                case TERM_LITERAL:
+                    terms[i] = factory.newLiteral(readString());
+                    break;
+                case TERM_LANG_LITERAL: {
+                    final String value = readString();
+                    terms[i] = factory.newLiteral(value, (String) terms[readVarInt()]);
+                    break;
+                }
+                case TERM_TYPED_LITERAL: {
+                    final String value = readString();
+                    final int datatype = readVarInt();
+                    if (datatypes[datatype] == null) {
+                        datatypes[datatype] = URI.create((String) terms[datatype]);
+                    }
+                    terms[i] = factory.newLiteral(value, datatypes[datatype]);
+                    break;
+                }
+                case TERM_STRING:
+                    terms[i] = readString();
+                    break;
+                default:
+                    throw new IOException("Bad term kind " + kind);
+            }
+        }
+        final URIRef head = (URIRef) terms[readVarInt()];
+        final int nSubjects = readVarInt();
+        for (int i = 0; i < nSubjects; i++) {
+            final Resource subject = (Resource) terms[readVarInt()];
+            final int nProps = readVarInt();
+            for (int j = 0; j < nProps; j++) {
+                final URIRef prop = (URIRef) terms[readVarInt()];
+                final int nValues = readVarInt();
+                for (int k = 0; k < nValues; k++) {
+                    subject.addTriple(prop, (Value) terms[readVarInt()]);
+                }
+            }
+        }
+        return head;
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad integer");
+    }
+
+    private String readString() throws IOException {
+        final int length = readVarInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt graph");
+        }
+        if (length > stringBuffer.length) {
+            stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+        }
+        buffer.get(stringBuffer, 0, length);
+        try {
+            return new String(stringBuffer, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException x) {
+            throw new RuntimeException(x);
+        }
+    }
+}
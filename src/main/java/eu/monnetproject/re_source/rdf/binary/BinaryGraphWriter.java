@@ -0,0 +1,165 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf.binary;
+
+import eu.monnetproject.re_source.rdf.BNode;
+import eu.monnetproject.re_source.rdf.Literal;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a graph in a compact binary format. The format consists of a
+ * dictionary of all terms (URIs, blank nodes, literals and the strings used
+ * for language tags and datatypes) followed by the triples, grouped by subject,
+ * as variable-length integer references into the dictionary:
+ *
+ * <pre>
+ * graph   := "RSG" version:byte nTerms:varint term* head:varint nSubjects:varint subject*
+ * term    := kind:byte string [ref:varint (for language and typed literals)]
+ * string  := length:varint utf8-bytes
+ * subject := id:varint nProps:varint (prop:varint nValues:varint value:varint*)*
+ * </pre>
+ *
+ * Terms are numbered in order of appearance, and a term only refers to terms
+ * before it.
+ *
+ * @author John McCrae
+ */
+public class BinaryGraphWriter {
+
+    static final byte[] MAGIC = {'R', 'S', 'G'};
+    static final byte VERSION = 1;
+    static final byte TERM_URI = 0;
+    static final byte TERM_BNODE = 1;
+    static final byte TERM_LITERAL = 2;
+    static final byte TERM_LANG_LITERAL = 3;
+    static final byte TERM_TYPED_LITERAL = 4;
+    static final byte TERM_STRING = 5;
+    private final Map<Value, Integer> valueIds = new HashMap<Value, Integer>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private final List<Resource> subjects = new ArrayList<Resource>();
+    private final VarIntOutput terms = new VarIntOutput();
+    private int nTerms = 0;
+
+    private BinaryGraphWriter() {
+    }
+
+    /**
+     * Write a graph
+     * @param headResource The head resource of the graph
+     * @param out The stream to write to (not closed by this method)
+     * @throws IOException If an I/O error occurs
+     */
+    public static void write(URIRef headResource, OutputStream out) throws IOException {
+        new BinaryGraphWriter().doWrite(headResource, out);
+    }
+
+    private void doWrite(URIRef headResource, OutputStream out) throws IOException {
+        final int head = id(headResource);
+        final VarIntOutput triples = new VarIntOutput();
+        // New subjects are appended to the list while we iterate over it
+        for (int i = 0; i < subjects.size(); i++) {
+            final Resource subject = subjects.get(i);
+            final Map<URIRef, Set<Value>> props = subject.getTriples();
+            triples.writeVarInt(valueIds.get(subject));
+            triples.writeVarInt(props.size());
+            for (Map.Entry<URIRef, Set<Value>> e : props.entrySet()) {
+                triples.writeVarInt(id(e.getKey()));
+                triples.writeVarInt(e.getValue().size());
+                for (Value value : e.getValue()) {
+                    triples.writeVarInt(id(value));
+                }
+            }
+        }
+        final VarIntOutput header = new VarIntOutput();
+        header.write(MAGIC);
+        header.write(VERSION);
+        header.writeVarInt(nTerms);
+        header.writeTo(out);
+        terms.writeTo(out);
+        final VarIntOutput body = new VarIntOutput();
+        body.writeVarInt(head);
+        body.writeVarInt(subjects.size());
+        body.writeTo(out);
+        triples.writeTo(out);
+    }
+
+    private int id(Value value) {
+        final Integer id = valueIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (value instanceof URIRef) {
+            terms.write(TERM_URI);
+            terms.writeString(((URIRef) value).getURI().toString());
+        } else if (value instanceof BNode) {
+            terms.write(TERM_BNODE);
+            terms.writeString(((BNode) value).getId());
+        } else {
+            final Literal literal = (Literal) value;
+            // Referenced strings must precede the literal
+            if (literal.getLanguage() != null) {
+                final int lang = stringId(literal.getLanguage());
+                terms.write(TERM_LANG_LITERAL);
+                terms.writeString(literal.getValue());
+                terms.writeVarInt(lang);
+            } else if (literal.getDatatype() != null) {
+                final int datatype = stringId(literal.getDatatype().toString());
+                terms.write(TERM_TYPED_LITERAL);
+                terms.writeString(literal.getValue());
+                terms.writeVarInt(datatype);
+            } else {
+                terms.write(TERM_LITERAL);
+                terms.writeString(literal.getValue());
+            }
+        }
+        valueIds.put(value, nTerms);
+        if (value instanceof Resource && !((Resource) value).getTriples().isEmpty()) {
+            subjects.add((Resource) value);
+        }
+        return nTerms++;
+    }
+
+    private int stringId(String string) {
+        final Integer id = stringIds.get(string);
+        if (id != null) {
+            return id;
+        }
+        terms.write(TERM_STRING);
+        terms.writeString(string);
+        stringIds.put(string, nTerms);
+        return nTerms++;
+    }
+}
@@ -28,78 +28,100 @@ package eu.monnetproject.re_source.rdf.html;
 
 import eu.monnetproject.re_source.rdf.BNode;
 import eu.monnetproject.re_source.rdf.Literal;
+import eu.monnetproject.re_source.rdf.NamespaceRegistry;
+import eu.monnetproject.re_source.rdf.PageRDFWriter;
 import eu.monnetproject.re_source.rdf.PrefixTool;
-import eu.monnetproject.re_source.rdf.RDFWriter;
+import eu.monnetproject.re_source.rdf.PrimitiveLiteral;
 import eu.monnetproject.re_source.rdf.Resource;
 import eu.monnetproject.re_source.rdf.URIRef;
 import eu.monnetproject.re_source.rdf.Value;
 import eu.monnetproject.re_source.servlet.Re_SourceServlet;
 import eu.monnetproject.re_source.xml.XML2RDFConverter;
-import static eu.monnetproject.re_source.util.XMLUtils.escapeXML;
-import java.io.PrintWriter;
+import eu.monnetproject.re_source.util.EscapingWriter;
 import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Write as simple style-able HTML with RDFa
+ * Write as simple style-able HTML with RDFa, using the prefixes of a
+ * {@link NamespaceRegistry}. As resources are written inside the resources
+ * that link to them, this writer does not stream, as it would have to collect
+ * all triples before writing any.
  *
  * @author John McCrae
  */
-public class HTMLWriter implements RDFWriter {
+public class HTMLWriter implements PageRDFWriter {
 
     private final String localPrefix;
+    private final NamespaceRegistry registry;
 
     public HTMLWriter() {
-        this.localPrefix = "";
+        this("");
     }
 
     public HTMLWriter(String localPrefix) {
+        this(localPrefix, NamespaceRegistry.getInstance());
+    }
+
+    public HTMLWriter(String localPrefix, NamespaceRegistry registry) {
         this.localPrefix = localPrefix;
+        this.registry = registry;
     }
 
     @Override
     public void write(URIRef headResource, Writer out2) {
-        final PrintWriter out = new PrintWriter(out2);
-        final PrefixTool prefixTool = new PrefixTool();
-        prefixTool.addRecursively(headResource);
+        write(headResource, Collections.<Resource>emptyList(), out2);
+    }
+
+    @Override
+    public void write(URIRef headResource, Collection<? extends Resource> resources, Writer out2) {
+        final EscapingWriter out = EscapingWriter.wrap(out2);
+        final PrefixTool prefixTool = new PrefixTool(registry);
         writeHeader(out, prefixTool, headResource);
 
-        writeResource(headResource, null, out, prefixTool, new HashSet<Resource>());
-        
+        final Set<Resource> done = new HashSet<Resource>();
+        writeResource(headResource, null, out, prefixTool, done);
+        for (Resource resource : resources) {
+            if (!resource.equals(headResource)) {
+                writeResource(headResource, resource, out, prefixTool, done);
+            }
+        }
+
         writeFooter(out);
 
         out.flush();
     }
 
-    private void writeFooter(final PrintWriter out) {
+    private void writeFooter(final EscapingWriter out) {
         out.println("<span class=\"footer\"></span>");
         out.println("</body>");
         out.println("</html>");
     }
 
-    private void writeHeader(final PrintWriter out, final PrefixTool prefixTool, URIRef headResource) {
+    private void writeHeader(final EscapingWriter out, final PrefixTool prefixTool, URIRef headResource) {
         out.println("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\"");
         out.println("\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">");
         out.println();
         out.println("<html xmlns=\"http://www.w3.org/1999/xhtml\"");
         for (String prefix : prefixTool.getPrefixes()) {
-            out.print(" xmlns:" + prefix + "=\"" + prefixTool.full(prefix) + "\"");
+            out.print(" xmlns:").print(prefix).print("=\"").printXML(prefixTool.full(prefix)).print("\"");
         }
         out.println(" version=\"XHTML+RDFa 1.0\">");
-        out.println("<link rel=\"stylesheet\" type=\"text/css\" href=\"" + Re_SourceServlet.contextPath() + Re_SourceServlet.getProperty("main.css", "/default.css") + "\" />");
+        out.print("<link rel=\"stylesheet\" type=\"text/css\" href=\"").print(Re_SourceServlet.contextPath()).print(Re_SourceServlet.getProperty("main.css", "/default.css")).println("\" />");
         out.println("<head>");
-        out.println("<title>" + Re_SourceServlet.servletTitle() + "</title>");
+        out.print("<title>").printXML(Re_SourceServlet.servletTitle()).println("</title>");
         out.println("</head>");
         out.println("<span class=\"header\"></span>");
         if (headResource instanceof URIRef) {
-            out.println("<body about=\"" + ((URIRef) headResource).getURI().toString() + "\">");
+            out.print("<body about=\"").printXML(((URIRef) headResource).getURI().toString()).println("\">");
         } else {
             out.println("<body>");
         }
     }
 
-    private void writeResource(URIRef headResource, Resource resource, PrintWriter out, PrefixTool prefixTool, Set<Resource> done) {
+    private void writeResource(URIRef headResource, Resource resource, EscapingWriter out, PrefixTool prefixTool, Set<Resource> done) {
         // Prevent closed loops
         if (resource != null && done.contains(resource)) {
             return;
@@ -107,9 +129,9 @@ public class HTMLWriter implements RDFWriter {
         done.add(resource);
 
         if (resource != null && resource instanceof URIRef) {
-            out.println("\t<div about=\"" + ((URIRef) resource).getURI().toString() + "\" class=\"uriref\">");
+            out.print("\t<div about=\"").printXML(((URIRef) resource).getURI().toString()).println("\" class=\"uriref\">");
         } else if (resource != null) {
-            out.println("\t<div id=\"" + ((BNode) resource).getId() + "\" class=\"bnode\">");
+            out.print("\t<div id=\"").printXML(((BNode) resource).getId()).println("\" class=\"bnode\">");
         }
         for (URIRef prop : (resource == null ? headResource : resource).getTriples().keySet()) {
             // We print the property for every triple (it looks better)
@@ -119,21 +141,34 @@ public class HTMLWriter implements RDFWriter {
                 }
                 // Attempt to split the property into a nice URI
                 final String[] ss = prefixTool.split(prop.getURI());
-                String rel;
                 if (ss.length == 2) {
-                    rel = ss[0] + ":" + ss[1];
+                    out.print("\t\t<div property=\"").print(ss[0]).print(":").print(ss[1]);
                 } else {
                     assert (ss.length == 1);
-                    rel = ss[0];
+                    // RDFa 1.0 only accepts CURIEs here, so declare a prefix on the element
+                    final String[] local = PrefixTool.splitLocal(ss[0]);
+                    if (local == null) {
+                        throw new RuntimeException("Bad URI " + ss[0]);
+                    }
+                    out.print("\t\t<div xmlns:").print(PrefixTool.RESERVED_NS).print("=\"").printXML(local[0])
+                            .print("\" property=\"").print(PrefixTool.RESERVED_NS).print(":").print(local[1]);
+                }
+                out.print("\" class=\"property\"><a href=\"").printXML(prop.getURI().toString()).print("\" class=\"property\">");
+                if (prop.getURI().getFragment() != null) {
+                    out.printXML(prop.getURI().getFragment());
+                } else if (ss.length == 2) {
+                    out.print(ss[0]).print(":").print(ss[1]);
+                } else {
+                    out.printXML(ss[0]);
                 }
-                String frag = prop.getURI().getFragment() == null ? rel : prop.getURI().getFragment();
-                out.println("\t\t<div property=\"" + rel + "\" class=\"property\"><a href=\"" + prop.getURI() + "\" class=\"property\">" + frag + "</a>");
+                out.println("</a>");
 
                 // For links to external resources
                 if (value instanceof URIRef) {
                     final String uriStr = ((URIRef) value).getURI().toString();
                     if (!uriStr.startsWith(localPrefix)) {
-                        out.println("\t\t\t<a href=\"" + uriStr + "\" about=\"" + uriStr + " \" class=\"uriref\">" + uriStr +"</a>");
+                        out.print("\t\t\t<a href=\"").printXML(uriStr).print("\" about=\"").printXML(uriStr).print("\" class=\"uriref\">").printXML(uriStr).println("</a>");
+                        out.println("\t\t</div>");
                         continue;
                     }
                 }
@@ -143,12 +178,18 @@ public class HTMLWriter implements RDFWriter {
                 } else {
                     final Literal literal = (Literal) value;
                     if (literal.getLanguage() != null) {
-                        out.println("\t\t\t<span xml:lang=\"" + literal.getLanguage() + "\" class=\"langliteral\">" + escapeXML(literal.getValue()) + "</span>");
+                        out.print("\t\t\t<span xml:lang=\"").printXML(literal.getLanguage()).print("\" class=\"langliteral\">");
                     } else if (literal.getDatatype() != null) {
-                        out.println("\t\t\t<span rdf:datatype=\"" + literal.getDatatype().toString() + "\" class=\"typedliteral\">" + escapeXML(literal.getValue()) + "</span>");
+                        out.print("\t\t\t<span rdf:datatype=\"").printXML(literal.getDatatype().toString()).print("\" class=\"typedliteral\">");
+                    } else {
+                        out.print("\t\t\t<span class=\"literal\">");
+                    }
+                    if (literal instanceof PrimitiveLiteral) {
+                        ((PrimitiveLiteral) literal).print(out);
                     } else {
-                        out.println("\t\t\t<span class=\"literal\">" + escapeXML(literal.getValue()) + "</span>");
+                        out.printXML(literal.getValue());
                     }
+                    out.println("</span>");
                 }
                 out.println("\t\t</div>");
 
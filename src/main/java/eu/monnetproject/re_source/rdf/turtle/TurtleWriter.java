@@ -26,44 +26,72 @@
  *********************************************************************************/
 package eu.monnetproject.re_source.rdf.turtle;
 
+import eu.monnetproject.re_source.rdf.BNode;
+import eu.monnetproject.re_source.rdf.Literal;
+import eu.monnetproject.re_source.rdf.NamespaceRegistry;
 import eu.monnetproject.re_source.rdf.PrefixTool;
-import eu.monnetproject.re_source.rdf.RDFWriter;
+import eu.monnetproject.re_source.rdf.PrimitiveLiteral;
 import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.StreamingRDFWriter;
+import eu.monnetproject.re_source.rdf.TripleSink;
 import eu.monnetproject.re_source.rdf.URIRef;
 import eu.monnetproject.re_source.rdf.Value;
-import java.io.PrintWriter;
+import eu.monnetproject.re_source.util.EscapingWriter;
 import java.io.Writer;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
 /**
- * Writes a linked data resource in the Turtle format
+ * Writes a linked data resource in the Turtle format. The prefixes are those
+ * of a {@link NamespaceRegistry}, so the graph is written in a single pass.
  * 
  * @author John McCrae
  */
-public class TurtleWriter implements RDFWriter {
+public class TurtleWriter implements StreamingRDFWriter {
+
+    private final NamespaceRegistry registry;
+
+    /**
+     * Create a writer using the application's namespace registry
+     */
+    public TurtleWriter() {
+        this(NamespaceRegistry.getInstance());
+    }
+
+    /**
+     * Create a writer
+     * @param registry The registry of namespaces to use
+     */
+    public TurtleWriter(NamespaceRegistry registry) {
+        this.registry = registry;
+    }
 
     @Override
     public void write(URIRef headResource, Writer out2) {
-        final PrintWriter out = new PrintWriter(out2);        
-        final PrefixTool prefixTool = new PrefixTool();
-        writeHeader(prefixTool, headResource, out);
+        final EscapingWriter out = EscapingWriter.wrap(out2);
+        final PrefixTool prefixTool = new PrefixTool(registry);
+        writeHeader(prefixTool, out);
         
         writeResource(headResource,out,prefixTool,new HashSet<Resource>());
         
         out.flush();
     }
 
-    private void writeHeader(final PrefixTool prefixTool, URIRef headResource, final PrintWriter out) {
-        prefixTool.addRecursively(headResource);
+    @Override
+    public TripleSink sink(Writer out) {
+        return new TurtleSink(EscapingWriter.wrap(out));
+    }
+
+    private void writeHeader(final PrefixTool prefixTool, final EscapingWriter out) {
         for(String prefix : prefixTool.getPrefixes()) {
-            out.println("@prefix " + prefix + ": <" + prefixTool.full(prefix)+ "> .");
+            out.print("@prefix ").print(prefix).print(": <").print(prefixTool.full(prefix)).println("> .");
         }
-        out.println("");
+        out.println();
     }
         
-    private void writeResource(Resource resource, PrintWriter out, PrefixTool prefixTool, Set<Resource> done) {
+    private void writeResource(Resource resource, EscapingWriter out, PrefixTool prefixTool, Set<Resource> done) {
         // Prevent loops
         if(done.contains(resource))
             return;
@@ -71,15 +99,17 @@ public class TurtleWriter implements RDFWriter {
         
         if(resource.getTriples().isEmpty())
             return;
-        out.print(prefixTool.toString(resource) + " ");
+        writeValue(resource, out, prefixTool);
+        out.print(" ");
         final Iterator<URIRef> propIter = resource.getTriples().keySet().iterator();
         while(propIter.hasNext()) {
             final URIRef prop = propIter.next();
-            out.print(prefixTool.toString(prop) + " ");
+            writeURI(prefixTool.split(prop.getURI()), out);
+            out.print(" ");
             final Iterator<Value> valueIter = resource.getTriples().get(prop).iterator();
             while(valueIter.hasNext()) {
                 final Value value = valueIter.next();
-                out.print(prefixTool.toString(value));
+                writeValue(value, out, prefixTool);
                 // Calculate continuation
                 if(valueIter.hasNext()) {
                     out.print(" ,\n\t\t");
@@ -101,4 +131,92 @@ public class TurtleWriter implements RDFWriter {
             }
         }
     }
+
+    private static void writeValue(Value value, EscapingWriter out, PrefixTool prefixTool) {
+        if (value instanceof URIRef) {
+            writeURI(prefixTool.split(((URIRef) value).getURI()), out);
+        } else if (value instanceof BNode) {
+            out.print("_:").print(((BNode) value).getId());
+        } else {
+            final Literal literal = (Literal) value;
+            out.print("\"");
+            if (literal instanceof PrimitiveLiteral) {
+                ((PrimitiveLiteral) literal).print(out);
+            } else {
+                out.printLiteral(literal.getValue());
+            }
+            out.print("\"");
+            if (literal.getLanguage() != null) {
+                out.print("@").print(literal.getLanguage());
+            } else if (literal.getDatatype() != null) {
+                out.print("^^");
+                writeURI(prefixTool.split(literal.getDatatype()), out);
+            }
+        }
+    }
+
+    private static void writeURI(String[] ss, EscapingWriter out) {
+        if (ss.length == 2) {
+            out.print(ss[0]).print(":").print(ss[1]);
+        } else {
+            out.print("<").print(ss[0]).print(">");
+        }
+    }
+
+    /**
+     * Writes triples as they arrive. Consecutive triples about the same
+     * subject are grouped together, but a subject may be written more than
+     * once if its triples are interleaved with others.
+     */
+    private class TurtleSink implements TripleSink {
+
+        private final EscapingWriter out;
+        private final PrefixTool prefixTool = new PrefixTool(registry);
+        private Resource subject;
+        private URIRef property;
+
+        public TurtleSink(EscapingWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void startDocument(URIRef headResource, Collection<String> namespaces) {
+            for (String namespace : namespaces) {
+                prefixTool.addNamespace(namespace);
+            }
+            writeHeader(prefixTool, out);
+        }
+
+        @Override
+        public void triple(Resource subject, URIRef property, Value object) {
+            if (subject.equals(this.subject)) {
+                if (property.equals(this.property)) {
+                    out.print(" ,\n\t\t");
+                } else {
+                    out.print(" ;\n\t");
+                    writeURI(prefixTool.split(property.getURI()), out);
+                    out.print(" ");
+                }
+            } else {
+                if (this.subject != null) {
+                    out.print(" .\n\n");
+                }
+                writeValue(subject, out, prefixTool);
+                out.print(" ");
+                writeURI(prefixTool.split(property.getURI()), out);
+                out.print(" ");
+            }
+            writeValue(object, out, prefixTool);
+            this.subject = subject;
+            this.property = property;
+        }
+
+        @Override
+        public void endDocument() {
+            if (subject != null) {
+                out.print(" .\n");
+            }
+            out.flush();
+        }
+    }
 }
@@ -28,29 +28,50 @@ package eu.monnetproject.re_source.rdf.xml;
 
 import eu.monnetproject.re_source.rdf.BNode;
 import eu.monnetproject.re_source.rdf.Literal;
+import eu.monnetproject.re_source.rdf.NamespaceRegistry;
 import eu.monnetproject.re_source.rdf.PrefixTool;
-import eu.monnetproject.re_source.rdf.RDFWriter;
+import eu.monnetproject.re_source.rdf.PrimitiveLiteral;
 import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.StreamingRDFWriter;
+import eu.monnetproject.re_source.rdf.TripleSink;
 import eu.monnetproject.re_source.rdf.URIRef;
 import eu.monnetproject.re_source.rdf.Value;
-import static eu.monnetproject.re_source.util.XMLUtils.escapeXML;
-import java.io.PrintWriter;
+import eu.monnetproject.re_source.util.EscapingWriter;
 import java.io.Writer;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Writer for RDF/XML data
+ * Writer for RDF/XML data. The namespaces declared are those of a
+ * {@link NamespaceRegistry}, so the graph is written in a single pass.
  *
  * @author John McCrae
  */
-public class RDFXMLWriter implements RDFWriter {
+public class RDFXMLWriter implements StreamingRDFWriter {
+
+    private final NamespaceRegistry registry;
+
+    /**
+     * Create a writer using the application's namespace registry
+     */
+    public RDFXMLWriter() {
+        this(NamespaceRegistry.getInstance());
+    }
+
+    /**
+     * Create a writer
+     * @param registry The registry of namespaces to use
+     */
+    public RDFXMLWriter(NamespaceRegistry registry) {
+        this.registry = registry;
+    }
 
     @Override
     public void write(URIRef headResource, Writer out2) {
-        final PrintWriter out = new PrintWriter(out2);
-        final PrefixTool prefixTool = new PrefixTool();
-        writeHeader(prefixTool, headResource, out);
+        final EscapingWriter out = EscapingWriter.wrap(out2);
+        final PrefixTool prefixTool = new PrefixTool(registry);
+        writeHeader(prefixTool, out);
 
         writeResource(headResource, out, prefixTool, new HashSet<Resource>());
 
@@ -59,70 +80,35 @@ public class RDFXMLWriter implements RDFWriter {
         out.flush();
     }
 
-    private void writeFooter(final PrintWriter out) {
+    @Override
+    public TripleSink sink(Writer out) {
+        return new RDFXMLSink(EscapingWriter.wrap(out));
+    }
+
+    private void writeFooter(final EscapingWriter out) {
         out.println("</rdf:RDF>");
     }
 
-    private void writeHeader(final PrefixTool prefixTool, URIRef headResource, final PrintWriter out) {
-        prefixTool.addRecursively(headResource);
+    private void writeHeader(final PrefixTool prefixTool, final EscapingWriter out) {
         out.println("<?xml version=\"1.0\"?>");
         out.print("<rdf:RDF");
         for (String prefix : prefixTool.getPrefixes()) {
-            out.print(" xmlns:" + prefix + "=\"" + prefixTool.full(prefix) + "\"");
+            out.print(" xmlns:").print(prefix).print("=\"").printXML(prefixTool.full(prefix)).print("\"");
         }
         out.println(">");
     }
 
-    private void writeResource(Resource resource, PrintWriter out, PrefixTool prefixTool, Set<Resource> done) {
+    private void writeResource(Resource resource, EscapingWriter out, PrefixTool prefixTool, Set<Resource> done) {
         // Prevent closed loops
         if (done.contains(resource)) {
             return;
         }
         done.add(resource);
 
-        if (resource instanceof URIRef) {
-            out.println("\t<rdf:Description rdf:about=\"" + ((URIRef) resource).getURI().toString() + "\">");
-        } else {
-            out.println("\t<rdf:Description rdf:nodeID=\"" + ((BNode) resource).getId() + "\">");
-        }
+        writeStartDescription(resource, out);
         for (URIRef prop : resource.getTriples().keySet()) {
             for (Value value : resource.getTriples().get(prop)) {
-                final String[] ss = prefixTool.split(prop.getURI());
-                String tag;
-                if (ss.length == 2) {
-                    tag = ss[0] + ":" + ss[1];
-                    out.print("\t\t<" + tag);
-                } else {
-                    assert (ss.length == 1);
-                    // Issue here is that XML cannot name nodes with URIs so we must find a way to represent it as a QName
-                    int n = ss[0].lastIndexOf('#');
-                    if (n < 0 || !ss[0].substring(n).matches(PrefixTool.validPrefix)) {
-                        n = ss[0].lastIndexOf('/');
-                        if (n < 0 || !ss[0].substring(n).matches(PrefixTool.validPrefix)) {
-                            n = ss[0].length() - 1;
-                            if (n < 0 || !ss[0].substring(n).matches(PrefixTool.validPrefix)) {
-                                // I believe this is unreachable but cannot verify at the moment
-                                throw new RuntimeException("Bad URI " + ss[0]);
-                            }
-                        }
-                    }
-                    tag = "ns:" + ss[0].substring(n);
-                    out.print("\t\t<ns:" + ss[0].substring(n) + " xmlns:ns=\"" + ss[0].substring(0, n));
-                }
-                if (value instanceof URIRef) {
-                    out.println(" rdf:resource=\"" + ((URIRef) value).toString() + "\"/>");
-                } else if (value instanceof BNode) {
-                    out.println(" rdf:nodeID=\"" + ((BNode) value).getId() + "\"/>");
-                } else {
-                    final Literal literal = (Literal) value;
-                    if (literal.getLanguage() != null) {
-                        out.println(" xml:lang=\"" + literal.getLanguage() + "\">" + escapeXML(literal.getValue()) + "</" + tag + ">");
-                    } else if (literal.getDatatype() != null) {
-                        out.println(" rdf:datatype=\"" + literal.getDatatype().toString() + "\">" + escapeXML(literal.getValue()) + "</" + tag + ">");
-                    } else {
-                        out.println(">" + escapeXML(literal.getValue()) + "</" + tag + ">");
-                    }
-                }
+                writeProperty(prop, value, out, prefixTool);
             }
         }
         out.println("\t</rdf:Description>");
@@ -135,4 +121,97 @@ public class RDFXMLWriter implements RDFWriter {
             }
         }
     }
+
+    private void writeStartDescription(Resource resource, EscapingWriter out) {
+        if (resource instanceof URIRef) {
+            out.print("\t<rdf:Description rdf:about=\"").printXML(((URIRef) resource).getURI().toString()).println("\">");
+        } else {
+            out.print("\t<rdf:Description rdf:nodeID=\"").printXML(((BNode) resource).getId()).println("\">");
+        }
+    }
+
+    private void writeProperty(URIRef prop, Value value, EscapingWriter out, PrefixTool prefixTool) {
+        final String[] ss = prefixTool.split(prop.getURI());
+        final String prefix, name;
+        if (ss.length == 2) {
+            prefix = ss[0];
+            name = ss[1];
+            out.print("\t\t<").print(prefix).print(":").print(name);
+        } else {
+            assert (ss.length == 1);
+            // Issue here is that XML cannot name nodes with URIs so we must find a way to represent it as a QName
+            final String[] local = PrefixTool.splitLocal(ss[0]);
+            if (local == null) {
+                // I believe this is unreachable but cannot verify at the moment
+                throw new RuntimeException("Bad URI " + ss[0]);
+            }
+            prefix = PrefixTool.RESERVED_NS;
+            name = local[1];
+            out.print("\t\t<ns:").print(name).print(" xmlns:ns=\"").printXML(local[0]).print("\"");
+        }
+        if (value instanceof URIRef) {
+            out.print(" rdf:resource=\"").printXML(((URIRef) value).getURI().toString()).println("\"/>");
+        } else if (value instanceof BNode) {
+            out.print(" rdf:nodeID=\"").printXML(((BNode) value).getId()).println("\"/>");
+        } else {
+            final Literal literal = (Literal) value;
+            if (literal.getLanguage() != null) {
+                out.print(" xml:lang=\"").printXML(literal.getLanguage()).print("\">");
+            } else if (literal.getDatatype() != null) {
+                out.print(" rdf:datatype=\"").printXML(literal.getDatatype().toString()).print("\">");
+            } else {
+                out.print(">");
+            }
+            if (literal instanceof PrimitiveLiteral) {
+                ((PrimitiveLiteral) literal).print(out);
+            } else {
+                out.printXML(literal.getValue());
+            }
+            out.print("</").print(prefix).print(":").print(name).println(">");
+        }
+    }
+
+    /**
+     * Writes triples as they arrive. Consecutive triples about the same
+     * subject are written in a single description.
+     */
+    private class RDFXMLSink implements TripleSink {
+
+        private final EscapingWriter out;
+        private final PrefixTool prefixTool = new PrefixTool(registry);
+        private Resource subject;
+
+        public RDFXMLSink(EscapingWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void startDocument(URIRef headResource, Collection<String> namespaces) {
+            for (String namespace : namespaces) {
+                prefixTool.addNamespace(namespace);
+            }
+            writeHeader(prefixTool, out);
+        }
+
+        @Override
+        public void triple(Resource subject, URIRef property, Value object) {
+            if (!subject.equals(this.subject)) {
+                if (this.subject != null) {
+                    out.println("\t</rdf:Description>");
+                }
+                writeStartDescription(subject, out);
+                this.subject = subject;
+            }
+            writeProperty(property, object, out, prefixTool);
+        }
+
+        @Override
+        public void endDocument() {
+            if (subject != null) {
+                out.println("\t</rdf:Description>");
+            }
+            writeFooter(out);
+            out.flush();
+        }
+    }
 }
@@ -0,0 +1,98 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.cache.ChangeMonitor;
+import java.io.File;
+import java.io.IOException;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts a {@link ChangeMonitor} for the data folder when the web application
+ * starts, so that the servlets can drop data derived from files that have
+ * changed. The monitor is only started if the web application is deployed as
+ * a directory. It is configured by the following context parameter:
+ *
+ * <ul> <li>watch.debounce: The number of milliseconds without changes to
+ * wait for before changes are reported, a negative value disables the monitor
+ * (default: 500) </ul>
+ *
+ * @author John McCrae
+ */
+public class ChangeMonitorListener implements ServletContextListener {
+
+    private static final String ATTRIBUTE = ChangeMonitor.class.getName();
+
+    /**
+     * Get the monitor of a web application
+     * @param context The servlet context
+     * @return The monitor or null if changes are not monitored
+     */
+    public static ChangeMonitor monitor(ServletContext context) {
+        return (ChangeMonitor) context.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * The directory of the data folder in the file system
+     * @param context The servlet context
+     * @return The directory or null if the data folder is not a directory
+     */
+    public static File dataDirectory(ServletContext context) {
+        final String path = context.getRealPath(Re_SourceServlet.DATA_PATH);
+        return path == null || !new File(path).isDirectory() ? null : new File(path).getAbsoluteFile();
+    }
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        final ServletContext context = sce.getServletContext();
+        final String debounce = context.getInitParameter("watch.debounce");
+        final long debounceMillis = debounce == null ? 500 : Long.parseLong(debounce.trim());
+        final File dataDirectory = dataDirectory(context);
+        if (debounceMillis < 0 || dataDirectory == null) {
+            return;
+        }
+        try {
+            final ChangeMonitor monitor = new ChangeMonitor(debounceMillis, context);
+            monitor.watch(dataDirectory);
+            monitor.start();
+            context.setAttribute(ATTRIBUTE, monitor);
+        } catch (IOException x) {
+            context.log("Could not watch " + dataDirectory, x);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        final ChangeMonitor monitor = monitor(sce.getServletContext());
+        if (monitor != null) {
+            monitor.close();
+            sce.getServletContext().removeAttribute(ATTRIBUTE);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.cache.LRUCache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chooses the MIME type of a response from the Accept header of a request.
+ * Media ranges are ordered by quality (q) and then specificity, so that
+ * "text/turtle" overrides "text/*" which overrides "*&#47;*". Of the types that are
+ * acceptable with the highest quality, the one matched by the range listed
+ * first by the client is chosen, and then the one offered first. As clients
+ * send only a few distinct Accept headers, the decision for each header is
+ * cached.
+ *
+ * @author John McCrae
+ */
+final class ContentNegotiator {
+
+    private static final int CACHE_SIZE = 1000;
+    // Longer headers are negotiated but not cached
+    private static final int MAX_CACHED_LENGTH = 1024;
+    // Cached for headers that accept none of the offered types
+    private static final String NONE = "";
+    private final String[] offers;
+    private final Set<String> exactOnly;
+    private final LRUCache<String, String> decisions = new LRUCache<String, String>(CACHE_SIZE);
+
+    /**
+     * Create a negotiator
+     * @param offers The MIME types that can be returned, in order of
+     * preference
+     * @param exactOnly Those types that are only returned if the client names
+     * them, i.e., not for wildcards
+     */
+    ContentNegotiator(List<String> offers, Collection<String> exactOnly) {
+        this.offers = offers.toArray(new String[offers.size()]);
+        this.exactOnly = new HashSet<String>(exactOnly);
+    }
+
+    /**
+     * Create a negotiator
+     * @param offers The MIME types that can be returned, in order of
+     * preference
+     */
+    ContentNegotiator(List<String> offers) {
+        this(offers, Collections.<String>emptySet());
+    }
+
+    /**
+     * Choose the MIME type of a response
+     * @param accept The Accept header (may be null, which accepts anything)
+     * @return The MIME type or null if no offered type is acceptable
+     */
+    String negotiate(String accept) {
+        if (accept == null) {
+            accept = "*/*";
+        }
+        String decision = decisions.get(accept);
+        if (decision == null) {
+            decision = choose(accept);
+            if (accept.length() <= MAX_CACHED_LENGTH) {
+                decisions.put(accept, decision == null ? NONE : decision);
+            }
+        }
+        return decision == NONE ? null : decision;
+    }
+
+    private String choose(String accept) {
+        final List<MediaRange> ranges = parse(accept);
+        String best = null;
+        double bestQ = 0.0;
+        int bestIndex = Integer.MAX_VALUE;
+        for (String offer : offers) {
+            final MediaRange range = match(offer, ranges);
+            if (range == null || range.q <= 0.0) {
+                continue;
+            }
+            if (range.q > bestQ || (range.q == bestQ && range.index < bestIndex)) {
+                best = offer;
+                bestQ = range.q;
+                bestIndex = range.index;
+            }
+        }
+        return best;
+    }
+
+    // The most specific range that matches a type
+    private MediaRange match(String offer, List<MediaRange> ranges) {
+        final int slash = offer.indexOf('/');
+        MediaRange best = null;
+        int bestSpecificity = -1;
+        for (MediaRange range : ranges) {
+            final int specificity;
+            if (range.type.equals(offer)) {
+                specificity = 2;
+            } else if (exactOnly.contains(offer)) {
+                continue;
+            } else if (range.type.equals("*/*")) {
+                specificity = 0;
+            } else if (range.type.length() == slash + 2 && range.type.endsWith("/*") && offer.startsWith(range.type.substring(0, slash + 1))) {
+                specificity = 1;
+            } else {
+                continue;
+            }
+            if (specificity > bestSpecificity) {
+                best = range;
+                bestSpecificity = specificity;
+            }
+        }
+        return best;
+    }
+
+    private static List<MediaRange> parse(String accept) {
+        final List<MediaRange> ranges = new ArrayList<MediaRange>();
+        for (String field : accept.split(",")) {
+            final String[] params = field.split(";");
+            final String type = params[0].trim().toLowerCase();
+            if (type.indexOf('/') <= 0) {
+                continue;
+            }
+            double q = 1.0;
+            for (int i = 1; i < params.length; i++) {
+                final String[] param = params[i].split("=", 2);
+                if (param.length == 2 && param[0].trim().equalsIgnoreCase("q")) {
+                    q = quality(param[1].trim());
+                }
+            }
+            ranges.add(new MediaRange(type, q, ranges.size()));
+        }
+        return ranges;
+    }
+
+    // The value of a q parameter, malformed values are ignored as if the parameter was not given
+    private static double quality(String value) {
+        try {
+            final double q = Double.parseDouble(value);
+            return q >= 0.0 && q <= 1.0 ? q : 1.0;
+        } catch (NumberFormatException x) {
+            return 1.0;
+        }
+    }
+
+    private static final class MediaRange {
+
+        final String type;
+        final double q;
+        final int index;
+
+        MediaRange(String type, double q, int index) {
+            this.type = type;
+            this.q = q;
+            this.index = index;
+        }
+    }
+}
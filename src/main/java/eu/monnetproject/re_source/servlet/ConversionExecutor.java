@@ -0,0 +1,170 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs conversions on a fixed number of threads with a bounded queue, so that
+ * a burst of requests for large resources cannot take all the threads of the
+ * container. Tasks are refused rather than queued when the queue is full.
+ * Queued tasks that are {@link Refusable} are refused when the executor is
+ * shut down, so that they can answer the requests waiting for them.
+ *
+ * @author John McCrae
+ */
+public final class ConversionExecutor {
+
+    private final int threads;
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+    // Moving average of the time a task takes
+    private long averageNanos = 0;
+
+    /**
+     * A task that must be told if it will never be run
+     */
+    public interface Refusable extends Runnable {
+
+        /**
+         * Called instead of {@link #run()} if the executor is shut down while
+         * the task is queued
+         */
+        void refuse();
+    }
+
+    /**
+     * Create an executor
+     *
+     * @param threads The number of conversions run at once
+     * @param queueSize The number of conversions that may wait for a thread
+     */
+    public ConversionExecutor(int threads, int queueSize) {
+        this(threads, queueSize, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * Create an executor whose threads have a given priority
+     *
+     * @param threads The number of conversions run at once
+     * @param queueSize The number of conversions that may wait for a thread
+     * @param priority The priority of the threads
+     */
+    public ConversionExecutor(int threads, int queueSize, final int priority) {
+        this.threads = threads;
+        this.queue = queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new SynchronousQueue<Runnable>();
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "re_source-conversion-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(priority);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Run a task when a thread is free
+     *
+     * @param task The task
+     * @return false if the queue is full and the task will not be run
+     */
+    public boolean submit(final Runnable task) {
+        try {
+            executor.execute(new Timed(task));
+            return true;
+        } catch (RejectedExecutionException x) {
+            return false;
+        }
+    }
+
+    private synchronized void record(long nanos) {
+        averageNanos = averageNanos == 0 ? nanos : averageNanos + (nanos - averageNanos) / 8;
+    }
+
+    /**
+     * An estimate of the number of seconds until a task would be accepted,
+     * for the Retry-After header
+     */
+    public synchronized int retryAfter() {
+        final long nanos = averageNanos * (queue.size() + threads) / threads;
+        return (int) Math.max(1, Math.min(3600, TimeUnit.NANOSECONDS.toSeconds(nanos) + 1));
+    }
+
+    /**
+     * The number of tasks waiting for a thread
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Stop the threads, refusing queued tasks that are {@link Refusable} and
+     * leaving other queued tasks unrun
+     */
+    public void shutdown() {
+        for (Runnable queued : executor.shutdownNow()) {
+            final Runnable task = ((Timed) queued).task;
+            if (task instanceof Refusable) {
+                try {
+                    ((Refusable) task).refuse();
+                } catch (RuntimeException x) {
+                    Re_SourceServlet.contextLog("Could not refuse a queued conversion", x);
+                }
+            }
+        }
+    }
+
+    // Runs a task, recording how long it takes
+    private final class Timed implements Runnable {
+
+        private final Runnable task;
+
+        Timed(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -26,28 +26,122 @@
  *********************************************************************************/
 package eu.monnetproject.re_source.servlet;
 
-import eu.monnetproject.re_source.Converter;
+import eu.monnetproject.re_source.Page;
+import eu.monnetproject.re_source.PagingConverter;
 import eu.monnetproject.re_source.SourceParseException;
+import eu.monnetproject.re_source.StreamingConverter;
+import eu.monnetproject.re_source.SubResourceConverter;
+import eu.monnetproject.re_source.cache.LRUCache;
+import eu.monnetproject.re_source.rdf.TripleSink;
 import eu.monnetproject.re_source.rdf.URIRef;
+import static eu.monnetproject.re_source.util.URLUtils.contentLength;
+import static eu.monnetproject.re_source.util.URLUtils.fileName;
+import static eu.monnetproject.re_source.util.URLUtils.lastModified;
+import eu.monnetproject.re_source.xml.DocumentPager;
+import eu.monnetproject.re_source.xml.ElementIndex;
+import eu.monnetproject.re_source.xml.ParallelConverter;
 import eu.monnetproject.re_source.xml.XML2RDFConverter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
  * The default converter, accepts files ending with ".xml" and applies the default
- * converter
+ * converter. Single nodes are converted by looking them up in an index of the
+ * elements of the file, which is configured by the following servlet
+ * parameters:
+ *
+ * <ul> <li>index.records: A comma-separated list of the elements to index (in
+ * addition to those with an id attribute), or * for all elements (default: *)
+ * <li>index.path: A directory in the file system where indexes are stored so
+ * they need not be rebuilt after a restart (default: not stored)
+ * <li>cache.index.entries: The maximum number of index entries kept in memory
+ * (default: 2000000)
+ * <li>paging.threshold: The number of elements above which a file is returned
+ * in pages, or a negative number to never page (default: 100000)
+ * <li>paging.size: The number of elements in each page (default: 1000)
+ * <li>parallel.threshold: Files larger than this many bytes are converted on
+ * several threads, a negative value disables this (default: 1048576)
+ * <li>parallel.depth: The depth of the elements (the root element is at depth
+ * 0) before which the file is split for parallel conversion (default: 2)
+ * <li>parallel.threads: The number of threads for parallel conversion
+ * (default: the number of processors) </ul>
+ *
+ * Parallel conversion only applies when a whole file is converted. The
+ * servlet does not do this for files with more than paging.threshold
+ * elements, which are returned in pages of paging.size elements, nor for
+ * files larger than its streaming.threshold, which are streamed unless they
+ * are returned as HTML. So with the default settings the servlet converts
+ * files between one and sixteen megabytes on several threads, as well as the
+ * unpaged files it returns as HTML, and {@link Prerenderer} converts every
+ * file larger than parallel.threshold on several threads.
+ *
+ * The threads for parallel conversion are stopped when the converter is
+ * closed.
  * 
  * @author John McCrae
  */
-public class DefaultConverter implements Converter {
+public class DefaultConverter implements StreamingConverter, SubResourceConverter, PagingConverter, Closeable {
+
+    private static final String INDEX_EXTENSION = ".idx";
+    private final Set<String> records;
+    private final File indexPath;
+    private final LRUCache<String, ElementIndex> indexes;
+    private final int pagingThreshold;
+    private final int pageSize;
+    private final long parallelThreshold;
+    private final int parallelDepth;
+    private final ForkJoinPool pool;
+
+    public DefaultConverter() {
+        final String recordsParam = Re_SourceServlet.getProperty("index.records", "*").trim();
+        this.records = recordsParam.equals("*") ? null : new HashSet<String>(Arrays.asList(recordsParam.split("\\s*,\\s*")));
+        final String indexPathParam = Re_SourceServlet.getProperty("index.path", null);
+        this.indexPath = indexPathParam == null ? null : new File(indexPathParam);
+        this.indexes = new LRUCache<String, ElementIndex>(Long.parseLong(Re_SourceServlet.getProperty("cache.index.entries", "2000000").trim())) {
+            @Override
+            protected long weigh(String key, ElementIndex value) {
+                return value.size() + 1;
+            }
+        };
+        this.pagingThreshold = Integer.parseInt(Re_SourceServlet.getProperty("paging.threshold", "100000").trim());
+        this.pageSize = Integer.parseInt(Re_SourceServlet.getProperty("paging.size", "1000").trim());
+        this.parallelThreshold = Long.parseLong(Re_SourceServlet.getProperty("parallel.threshold", "1048576").trim());
+        this.parallelDepth = Integer.parseInt(Re_SourceServlet.getProperty("parallel.depth", "2").trim());
+        final String threads = Re_SourceServlet.getProperty("parallel.threads", null);
+        this.pool = parallelThreshold < 0 ? null
+                : new ForkJoinPool(threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads.trim()));
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
 
     @Override
     public URIRef convert(URL url, URI resourceUri, String servletPrefix) throws SourceParseException, IOException {
         if(url.getFile().endsWith(".xml")) {
+            if(pool != null && contentLength(url) > parallelThreshold) {
+                final ElementIndex index = index(url);
+                // Around four parts per thread, so that threads finishing early can take another part
+                final int minElements = Math.max(1000, index.getElementCount() / (4 * pool.getParallelism()));
+                return new ParallelConverter(url, index, pool, parallelDepth, minElements).convert(resourceUri, servletPrefix);
+            }
             try {
                 return new XML2RDFConverter(new InputSource(url.openStream()), resourceUri, servletPrefix).toRDF();
             } catch(ParserConfigurationException x) {
@@ -60,4 +154,122 @@ public class DefaultConverter implements Converter {
         }
     }
 
+    @Override
+    public boolean convert(URL url, URI resourceUri, String servletPrefix, TripleSink sink) throws SourceParseException, IOException {
+        if(url.getFile().endsWith(".xml")) {
+            final InputStream in = url.openStream();
+            try {
+                new XML2RDFConverter(new InputSource(in), resourceUri, servletPrefix).toRDF(sink);
+                return true;
+            } catch(ParserConfigurationException x) {
+                throw new RuntimeException(x);
+            } catch(SAXException x) {
+                throw new RuntimeException(x);
+            } finally {
+                in.close();
+            }
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public URIRef convert(URL url, URI resourceUri, String id, String servletPrefix) throws SourceParseException, IOException {
+        if(!url.getFile().endsWith(".xml")) {
+            return null;
+        }
+        final ElementIndex index = index(url);
+        final ElementIndex.Entry entry = index.get(id);
+        if(entry == null) {
+            return null;
+        }
+        final InputStream in = index.open(url, entry);
+        try {
+            return new XML2RDFConverter(new InputSource(in), resourceUri, servletPrefix, entry).toRDF();
+        } catch(ParserConfigurationException x) {
+            throw new RuntimeException(x);
+        } catch(SAXException x) {
+            throw new RuntimeException(x);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public boolean isPaged(URL url) throws IOException {
+        // Every element takes at least four bytes ("<a/>"), so small files need not be indexed
+        return pagingThreshold >= 0 && url.getFile().endsWith(".xml") && contentLength(url) > 4L * pagingThreshold
+                && index(url).getElementCount() > pagingThreshold;
+    }
+
+    @Override
+    public Page convertPage(URL url, URI resourceUri, String pageToken, String servletPrefix) throws SourceParseException, IOException {
+        if(!url.getFile().endsWith(".xml")) {
+            return null;
+        }
+        return new DocumentPager(url, index(url), pageSize).page(resourceUri, servletPrefix, pageToken);
+    }
+
+    // Get the index from memory, the index path or by indexing the file
+    private ElementIndex index(URL url) throws IOException {
+        final long lastModified = lastModified(url);
+        ElementIndex index = indexes.get(url.toString());
+        if(index != null && index.getLastModified() == lastModified && lastModified > 0) {
+            return index;
+        }
+        final File file = indexPath == null || lastModified <= 0 ? null : new File(indexPath, fileName(url.toString()) + INDEX_EXTENSION);
+        index = file == null ? null : readIndex(file, url, lastModified);
+        if(index == null) {
+            index = ElementIndex.build(url, lastModified, records);
+            if(file != null) {
+                writeIndex(file, index);
+            }
+        }
+        indexes.put(url.toString(), index);
+        return index;
+    }
+
+    private static ElementIndex readIndex(File file, URL url, long lastModified) {
+        if(!file.exists()) {
+            return null;
+        }
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                final ElementIndex index = ElementIndex.read(in);
+                if(index.getLastModified() == lastModified && index.getSource().equals(url.toString())) {
+                    return index;
+                } else {
+                    return null;
+                }
+            } finally {
+                in.close();
+            }
+        } catch(IOException x) {
+            Re_SourceServlet.contextLog("Could not read index " + file, x);
+            return null;
+        }
+    }
+
+    private static void writeIndex(File file, ElementIndex index) {
+        try {
+            if(!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Could not create " + file.getParentFile());
+            }
+            // Write to a temporary file first so readers never see a partial index
+            final File tmp = File.createTempFile("index", ".tmp", file.getParentFile());
+            final OutputStream out = new FileOutputStream(tmp);
+            try {
+                index.write(out);
+            } finally {
+                out.close();
+            }
+            if(!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                tmp.delete();
+                throw new IOException("Could not write " + file);
+            }
+        } catch(IOException x) {
+            Re_SourceServlet.contextLog("Could not store index " + file, x);
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.util.URLUtils;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Set;
+import javax.servlet.ServletContext;
+
+/**
+ * A snapshot of the entries of a directory of the web application, sorted by
+ * name, with the size and modification time of each entry
+ *
+ * @author John McCrae
+ */
+final class DirectoryListing {
+
+    private final String[] names;
+    private final long[] sizes, lastModified;
+    private final long created = System.currentTimeMillis();
+
+    DirectoryListing(String[] names, long[] sizes, long[] lastModified) {
+        this.names = names;
+        this.sizes = sizes;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * List a directory
+     * @param context The servlet context
+     * @param rootPath The path of the directory in the web application
+     * (ending in '/')
+     * @return The listing or null if there is no such directory
+     */
+    static DirectoryListing list(ServletContext context, String rootPath) {
+        final Set<String> paths = context.getResourcePaths(rootPath);
+        try {
+            // Some containers list a missing directory as empty
+            if (paths == null || (paths.isEmpty() && context.getResource(rootPath) == null)) {
+                return null;
+            }
+        } catch (MalformedURLException x) {
+            return null;
+        }
+        final String[] names = new String[paths.size()];
+        int n = 0;
+        for (String path : paths) {
+            names[n++] = path.substring(rootPath.length());
+        }
+        Arrays.sort(names);
+        final long[] sizes = new long[n], modified = new long[n];
+        for (int i = 0; i < n; i++) {
+            sizes[i] = modified[i] = -1;
+            if (names[i].endsWith("/")) {
+                continue;
+            }
+            try {
+                final URL resource = context.getResource(rootPath + names[i]);
+                if (resource != null) {
+                    sizes[i] = URLUtils.contentLength(resource);
+                    modified[i] = URLUtils.lastModified(resource);
+                }
+            } catch (IOException x) {
+                // Unknown
+            }
+        }
+        return new DirectoryListing(names, sizes, modified);
+    }
+
+    /**
+     * The number of entries
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * The name of an entry relative to the directory (ending in '/' for
+     * directories)
+     */
+    String name(int i) {
+        return names[i];
+    }
+
+    /**
+     * The size of an entry in bytes or -1 if not known (e.g., for a directory)
+     */
+    long size(int i) {
+        return sizes[i];
+    }
+
+    /**
+     * The modification time of an entry or a value of 0 or less if not known
+     */
+    long lastModified(int i) {
+        return lastModified[i];
+    }
+
+    /**
+     * The time the listing was made
+     */
+    long created() {
+        return created;
+    }
+}
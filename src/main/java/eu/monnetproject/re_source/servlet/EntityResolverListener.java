@@ -0,0 +1,81 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.xml.CatalogEntityResolver;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Configures the {@link CatalogEntityResolver} when the web application
+ * starts, before any servlet parses a document. It is configured by the
+ * following context parameters:
+ *
+ * <ul> <li>xml.catalog: The path in the web application (or else the file
+ * system) of an XML catalog of DTDs and entities, which are loaded at start up
+ * and used instead of fetching them <li>xml.external.entities: What to do with
+ * DTDs and entities of documents that are not in the catalog, one of ignore,
+ * local (read only local files), fetch or reject (default: local) </ul>
+ *
+ * @author John McCrae
+ */
+public class EntityResolverListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        final ServletContext context = sce.getServletContext();
+        final CatalogEntityResolver resolver = CatalogEntityResolver.getInstance();
+        final String policy = context.getInitParameter("xml.external.entities");
+        if (policy != null) {
+            try {
+                resolver.setPolicy(CatalogEntityResolver.Policy.valueOf(policy.trim().toUpperCase()));
+            } catch (IllegalArgumentException x) {
+                throw new IllegalArgumentException("Bad value for xml.external.entities: " + policy);
+            }
+        }
+        final String catalog = context.getInitParameter("xml.catalog");
+        if (catalog != null) {
+            try {
+                URL url = catalog.startsWith("/") ? context.getResource(catalog) : null;
+                if (url == null) {
+                    url = new File(catalog).toURI().toURL();
+                }
+                context.log("Loaded " + resolver.loadCatalog(url) + " entities from " + url);
+            } catch (IOException x) {
+                context.log("Could not load the catalog " + catalog, x);
+            }
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+    }
+}
@@ -26,11 +26,19 @@
  *********************************************************************************/
 package eu.monnetproject.re_source.servlet;
 
-import java.io.PrintWriter;
-import javax.servlet.ServletContext;
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.DCAT;
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.DCTERMS;
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.HYDRA;
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.XSD;
+import eu.monnetproject.re_source.util.EscapingWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
 
 /**
- * Writes index pages as HTML+RDFa, RDF/XML or Turtle
+ * Writes index pages as HTML+RDFa, RDF/XML or Turtle. Each page lists the
+ * entries of a directory listing from one index up to another, with their
+ * sizes and modification times, and links to the next page if there is one.
  * 
  * @author John McCrae
  */
@@ -40,45 +48,120 @@ public class FileLister {
         
     }
     
-    public static void writeFileAsHTML(PrintWriter out, String rootPath, ServletContext context) {
-        
+    /**
+     * Write a page of a listing as HTML
+     * @param out The writer
+     * @param listing The listing
+     * @param from The index of the first entry
+     * @param to The index after the last entry
+     * @param next The link to the next page (relative to the directory) or null
+     */
+    static void writeFileAsHTML(EscapingWriter out, DirectoryListing listing, int from, int to, String next) {
+        final SimpleDateFormat format = dateFormat();
         out.println("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\"");
         out.println("\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">");
         out.println();
         out.println("<html xmlns=\"http://www.w3.org/1999/xhtml\">");
-        out.println("<link rel=\"stylesheet\" type=\"text/css\" href=\"" + Re_SourceServlet.contextPath() + Re_SourceServlet.getProperty("main.css", "/default.css") + "\" />");
+        out.print("<link rel=\"stylesheet\" type=\"text/css\" href=\"").print(Re_SourceServlet.contextPath()).print(Re_SourceServlet.getProperty("main.css", "/default.css")).println("\" />");
         out.println("<head>");
-        out.println("<title>" + Re_SourceServlet.servletTitle() + "</title>");
+        out.print("<title>").printXML(Re_SourceServlet.servletTitle()).println("</title>");
         out.println("</head>");
         out.println("<body about=\"\">");
-        for (String path : context.getResourcePaths(rootPath)) {
-            final String relativePath = path.substring(rootPath.length());
-            out.println("<div class=\"resourcelink\"><a href=\"" + relativePath + "\" rel=\""+Re_SourceServlet.contextPath()+Re_SourceServlet.ontologyPath()+"resource\">" + relativePath + "</a></div>");
+        for (int i = from; i < to; i++) {
+            final String relativePath = listing.name(i);
+            out.print("<div class=\"resourcelink\"><a href=\"").printXML(relativePath).print("\" rel=\"").print(Re_SourceServlet.contextPath()).print(Re_SourceServlet.ontologyPath()).print("resource\">").printXML(relativePath).print("</a>");
+            if (listing.size(i) >= 0) {
+                out.print(" <span class=\"size\" about=\"").printXML(relativePath).print("\" property=\"").print(DCAT).print("byteSize\" datatype=\"").print(XSD).print("nonNegativeInteger\">").print(listing.size(i)).print("</span>");
+            }
+            if (listing.lastModified(i) > 0) {
+                out.print(" <span class=\"modified\" about=\"").printXML(relativePath).print("\" property=\"").print(DCTERMS).print("modified\" datatype=\"").print(XSD).print("dateTime\">").print(format.format(new Date(listing.lastModified(i)))).print("</span>");
+            }
+            out.println("</div>");
+        }
+        if (next != null) {
+            out.print("<div class=\"next\"><a href=\"").printXML(next).print("\" rel=\"").print(HYDRA).println("next\">Next</a></div>");
         }
         out.println("</body>");
         out.println("</html>");
+        out.flush();
     }
     
-    public static void writeFileAsXMLRDF(PrintWriter out, String rootPath, ServletContext context, String reqPath) {
+    /**
+     * Write a page of a listing as RDF/XML
+     * @param out The writer
+     * @param listing The listing
+     * @param from The index of the first entry
+     * @param to The index after the last entry
+     * @param next The link to the next page (relative to the directory) or null
+     * @param reqPath The path of the directory
+     */
+    static void writeFileAsXMLRDF(EscapingWriter out, DirectoryListing listing, int from, int to, String next, String reqPath) {
+        final SimpleDateFormat format = dateFormat();
         out.println("<?xml version=\"1.0\"?>");
-        out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:onto=\""+Re_SourceServlet.contextPath()+Re_SourceServlet.ontologyPath()+"\">");
-        out.println("\t<rdf:Description rdf:about=\""+reqPath+"\">");
-        for (String path : context.getResourcePaths(rootPath)) {
-            final String relativePath = path.substring(rootPath.length());
-            out.println("\t\t<onto:resource rdf:resource=\"" + reqPath + relativePath + "\"/>");
+        out.print("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:onto=\"").print(Re_SourceServlet.contextPath()).print(Re_SourceServlet.ontologyPath()).print("\"")
+                .print(" xmlns:dcterms=\"").print(DCTERMS).print("\" xmlns:dcat=\"").print(DCAT).print("\" xmlns:hydra=\"").print(HYDRA).println("\">");
+        out.print("\t<rdf:Description rdf:about=\"").printXML(reqPath).println("\">");
+        for (int i = from; i < to; i++) {
+            out.print("\t\t<onto:resource rdf:resource=\"").printXML(reqPath).printXML(listing.name(i)).println("\"/>");
+        }
+        if (next != null) {
+            out.print("\t\t<hydra:next rdf:resource=\"").printXML(reqPath).printXML(next).println("\"/>");
         }
         out.println("\t</rdf:Description>");
+        for (int i = from; i < to; i++) {
+            if (listing.size(i) < 0 && listing.lastModified(i) <= 0) {
+                continue;
+            }
+            out.print("\t<rdf:Description rdf:about=\"").printXML(reqPath).printXML(listing.name(i)).println("\">");
+            if (listing.size(i) >= 0) {
+                out.print("\t\t<dcat:byteSize rdf:datatype=\"").print(XSD).print("nonNegativeInteger\">").print(listing.size(i)).println("</dcat:byteSize>");
+            }
+            if (listing.lastModified(i) > 0) {
+                out.print("\t\t<dcterms:modified rdf:datatype=\"").print(XSD).print("dateTime\">").print(format.format(new Date(listing.lastModified(i)))).println("</dcterms:modified>");
+            }
+            out.println("\t</rdf:Description>");
+        }
         out.println("</rdf:RDF>");
+        out.flush();
     }
     
-    public static void writeFileAsTurtle(PrintWriter out, String rootPath, ServletContext context, String reqPath) {
-        
+    /**
+     * Write a page of a listing as Turtle
+     * @param out The writer
+     * @param listing The listing
+     * @param from The index of the first entry
+     * @param to The index after the last entry
+     * @param next The link to the next page (relative to the directory) or null
+     * @param reqPath The path of the directory
+     */
+    static void writeFileAsTurtle(EscapingWriter out, DirectoryListing listing, int from, int to, String next, String reqPath) {
+        final SimpleDateFormat format = dateFormat();
         out.println("@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .");
-        out.println("@prefix onto: <"+Re_SourceServlet.contextPath()+Re_SourceServlet.ontologyPath()+"> .");
+        out.print("@prefix onto: <").print(Re_SourceServlet.contextPath()).print(Re_SourceServlet.ontologyPath()).println("> .");
+        out.print("@prefix dcterms: <").print(DCTERMS).println("> .");
+        out.print("@prefix dcat: <").print(DCAT).println("> .");
+        out.print("@prefix hydra: <").print(HYDRA).println("> .");
+        out.print("@prefix xsd: <").print(XSD).println("> .");
         
-        for (String path : context.getResourcePaths(rootPath)) {
-            final String relativePath = path.substring(rootPath.length());
-            out.println("<" + reqPath + "> onto:resource <" + reqPath + relativePath + "> .");
+        for (int i = from; i < to; i++) {
+            final String relativePath = listing.name(i);
+            out.print("<").print(reqPath).print("> onto:resource <").print(reqPath).print(relativePath).println("> .");
+            if (listing.size(i) >= 0) {
+                out.print("<").print(reqPath).print(relativePath).print("> dcat:byteSize \"").print(listing.size(i)).println("\"^^xsd:nonNegativeInteger .");
+            }
+            if (listing.lastModified(i) > 0) {
+                out.print("<").print(reqPath).print(relativePath).print("> dcterms:modified \"").print(format.format(new Date(listing.lastModified(i)))).println("\"^^xsd:dateTime .");
+            }
+        }
+        if (next != null) {
+            out.print("<").print(reqPath).print("> hydra:next <").print(reqPath).print(next).println("> .");
         }
+        out.flush();
+    }
+
+    private static SimpleDateFormat dateFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
     }
 }
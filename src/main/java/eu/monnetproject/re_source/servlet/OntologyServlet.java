@@ -27,91 +27,202 @@
 package eu.monnetproject.re_source.servlet;
 
 import eu.monnetproject.re_source.Converter;
-import eu.monnetproject.re_source.rdf.Resource;
-import eu.monnetproject.re_source.rdf.URIRef;
-import eu.monnetproject.re_source.rdf.Value;
+import eu.monnetproject.re_source.cache.ChangeListener;
+import eu.monnetproject.re_source.cache.ChangeMonitor;
 import static eu.monnetproject.re_source.util.ServletUtils.getServletPath;
+import static eu.monnetproject.re_source.util.XMLUtils.escapeXML;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.net.URI;
-import java.util.HashSet;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * This servlet produces a basic RDFS representation of all properties in the resource
+ * This servlet produces a basic RDFS representation of all properties in the
+ * resource, with the number of triples using each property. The properties are
+ * indexed in the background when the servlet starts. Files that have changed
+ * are indexed again when {@link ChangeMonitorListener} reports a change, or
+ * otherwise at most once per interval. The following servlet parameters are
+ * supported:
+ *
+ * <ul> <li>ontology.index.path: A file where the index is stored so that only
+ * changed files are converted after a restart (default: not stored)
+ * <li>ontology.index.interval: The minimum number of seconds between checks
+ * for changed files (default: 60)
+ * <li>ontology.index.threads: The number of files converted at once (default:
+ * the number of processors) </ul>
  *
  * @author John McCrae
  */
 public class OntologyServlet extends HttpServlet {
 
-    private Set<URIRef> props;
+    private static final String VOID = "http://rdfs.org/ns/void#";
+    private final List<Converter> converters = new ArrayList<Converter>();
+    private PropertyIndex index;
+    private ExecutorService executor;
+    private long updateInterval;
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private final AtomicBoolean stale = new AtomicBoolean();
+    private ChangeListener changeListener;
+    private volatile long lastUpdate;
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        for (Converter converter : ServiceLoader.load(Converter.class)) {
+            converters.add(converter);
+        }
+        final String path = config.getInitParameter("ontology.index.path");
+        final String interval = config.getInitParameter("ontology.index.interval");
+        final String threads = config.getInitParameter("ontology.index.threads");
+        try {
+            updateInterval = interval == null ? 60000 : Long.parseLong(interval.trim()) * 1000;
+            executor = Executors.newFixedThreadPool(threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads.trim()),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            final Thread thread = new Thread(r, "ontology-index");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        } catch (NumberFormatException x) {
+            throw new ServletException(x);
+        }
+        index = new PropertyIndex(converters, path == null ? null : new File(path));
+        // The stored index is served while the files are checked
+        try {
+            index.load();
+        } catch (IOException x) {
+            log(x.getMessage(), x.getCause());
+        }
+        getServletContext().setAttribute(PropertyIndex.ATTRIBUTE, index);
+        update();
+        final ChangeMonitor monitor = ChangeMonitorListener.monitor(getServletContext());
+        if (monitor != null) {
+            changeListener = new ChangeListener() {
+                @Override
+                public void changed(Set<File> files) {
+                    update();
+                }
+            };
+            monitor.addListener(changeListener);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        final ChangeMonitor monitor = ChangeMonitorListener.monitor(getServletContext());
+        if (monitor != null && changeListener != null) {
+            monitor.removeListener(changeListener);
+        }
+        getServletContext().removeAttribute(PropertyIndex.ATTRIBUTE);
+        executor.shutdownNow();
+        for (Converter converter : converters) {
+            if (converter instanceof Closeable) {
+                try {
+                    ((Closeable) converter).close();
+                } catch (IOException x) {
+                    log("Could not close " + converter, x);
+                }
+            }
+        }
+        super.destroy();
+    }
 
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         final String pathInfo = req.getPathInfo();
         if (pathInfo == null || pathInfo.equals("") || pathInfo.equals("/")) {
-            if (props == null) {
-                // We scan all files on first request for the ontology
-                buildProps(req);
+            if (System.currentTimeMillis() - lastUpdate > updateInterval) {
+                update();
             }
+            final String servletPath = getServletPath(req);
+            final Map<String, Long> props = index.properties();
             resp.setContentType("application/rdf+xml");
             final PrintWriter out = resp.getWriter();
             out.println("<?xml version=\"1.0\"?>");
-            out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">");
-            for (URIRef prop : props) {
-                out.println("\t<rdf:Property rdf:about=\"" + prop.getURI().toString() + "\"/>");
+            out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:void=\"" + VOID + "\">");
+            for (String prop : props.keySet()) {
+                out.println("\t<rdf:Property rdf:about=\"" + escapeXML(servletPath + prop) + "\"/>");
+            }
+            // The usage of each property in the data
+            out.println("\t<void:Dataset rdf:about=\"\">");
+            for (Map.Entry<String, Long> prop : props.entrySet()) {
+                out.println("\t\t<void:propertyPartition rdf:parseType=\"Resource\">");
+                out.println("\t\t\t<void:property rdf:resource=\"" + escapeXML(servletPath + prop.getKey()) + "\"/>");
+                out.println("\t\t\t<void:triples rdf:datatype=\"http://www.w3.org/2001/XMLSchema#integer\">" + prop.getValue() + "</void:triples>");
+                out.println("\t\t</void:propertyPartition>");
             }
+            out.println("\t</void:Dataset>");
             out.println("</rdf:RDF>");
         } else {
             resp.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
     }
 
-    private void buildProps(HttpServletRequest req) {
-        props = new HashSet<URIRef>();
-        final ServiceLoader<Converter> converters = ServiceLoader.load(Converter.class);
-        final String servletPath = getServletPath(req);
-        for (Converter converter : converters) {
-            buildPropsForPath(servletPath, Re_SourceServlet.DATA_PATH, converter);
+    // Start updating the index in the background, or if an update is running make it run again when it finishes
+    private void update() {
+        stale.set(true);
+        if (!updating.compareAndSet(false, true)) {
+            return;
         }
-    }
-
-    private void buildPropsForPath(final String servletPath, String path, Converter converter) {
-        for (String resourcePath : getServletContext().getResourcePaths(path)) {
-            if (resourcePath.endsWith("/")) {
-                buildPropsForPath(servletPath, resourcePath, converter);
-            } else {
-                final URI resourceURI = URI.create(servletPath + resourcePath);
+        lastUpdate = System.currentTimeMillis();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    final URIRef resource = converter.convert(getServletContext().getResource(resourcePath), resourceURI, servletPath);
-                    if (resource != null) {
-                        buildPropsFromRDF(resource, servletPath, new HashSet<Resource>());
+                    while (stale.getAndSet(false)) {
+                        final Map<String, URL> resources = new HashMap<String, URL>();
+                        listResources(Re_SourceServlet.DATA_PATH, resources);
+                        index.update(resources, executor);
                     }
+                } catch (InterruptedException x) {
+                    // Shutting down
                 } catch (Exception x) {
-                    x.printStackTrace();
+                    log("Could not update the property index", x);
+                } finally {
+                    lastUpdate = System.currentTimeMillis();
+                    updating.set(false);
+                }
+                // A change may have been reported after the last update started
+                if (stale.get()) {
+                    update();
                 }
             }
-        }
+        }, "ontology-index-update");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private void buildPropsFromRDF(Resource resource, String servletPath, Set<Resource> done) {
-        // Loops are technically possible (but in practice should never happen)
-        if (done.contains(resource)) {
+    private void listResources(String path, Map<String, URL> resources) throws MalformedURLException {
+        final Set<String> paths = getServletContext().getResourcePaths(path);
+        if (paths == null) {
             return;
         }
-        done.add(resource);
-        for (URIRef prop : resource.getTriples().keySet()) {
-            if (prop.getURI().toString().startsWith(servletPath)) {
-                props.add(prop);
-            }
-            for (Value value : resource.getTriples().get(prop)) {
-                if (value instanceof Resource) {
-                    buildPropsFromRDF((Resource) value, servletPath, done);
+        for (String resourcePath : paths) {
+            if (resourcePath.endsWith("/")) {
+                listResources(resourcePath, resources);
+            } else {
+                final URL resource = getServletContext().getResource(resourcePath);
+                if (resource != null) {
+                    resources.put(resourcePath, resource);
                 }
             }
         }
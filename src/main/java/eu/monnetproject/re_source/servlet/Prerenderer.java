@@ -0,0 +1,270 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.Converter;
+import eu.monnetproject.re_source.rdf.NamespaceRegistry;
+import eu.monnetproject.re_source.rdf.RDFWriter;
+import eu.monnetproject.re_source.rdf.RDFWriterBuilder;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.util.CompressionUtils;
+import eu.monnetproject.re_source.util.EscapingWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts all resources in the data folder of a web application ahead of
+ * time and writes the result for every MIME type supported by the installed
+ * writers (plus a gzip compressed copy), together with a manifest. If the init parameter prerendered.path is
+ * set, {@link Re_SourceServlet} serves these files directly instead of
+ * converting the resource on each request. Usage:
+ *
+ * <pre>
+ * java eu.monnetproject.re_source.servlet.Prerenderer webappDir outputDir contextURL [servletPath] [threads]
+ * </pre>
+ *
+ * For example <code>src/main/webapp target/re_source/WEB-INF/prerendered
+ * http://myserver.com/context_root /resource</code>. As the generated files
+ * contain absolute URIs, they are only served to requests for the same
+ * context URL, and only while the servlet writes with the same namespaces as
+ * this tool.
+ *
+ * @author John McCrae
+ */
+public class Prerenderer {
+
+    /**
+     * The name of the manifest file in the output folder
+     */
+    public static final String MANIFEST = "manifest.properties";
+    /**
+     * Manifest key for the servlet URL the files were rendered for
+     */
+    public static final String SERVLET_PATH_KEY = "servlet.path";
+    /**
+     * Manifest key for the fingerprint of the namespace registry the files
+     * were written with (see {@link NamespaceRegistry#fingerprint()})
+     */
+    public static final String NAMESPACES_KEY = "namespaces";
+    /**
+     * Manifest key prefix for the file extension of each MIME type
+     */
+    public static final String MIMETYPE_PREFIX = "mimetype.";
+    /**
+     * Manifest key prefix for the modification time of each resource
+     */
+    public static final String RESOURCE_PREFIX = "resource.";
+    /**
+     * The extension added to the gzip compressed version of each file
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+    private final File dataDir;
+    private final File outDir;
+    private final String servletPath;
+    private final List<Converter> converters = new ArrayList<Converter>();
+    private final Map<String, RDFWriterBuilder> writers = new LinkedHashMap<String, RDFWriterBuilder>();
+    private final Properties manifest = new Properties();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Create a prerenderer
+     * @param dataDir The folder containing the legacy resources
+     * @param outDir The folder to write the results to
+     * @param servletPath The URL of the servlet the results will be published by
+     */
+    public Prerenderer(File dataDir, File outDir, String servletPath) {
+        this.dataDir = dataDir;
+        this.outDir = outDir;
+        this.servletPath = servletPath;
+        for (Converter converter : ServiceLoader.load(Converter.class)) {
+            converters.add(converter);
+        }
+        for (RDFWriterBuilder builder : ServiceLoader.load(RDFWriterBuilder.class)) {
+            for (String mimeType : Re_SourceServlet.supportedMIMETypes(builder)) {
+                // The first builder for a MIME type wins, as in the servlet
+                if (!writers.containsKey(mimeType)) {
+                    writers.put(mimeType, builder);
+                }
+            }
+        }
+        manifest.setProperty(SERVLET_PATH_KEY, servletPath);
+        for (String mimeType : writers.keySet()) {
+            manifest.setProperty(MIMETYPE_PREFIX + mimeType, extension(mimeType));
+        }
+    }
+
+    /**
+     * The file extension used for a MIME type
+     * @param mimeType The MIME type
+     * @return The extension (without dot)
+     */
+    public static String extension(String mimeType) {
+        if (mimeType.equals("application/rdf+xml")) {
+            return "rdf";
+        } else if (mimeType.equals("text/turtle")) {
+            return "ttl";
+        } else if (mimeType.equals("text/html")) {
+            return "html";
+        } else if (mimeType.equals("application/xhtml+xml")) {
+            return "xhtml";
+        } else {
+            return mimeType.replaceAll("[^A-Za-z0-9]", "_");
+        }
+    }
+
+    /**
+     * Convert all resources and write the manifest
+     * @param threads The number of resources to convert in parallel
+     * @return The number of resources that could not be converted
+     * @throws IOException If the manifest could not be written
+     * @throws InterruptedException If interrupted while waiting for the conversions
+     */
+    public int run(int threads) throws IOException, InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            submitAll(executor, dataDir, "");
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        manifest.setProperty(NAMESPACES_KEY, Integer.toHexString(NamespaceRegistry.getInstance().fingerprint()));
+        final OutputStream out = new FileOutputStream(new File(outDir, MANIFEST));
+        try {
+            manifest.store(out, "Prerendered for " + servletPath);
+        } finally {
+            out.close();
+        }
+        return failures.get();
+    }
+
+    private void submitAll(ExecutorService executor, File dir, String path) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String filePath = path + "/" + file.getName();
+            if (file.isDirectory()) {
+                submitAll(executor, file, filePath);
+            } else {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            render(file, filePath);
+                        } catch (Exception x) {
+                            System.err.println("Could not render " + filePath);
+                            x.printStackTrace();
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private void render(File file, String path) throws Exception {
+        // Record the time before converting, so changes during conversion are not missed
+        final long lastModified = file.lastModified();
+        final URL url = file.toURI().toURL();
+        final URI resourceURI = URI.create(servletPath + path);
+        URIRef rdf = null;
+        for (Converter converter : converters) {
+            rdf = converter.convert(url, resourceURI, servletPath);
+            if (rdf != null) {
+                break;
+            }
+        }
+        if (rdf == null) {
+            // Not convertible, the servlet will copy the resource
+            return;
+        }
+        for (Map.Entry<String, RDFWriterBuilder> e : writers.entrySet()) {
+            final RDFWriter writer = e.getValue().getWriter(e.getKey(), servletPath);
+            final File target = new File(outDir, path.substring(1) + "." + extension(e.getKey()));
+            target.getParentFile().mkdirs();
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            final Writer out = new EscapingWriter(buffer);
+            writer.write(rdf, out);
+            out.close();
+            final byte[] body = buffer.toByteArray();
+            write(target, body);
+            write(new File(target.getPath() + GZIP_EXTENSION), CompressionUtils.compress(body, CompressionUtils.GZIP));
+        }
+        synchronized (manifest) {
+            manifest.setProperty(RESOURCE_PREFIX + path, Long.toString(lastModified));
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || args.length > 5) {
+            System.err.println("Usage: Prerenderer webappDir outputDir contextURL [servletPath] [threads]");
+            System.exit(-1);
+        }
+        final File dataDir = new File(args[0], Re_SourceServlet.DATA_PATH.substring(1));
+        final File outDir = new File(args[1]);
+        final String contextPath = args[2].endsWith("/") ? args[2].substring(0, args[2].length() - 1) : args[2];
+        final String servletPath = contextPath + (args.length > 3 ? args[3] : "/resource");
+        final int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        if (!dataDir.isDirectory()) {
+            System.err.println(dataDir + " is not a directory");
+            System.exit(-1);
+        }
+        outDir.mkdirs();
+        Re_SourceServlet.setPaths(contextPath, servletPath);
+        final int failures = new Prerenderer(dataDir, outDir, servletPath).run(threads);
+        if (failures > 0) {
+            System.err.println(failures + " resource(s) could not be rendered");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.Converter;
+import eu.monnetproject.re_source.StreamingConverter;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.TripleSink;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import static eu.monnetproject.re_source.util.URLUtils.lastModified;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An index of the properties used by the resources of the data folder and the
+ * number of triples that use each of them. The properties found in each file
+ * are kept, so that only files that have changed are converted again when the
+ * index is updated. Properties are stored relative to the servlet path, as
+ * the index is built before the servlet knows where it is published.
+ *
+ * @author John McCrae
+ */
+final class PropertyIndex {
+
+    /**
+     * The servlet path resources are converted with, which is replaced with
+     * the actual servlet path when the index is used
+     */
+    static final String SERVLET_PREFIX = "http://re-source.invalid/servlet";
+    /**
+     * The servlet context attribute holding the index of the ontology servlet
+     */
+    static final String ATTRIBUTE = PropertyIndex.class.getName();
+    private static final int MAGIC = 0x52535049; // "RSPI"
+    private final List<Converter> converters;
+    private final File file;
+    private final ConcurrentMap<String, FileProperties> files = new ConcurrentHashMap<String, FileProperties>();
+    private volatile Map<String, Long> properties = Collections.emptyMap();
+
+    /**
+     * Create an index
+     * @param converters The converters to convert resources with
+     * @param file The file to store the index in, or null to not store it
+     */
+    PropertyIndex(List<Converter> converters, File file) {
+        this.converters = converters;
+        this.file = file;
+    }
+
+    /**
+     * The properties (relative to the servlet path) and the number of triples
+     * using each of them, sorted by property
+     */
+    Map<String, Long> properties() {
+        return properties;
+    }
+
+    /**
+     * Load the stored index, if any
+     * @throws IOException If the stored index could not be read, in which
+     * case the index is empty
+     */
+    void load() throws IOException {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a property index");
+                }
+                final int nFiles = in.readInt();
+                for (int i = 0; i < nFiles; i++) {
+                    final String path = in.readUTF();
+                    final long lastModified = in.readLong();
+                    final int nProps = in.readInt();
+                    final Map<String, Long> counts = new HashMap<String, Long>();
+                    for (int j = 0; j < nProps; j++) {
+                        counts.put(in.readUTF(), in.readLong());
+                    }
+                    files.put(path, new FileProperties(lastModified, counts));
+                }
+            } finally {
+                in.close();
+            }
+            sum();
+        } catch (IOException x) {
+            files.clear();
+            throw new IOException("Could not read property index " + file, x);
+        }
+    }
+
+    /**
+     * Update the index, converting the resources that are new or have changed
+     * @param resources The resources of the data folder, by path
+     * @param executor The executor to convert the resources on
+     * @throws InterruptedException If interrupted while waiting for the
+     * conversions
+     * @throws IOException If a resource could not be indexed or the index
+     * could not be stored. The other resources are still indexed
+     */
+    void update(Map<String, URL> resources, ExecutorService executor) throws InterruptedException, IOException {
+        boolean changed = files.keySet().retainAll(resources.keySet());
+        IOException failure = null;
+        final List<String> paths = new ArrayList<String>();
+        final List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (final Map.Entry<String, URL> resource : resources.entrySet()) {
+            final FileProperties previous = files.get(resource.getKey());
+            final long lastModified;
+            try {
+                lastModified = lastModified(resource.getValue());
+            } catch (IOException x) {
+                failure = failed(failure, new IOException("Could not index " + resource.getKey(), x));
+                continue;
+            }
+            // Resources with an unknown modification time are always converted again
+            if (previous == null || previous.lastModified != lastModified || lastModified <= 0) {
+                paths.add(resource.getKey());
+                tasks.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        files.put(resource.getKey(), new FileProperties(lastModified, scan(resource.getKey(), resource.getValue())));
+                        return true;
+                    }
+                });
+            }
+        }
+        final List<Future<Boolean>> results = executor.invokeAll(tasks);
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                changed |= results.get(i).get();
+            } catch (ExecutionException x) {
+                failure = failed(failure, new IOException("Could not index " + paths.get(i), x.getCause()));
+            }
+        }
+        if (changed) {
+            sum();
+            try {
+                save();
+            } catch (IOException x) {
+                failure = failed(failure, x);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Keep the first failure, with the later ones suppressed by it
+    private static IOException failed(IOException first, IOException next) {
+        if (first == null) {
+            return next;
+        }
+        first.addSuppressed(next);
+        return first;
+    }
+
+    // Find the properties of a single resource
+    private Map<String, Long> scan(String path, URL url) throws Exception {
+        final URI resourceURI = URI.create(SERVLET_PREFIX + path);
+        final Map<String, Long> counts = new HashMap<String, Long>();
+        for (Converter converter : converters) {
+            if (converter instanceof StreamingConverter) {
+                // Count the triples as they are produced instead of building the graph
+                final boolean converted = ((StreamingConverter) converter).convert(url, resourceURI, SERVLET_PREFIX, new TripleSink() {
+                    @Override
+                    public void startDocument(URIRef headResource, Collection<String> namespaces) {
+                    }
+
+                    @Override
+                    public void triple(Resource subject, URIRef property, Value object) {
+                        count(counts, property, 1);
+                    }
+
+                    @Override
+                    public void endDocument() {
+                    }
+                });
+                if (converted) {
+                    return counts;
+                }
+            } else {
+                final URIRef head = converter.convert(url, resourceURI, SERVLET_PREFIX);
+                if (head != null) {
+                    count(counts, head);
+                    return counts;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void count(Map<String, Long> counts, Resource head) {
+        // Loops are technically possible (but in practice should never happen)
+        final Set<Resource> done = new HashSet<Resource>();
+        final LinkedList<Resource> queue = new LinkedList<Resource>();
+        queue.add(head);
+        done.add(head);
+        while (!queue.isEmpty()) {
+            final Resource resource = queue.poll();
+            for (Map.Entry<URIRef, Set<Value>> e : resource.getTriples().entrySet()) {
+                count(counts, e.getKey(), e.getValue().size());
+                for (Value value : e.getValue()) {
+                    if (value instanceof Resource && done.add((Resource) value)) {
+                        queue.add((Resource) value);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void count(Map<String, Long> counts, URIRef property, long n) {
+        final String uri = property.getURI().toString();
+        if (uri.startsWith(SERVLET_PREFIX)) {
+            final String key = uri.substring(SERVLET_PREFIX.length());
+            final Long count = counts.get(key);
+            counts.put(key, count == null ? n : count + n);
+        }
+    }
+
+    private void sum() {
+        final Map<String, Long> totals = new TreeMap<String, Long>();
+        for (FileProperties fileProperties : files.values()) {
+            for (Map.Entry<String, Long> e : fileProperties.counts.entrySet()) {
+                final Long count = totals.get(e.getKey());
+                totals.put(e.getKey(), count == null ? e.getValue() : count + e.getValue());
+            }
+        }
+        properties = Collections.unmodifiableMap(totals);
+    }
+
+    private void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (file.getParentFile() != null && !file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Could not create " + file.getParentFile());
+            }
+            // Write to a temporary file first so a crash never leaves a partial index
+            final File tmp = File.createTempFile("properties", ".tmp", file.getAbsoluteFile().getParentFile());
+            final Map<String, FileProperties> snapshot = new TreeMap<String, FileProperties>(files);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, FileProperties> e : snapshot.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().lastModified);
+                    out.writeInt(e.getValue().counts.size());
+                    for (Map.Entry<String, Long> count : e.getValue().counts.entrySet()) {
+                        out.writeUTF(count.getKey());
+                        out.writeLong(count.getValue());
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                tmp.delete();
+                throw new IOException("Could not write " + file);
+            }
+        } catch (IOException x) {
+            throw new IOException("Could not store property index " + file, x);
+        }
+    }
+
+    private static final class FileProperties {
+
+        final long lastModified;
+        final Map<String, Long> counts;
+
+        FileProperties(long lastModified, Map<String, Long> counts) {
+            this.lastModified = lastModified;
+            this.counts = counts;
+        }
+    }
+}
@@ -27,27 +27,75 @@
 package eu.monnetproject.re_source.servlet;
 
 import eu.monnetproject.re_source.Converter;
+import eu.monnetproject.re_source.Page;
+import eu.monnetproject.re_source.PagingConverter;
 import eu.monnetproject.re_source.SourceParseException;
+import eu.monnetproject.re_source.StreamingConverter;
+import eu.monnetproject.re_source.SubResourceConverter;
+import eu.monnetproject.re_source.cache.CachedResponse;
+import eu.monnetproject.re_source.cache.ChangeListener;
+import eu.monnetproject.re_source.cache.ChangeMonitor;
+import eu.monnetproject.re_source.cache.GraphCache;
+import eu.monnetproject.re_source.cache.GraphStore;
+import eu.monnetproject.re_source.cache.LRUCache;
+import eu.monnetproject.re_source.cache.ResponseCache;
+import eu.monnetproject.re_source.cache.SingleFlight;
+import eu.monnetproject.re_source.rdf.ColumnarGraph;
+import eu.monnetproject.re_source.rdf.EnumerableRDFWriterBuilder;
+import eu.monnetproject.re_source.rdf.NamespaceRegistry;
+import eu.monnetproject.re_source.rdf.PageRDFWriter;
+import eu.monnetproject.re_source.rdf.RDFFactory;
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.HYDRA;
+import static eu.monnetproject.re_source.rdf.RDFPrefixes.RDF;
 import eu.monnetproject.re_source.rdf.RDFWriter;
 import eu.monnetproject.re_source.rdf.RDFWriterBuilder;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.StreamingRDFWriter;
+import eu.monnetproject.re_source.rdf.TripleSink;
 import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import eu.monnetproject.re_source.util.CompressionUtils;
+import eu.monnetproject.re_source.util.EscapingWriter;
 import static eu.monnetproject.re_source.util.ServletUtils.getContextPath;
 import static eu.monnetproject.re_source.util.ServletUtils.getServletPath;
+import static eu.monnetproject.re_source.util.ServletUtils.encodedETag;
+import static eu.monnetproject.re_source.util.ServletUtils.isNotModified;
+import static eu.monnetproject.re_source.util.ServletUtils.matchedETag;
+import static eu.monnetproject.re_source.util.URLUtils.contentLength;
+import static eu.monnetproject.re_source.util.URLUtils.lastModified;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DeflaterOutputStream;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -63,7 +111,74 @@ import javax.servlet.http.HttpServletResponse;
  * <ul> <li>ontology.path: The path where the ontology is published (default:
  * /ontology#) <li>servlet.title: The title to show on all dynamic pages
  * <li>main.css: The CSS file to use for HTML pages (default: /default.css)
- * <li>legacy.mimetype: The MIME type for the legacy resource </ul>
+ * <li>legacy.mimetype: The MIME type for the legacy resource
+ * <li>cache.graph.bytes: The maximum total size of converted graphs kept in
+ * memory, 0 disables the cache (default: 67108864)
+ * <li>cache.response.bytes: The maximum total size of serialized responses
+ * kept in memory, 0 disables the cache (default: 67108864)
+ * <li>prerendered.path: The path in the web application of the output of
+ * {@link Prerenderer}, if set these files are served instead of converting
+ * resources that have not been modified since they were prerendered
+ * <li>compression.threshold: Responses smaller than this many bytes are not
+ * compressed, a negative value disables compression (default: 1024)
+ * <li>graph.store.path: A directory in the file system where converted graphs
+ * are stored in a compact binary form, so that they need not be converted
+ * again after a restart (default: not stored)
+ * <li>streaming.threshold: Legacy resources larger than this many bytes are
+ * converted and written to the client as they are parsed, without being held
+ * in memory or cached, if the converter and writer support this ({@link StreamingConverter}
+ * and {@link StreamingRDFWriter}), a negative value disables streaming
+ * (default: 16777216). Streamed resources are converted on one thread, see
+ * {@link DefaultConverter} for the resources that are converted on several
+ * <li>cache.listing.entries: The maximum total number of entries of directory
+ * listings kept in memory, 0 disables the cache (default: 1000000)
+ * <li>listing.page.size: The number of entries shown on each page of a
+ * directory listing, unless the client asks for another number with the limit
+ * parameter (default: 1000)
+ * <li>namespaces: Prefixes to use in all documents, as whitespace-separated
+ * prefix=namespace pairs
+ * <li>servlet.url: The URL this servlet is published at (e.g.,
+ * http://myserver.com/context_root/resource), if set the namespaces of the
+ * properties found by the {@link OntologyServlet} under this URL are added to
+ * the prefixes of all documents
+ * <li>conversion.threads: The number of resources converted at once, if the
+ * container supports asynchronous requests, 0 converts on the container's
+ * threads (default: the number of processors)
+ * <li>conversion.queue: The number of conversions that may wait for a thread,
+ * further requests that need a conversion are refused with 503 Service
+ * Unavailable and a Retry-After header (default: 64)
+ * <li>conversion.wait: How many milliseconds a request waits for the
+ * conversion of the same resource started by another request, which it shares
+ * rather than converting again, if it times out it is refused with 503 Service
+ * Unavailable and a Retry-After header (default: 60000). If the container
+ * supports asynchronous requests a request for the same representation does
+ * not hold a thread while it waits, but is sent the response when it is made.
+ * A request for another representation of the same resource waits on a
+ * conversion thread, as do all requests that wait if conversion.threads is 0
+ * <li>cache.stale.max: For how many milliseconds after a resource is modified
+ * the cached response for its earlier version is sent, with Age and Warning
+ * headers, while the new version is converted in the background, 0 disables
+ * this (default: 0) </ul>
+ *
+ * Resources that a {@link PagingConverter} reports as too large to return in
+ * one response are returned in pages. The first page is returned for the
+ * resource's URI (and for page=first) and each page links to the next by a
+ * hydra:next triple and a Link header.
+ *
+ * Directory listings are also returned in pages, selected by the page (from 1)
+ * and limit parameters, and link to the next page in the same way.
+ *
+ * If the data folder is watched by {@link ChangeMonitorListener}, all cached
+ * and prerendered data derived from a file is dropped as soon as it changes.
+ * Otherwise cached directory listings are made again after a minute.
+ *
+ * DTDs and external entities of XML documents are resolved as configured by
+ * {@link EntityResolverListener}.
+ *
+ * Documents are written with the prefixes of the {@link NamespaceRegistry},
+ * which holds the configured namespaces and those of the properties found by
+ * the {@link OntologyServlet} (under servlet.url). The registry is part of every entity tag, so
+ * tags only change when these do.
  *
  * In addition new functional components may be include by means of the Java
  * ServiceLoader (see this projects resources/META-INF/services for examples).
@@ -88,9 +203,49 @@ public class Re_SourceServlet extends HttpServlet {
      * The location of extra headers files
      */
     public static final String EXTRA_HEADERS_FILE = "/META-INF/extraheaders";
+    // How long a cached listing is used if changes to the data are not monitored
+    private static final long LISTING_TTL = 60 * 1000;
+    private static final int MAX_LISTING_LIMIT = 10000;
+    // The token of the first page of a paged resource, which is also returned for the resource's URI
+    private static final String FIRST_PAGE = "first";
+    // The MIME types builders that do not list their MIME types are asked for
+    private static final List<String> RDF_MIME_TYPES = Arrays.asList("application/rdf+xml", "text/turtle",
+            "application/xhtml+xml", "text/html", "application/n-triples", "text/n3", "application/ld+json");
     private final List<Converter> converters = new LinkedList<Converter>();
     private final List<RDFWriterBuilder> writers = new LinkedList<RDFWriterBuilder>();
+    // The builder for each MIME type, the first builder for a type wins
+    private final Map<String, RDFWriterBuilder> writerTable = new HashMap<String, RDFWriterBuilder>();
+    // MIME types that are only the default of their builder
+    private final Set<String> defaultOnlyTypes = new HashSet<String>();
+    // Negotiators for resources, sub-resources (which have no legacy form) and listings
+    private ContentNegotiator negotiator, rdfNegotiator;
+    private final ContentNegotiator listingNegotiator = new ContentNegotiator(Arrays.asList(
+            "application/xhtml+xml", "text/html", "application/rdf+xml", "text/turtle"));
     private final Map<String, String> extraHeaders = new HashMap<String, String>();
+    private GraphCache graphCache;
+    private GraphStore graphStore;
+    private ResponseCache responseCache;
+    private LRUCache<String, DirectoryListing> listings;
+    private int listingPageSize;
+    private String prerenderedPath;
+    private final Properties prerendered = new Properties();
+    private long compressionThreshold;
+    private long streamingThreshold;
+    private ConversionExecutor conversions;
+    private long conversionWait;
+    private long maxStale;
+    private ConversionExecutor refreshes;
+    // The responses being made in the background
+    private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final SingleFlight<String, ColumnarGraph> graphFlights = new SingleFlight<String, ColumnarGraph>();
+    private final SingleFlight<String, CachedResponse> responseFlights = new SingleFlight<String, CachedResponse>();
+    private File dataDirectory;
+    // The URL of each file in the data folder that was requested, by its path
+    private final Map<String, URL> resourceURLs = new ConcurrentHashMap<String, URL>();
+    private ChangeListener changeListener;
+    // The servlet URL the ontology's namespaces are registered for, and the properties last registered
+    private String canonicalServletPath;
+    private volatile Map<String, Long> registeredProperties;
     // Set of static variables set before the first request is handled
     private static ServletConfig servletConfig;
     private static String contextPath;
@@ -127,15 +282,34 @@ public class Re_SourceServlet extends HttpServlet {
         return servletPath;
     }
 
+    // Used when converting outside of a servlet container
+    static void setPaths(String contextPath, String servletPath) {
+        Re_SourceServlet.contextPath = contextPath;
+        Re_SourceServlet.servletPath = servletPath;
+    }
+
     /**
      * Get a property from the servlet configuration
      */
     public static String getProperty(String prop, String defaultValue) {
-        final String param = servletConfig.getInitParameter(prop);
+        final String param = servletConfig == null ? null : servletConfig.getInitParameter(prop);
         if (param == null) {
             return defaultValue;
         } else {
-            return prop;
+            return param;
+        }
+    }
+
+    /**
+     * Write an error to the servlet log, for converters that can recover from
+     * a failure. Outside of a servlet container the error is printed instead
+     */
+    public static void contextLog(String message, Throwable x) {
+        final ServletConfig config = servletConfig;
+        if (config != null) {
+            config.getServletContext().log(message, x);
+        } else {
+            System.err.println(message + ": " + x);
         }
     }
 
@@ -160,6 +334,52 @@ public class Re_SourceServlet extends HttpServlet {
         if (config.getInitParameter("legacy.mimetype") != null) {
             legacyMIMEType = config.getInitParameter("legacy.mimetype");
         }
+        buildNegotiators();
+        if (config.getInitParameter("namespaces") != null) {
+            registerNamespaces(config.getInitParameter("namespaces"));
+        }
+        canonicalServletPath = config.getInitParameter("servlet.url");
+        graphCache = new GraphCache(getLongParameter(config, "cache.graph.bytes", 67108864));
+        maxStale = getLongParameter(config, "cache.stale.max", 0);
+        responseCache = new ResponseCache(getLongParameter(config, "cache.response.bytes", 64 * 1024 * 1024), maxStale > 0);
+        listings = new LRUCache<String, DirectoryListing>(getLongParameter(config, "cache.listing.entries", 1000000)) {
+            @Override
+            protected long weigh(String key, DirectoryListing value) {
+                return value.size() + 1;
+            }
+        };
+        listingPageSize = (int) Math.max(1, Math.min(MAX_LISTING_LIMIT, getLongParameter(config, "listing.page.size", 1000)));
+        compressionThreshold = getLongParameter(config, "compression.threshold", 1024);
+        streamingThreshold = getLongParameter(config, "streaming.threshold", 16 * 1024 * 1024);
+        final long conversionThreads = getLongParameter(config, "conversion.threads", Runtime.getRuntime().availableProcessors());
+        if (conversionThreads > 0) {
+            conversions = new ConversionExecutor((int) conversionThreads, (int) getLongParameter(config, "conversion.queue", 64));
+        }
+        conversionWait = getLongParameter(config, "conversion.wait", 60000);
+        if (maxStale > 0) {
+            refreshes = new ConversionExecutor(1, 64, Thread.MIN_PRIORITY);
+        }
+        if (config.getInitParameter("graph.store.path") != null) {
+            try {
+                graphStore = new GraphStore(new File(config.getInitParameter("graph.store.path")));
+            } catch (IOException x) {
+                throw new ServletException(x);
+            }
+        }
+        if (config.getInitParameter("prerendered.path") != null) {
+            loadPrerenderedManifest(config.getInitParameter("prerendered.path"));
+        }
+        final ChangeMonitor monitor = ChangeMonitorListener.monitor(getServletContext());
+        if (monitor != null) {
+            dataDirectory = ChangeMonitorListener.dataDirectory(getServletContext());
+            changeListener = new ChangeListener() {
+                @Override
+                public void changed(Set<File> files) {
+                    invalidate(files);
+                }
+            };
+            monitor.addListener(changeListener);
+        }
         try {
             final Enumeration<URL> extraHeaderResources = this.getClass().getClassLoader().getResources(EXTRA_HEADERS_FILE);
             while (extraHeaderResources.hasMoreElements()) {
@@ -175,96 +395,930 @@ public class Re_SourceServlet extends HttpServlet {
 
     }
 
+    // Clients that accept anything get the default type of the first builder that defaults
+    private void buildNegotiators() {
+        final List<String> offers = new ArrayList<String>();
+        for (RDFWriterBuilder writerBuilder : writers) {
+            final String defaultType = writerBuilder.defaultMIMEType();
+            if (defaultType != null) {
+                offers.add(defaultType);
+                writerTable.put(defaultType, writerBuilder);
+                if (!supportedMIMETypes(writerBuilder).contains(defaultType)) {
+                    defaultOnlyTypes.add(defaultType);
+                }
+                break;
+            }
+        }
+        for (RDFWriterBuilder writerBuilder : writers) {
+            for (String mimeType : supportedMIMETypes(writerBuilder)) {
+                if (!writerTable.containsKey(mimeType)) {
+                    writerTable.put(mimeType, writerBuilder);
+                    offers.add(mimeType);
+                }
+            }
+        }
+        rdfNegotiator = new ContentNegotiator(offers);
+        if (legacyMIMEType != null) {
+            final List<String> legacyOffers = new ArrayList<String>(offers);
+            legacyOffers.add(0, legacyMIMEType);
+            negotiator = new ContentNegotiator(legacyOffers, Collections.singleton(legacyMIMEType));
+        } else {
+            negotiator = rdfNegotiator;
+        }
+    }
+
+    /**
+     * The MIME types a builder can create writers for, which builders that do
+     * not list them are asked for among the common RDF MIME types
+     */
+    static List<String> supportedMIMETypes(RDFWriterBuilder writerBuilder) {
+        if (writerBuilder instanceof EnumerableRDFWriterBuilder) {
+            return ((EnumerableRDFWriterBuilder) writerBuilder).supportedMIMETypes();
+        }
+        final List<String> mimeTypes = new ArrayList<String>();
+        for (String mimeType : RDF_MIME_TYPES) {
+            if (writerBuilder.getWriter(mimeType, "") != null) {
+                mimeTypes.add(mimeType);
+            }
+        }
+        return mimeTypes;
+    }
+
+    private void registerNamespaces(String namespaces) throws ServletException {
+        for (String pair : namespaces.trim().split("\\s+")) {
+            final int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                throw new ServletException("Bad value for namespaces: " + pair);
+            }
+            if (!NamespaceRegistry.getInstance().register(pair.substring(0, eq), pair.substring(eq + 1))) {
+                log("Could not register namespace " + pair);
+            }
+        }
+    }
+
+    // Register the namespaces of the properties of the ontology index as seen from the configured servlet URL
+    // (not the request's, as every host name would add namespaces to the registry)
+    private void registerOntologyNamespaces() {
+        final PropertyIndex index = (PropertyIndex) getServletContext().getAttribute(PropertyIndex.ATTRIBUTE);
+        if (index == null || canonicalServletPath == null) {
+            return;
+        }
+        final Map<String, Long> properties = index.properties();
+        if (properties == registeredProperties) {
+            return;
+        }
+        for (String property : properties.keySet()) {
+            final String uri = canonicalServletPath + property;
+            int pt = uri.lastIndexOf('#');
+            if (pt < 0) {
+                pt = uri.lastIndexOf('/');
+            }
+            NamespaceRegistry.getInstance().register(uri.substring(0, pt + 1));
+        }
+        registeredProperties = properties;
+    }
+
+    private void loadPrerenderedManifest(String path) throws ServletException {
+        prerenderedPath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        final InputStream in = getServletContext().getResourceAsStream(prerenderedPath + "/" + Prerenderer.MANIFEST);
+        if (in == null) {
+            log("No prerendered resources found at " + prerenderedPath);
+            prerenderedPath = null;
+            return;
+        }
+        try {
+            try {
+                prerendered.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException x) {
+            throw new ServletException(x);
+        }
+    }
+
+    private static long getLongParameter(ServletConfig config, String name, long defaultValue) throws ServletException {
+        final String value = config.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException x) {
+            throw new ServletException("Bad value for " + name + ": " + value);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        final ChangeMonitor monitor = ChangeMonitorListener.monitor(getServletContext());
+        if (monitor != null && changeListener != null) {
+            monitor.removeListener(changeListener);
+        }
+        if (conversions != null) {
+            conversions.shutdown();
+        }
+        if (refreshes != null) {
+            refreshes.shutdown();
+        }
+        for (Converter converter : converters) {
+            if (converter instanceof Closeable) {
+                try {
+                    ((Closeable) converter).close();
+                } catch (IOException x) {
+                    log("Could not close " + converter, x);
+                }
+            }
+        }
+        log(graphCache.toString());
+        log(responseCache.toString());
+        log(listings.toString());
+        super.destroy();
+    }
+
+    // Drop all cached data derived from files that have changed
+    private void invalidate(Set<File> files) {
+        for (File file : files) {
+            final String path = dataPath(file);
+            if (path == null) {
+                continue;
+            } else if (path.equals("")) {
+                // Anything may have changed
+                graphCache.clear();
+                responseCache.clear();
+                listings.clear();
+                continue;
+            }
+            listings.remove(DATA_PATH + path.substring(0, path.lastIndexOf('/') + 1));
+            if (file.isDirectory() || !file.exists()) {
+                for (String key : listings.keys()) {
+                    if (key.startsWith(DATA_PATH + path + "/")) {
+                        listings.remove(key);
+                    }
+                }
+            }
+            if (maxStale <= 0 || file.isDirectory() || !file.exists()) {
+                // Otherwise responses for the old version are kept to send while the new one is converted
+                responseCache.invalidate(path);
+            }
+            for (String key : prerendered.stringPropertyNames()) {
+                if (key.equals(Prerenderer.RESOURCE_PREFIX + path) || key.startsWith(Prerenderer.RESOURCE_PREFIX + path + "/")) {
+                    prerendered.remove(key);
+                }
+            }
+            if (file.isDirectory()) {
+                graphCache.clear();
+                continue;
+            }
+            try {
+                final List<URL> resources = new ArrayList<URL>();
+                final URL resource = getServletContext().getResource(DATA_PATH + path);
+                if (resource != null) {
+                    resources.add(resource);
+                } else {
+                    // Deleted, so use the URLs that its graphs were cached under
+                    for (String key : resourceURLs.keySet()) {
+                        if (key.equals(path) || key.startsWith(path + "/")) {
+                            final URL url = resourceURLs.remove(key);
+                            if (url != null) {
+                                resources.add(url);
+                            }
+                        }
+                    }
+                }
+                for (URL url : resources) {
+                    graphCache.invalidate(url);
+                    if (graphStore != null) {
+                        graphStore.invalidate(url);
+                    }
+                }
+            } catch (IOException x) {
+                log("Could not invalidate " + path, x);
+            }
+        }
+    }
+
+    // The URL of a file in the data folder, remembered if changes are monitored so that its graphs can be dropped once it is deleted
+    private URL dataResource(String path) throws MalformedURLException {
+        final URL resource = getServletContext().getResource(DATA_PATH + path);
+        if (resource != null && dataDirectory != null) {
+            resourceURLs.put(path, resource);
+        }
+        return resource;
+    }
+
+    // The path of a file in the data folder (e.g., "/dir/file.xml"), "" for the folder itself or null if not in the folder
+    private String dataPath(File file) {
+        final String dir = dataDirectory.getPath();
+        final String path = file.getAbsolutePath();
+        if (path.equals(dir)) {
+            return "";
+        } else if (path.startsWith(dir + File.separator)) {
+            return path.substring(dir.length()).replace(File.separatorChar, '/');
+        } else {
+            return null;
+        }
+    }
+
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         final String pathInfo = req.getPathInfo();
         contextPath = getContextPath(req);
         servletPath = getServletPath(req);
+        registerOntologyNamespaces();
         if (pathInfo == null || pathInfo.equals("") || pathInfo.equals("/")) {
             welcomePage(req, resp);
         } else if (pathInfo.endsWith("/")) {
             listFilesPage(req, resp, DATA_PATH + pathInfo);
         } else {
-            final URL resource = getServletContext().getResource(DATA_PATH + req.getPathInfo());
+            final URL resource = dataResource(pathInfo);
             if (resource == null) {
-                notFound(resp);
+                subResource(req, pathInfo, resp);
             } else {
-                boolean handledAsRDF = resource(req, pathInfo, resource, resp);
+                boolean handledAsRDF = resource(req, pathInfo, resource, null, resp);
                 if (!handledAsRDF) {
                     // Could not convert, just copy the resource
-                    resp.setStatus(HttpServletResponse.SC_OK);
-                    copy(resource.openStream(), resp.getOutputStream());
+                    legacyResource(req, resource, resp);
                 }
             }
         }
     }
 
-    // return true if handled
-    private boolean resource(HttpServletRequest req, final String pathInfo, final URL resource, HttpServletResponse resp) throws ServletException, IOException {
-        
-        final URI resourceURI = URI.create(servletPath + pathInfo);
-        final List<String> accepts = getAccepts(req);
-        final boolean acceptAll = accepts.contains("*/*");
-        URIRef rdf = null;
-        RDFWriter writer = null;
-        String returnMimeType = null;
-        // First we attept to find a suitable writer for the MIME type
-        MIME_LOOP:
-        for (String mimeType : accepts) {
-            returnMimeType = mimeType;
-            if (legacyMIMEType != null && legacyMIMEType.equals(mimeType)) {
-                resp.setStatus(HttpServletResponse.SC_OK);
-                copy(resource.openStream(), resp.getOutputStream());
+    // A single node of a resource, e.g., /resource/test.xml/n42 for /resource/test.xml#n42
+    private void subResource(HttpServletRequest req, String pathInfo, HttpServletResponse resp) throws ServletException, IOException {
+        final int slash = pathInfo.lastIndexOf('/');
+        final String parentPath = pathInfo.substring(0, slash);
+        final String id = pathInfo.substring(slash + 1);
+        final URL resource = parentPath.equals("") ? null : dataResource(parentPath);
+        if (resource == null || !resource(req, pathInfo, resource, id, resp)) {
+            notFound(resp);
+        }
+    }
+
+    // return true if handled, fragment is the id of the node for sub-resources or null
+    private boolean resource(HttpServletRequest req, final String pathInfo, final URL resource, String fragment, HttpServletResponse resp) throws ServletException, IOException {
+        // Taken from this request, as the conversion may run after other requests have changed the static field
+        final String servletPath = getServletPath(req);
+        final URI resourceURI = URI.create(servletPath + (fragment == null ? pathInfo : pathInfo.substring(0, pathInfo.length() - fragment.length() - 1)));
+        final String returnMimeType = (fragment == null ? negotiator : rdfNegotiator).negotiate(req.getHeader("Accept"));
+        if (returnMimeType == null) {
+            if (writerTable.isEmpty()) {
+                // No writers, we just fail
+                return false;
+            }
+            // This Http Error code indicates that the client made an impossible request
+            resp.sendError(HttpServletResponse.SC_NOT_ACCEPTABLE);
+            return true;
+        } else if (fragment == null && returnMimeType.equals(legacyMIMEType)) {
+            legacyResource(req, resource, resp);
+            return true;
+        }
+        final RDFWriterBuilder writerBuilder = writerTable.get(returnMimeType);
+        final RDFWriter writer = defaultOnlyTypes.contains(returnMimeType) ? writerBuilder.getWriter(servletPath)
+                : writerBuilder.getWriter(returnMimeType, servletPath);
+        if (writer == null) {
+            return false;
+        }
+        // Check if the client or our cache already has this response. Nothing here reads the whole resource, so
+        // whether it is paged (which may index it) is only decided when it is converted
+        final long lastModified = lastModified(resource);
+        final String page = fragment == null ? req.getParameter("page") : null;
+        // Large resources are converted straight to the client, unless they are paged
+        final boolean large = writer instanceof StreamingRDFWriter && streamingThreshold >= 0
+                && fragment == null && contentLength(resource) > streamingThreshold;
+        final String cacheKey = ResponseCache.key(page == null ? pathInfo : pathInfo + "?page=" + page, returnMimeType, servletPath);
+        CachedResponse response = responseCache.get(cacheKey, lastModified);
+        // Streamed output differs from the buffered output so has a different tag
+        final String etag = response != null ? response.getETag()
+                : responseCache.etag(resource, lastModified, writer.getClass().getName() + " " + returnMimeType + " " + servletPath
+                + (large ? " streaming" : "") + (fragment == null ? "" : " #" + fragment) + (page == null ? "" : " ?page=" + page)
+                + " ns" + Integer.toHexString(NamespaceRegistry.getInstance().fingerprint()));
+        resp.setHeader("Vary", "Accept, Accept-Encoding");
+        if (isNotModified(req, etag, lastModified)) {
+            notModified(req, resp, etag, lastModified);
+            return true;
+        }
+        if (response == null && !large && maxStale > 0) {
+            final CachedResponse stale = responseCache.getStale(cacheKey, lastModified, maxStale);
+            if (stale != null) {
+                refresh(resource, resourceURI, servletPath, fragment, writer, returnMimeType, cacheKey, etag, lastModified, page);
+                sendStale(req, resp, stale);
                 return true;
             }
-            for (RDFWriterBuilder writerBuilder : writers) {
-                if (!mimeType.equals("*/*")) {
-                    writer = writerBuilder.getWriter(mimeType, servletPath);
-                    if (writer != null) {
-                        // Success
-                        break MIME_LOOP;
-                    }
+        }
+        if (response != null) {
+            sendResponse(req, resp, cacheKey, response);
+            return true;
+        }
+        if (conversions != null && req.isAsyncSupported()) {
+            convertAsync(req, resp, pathInfo, resource, resourceURI, servletPath, fragment, writer, returnMimeType, cacheKey, etag, lastModified, page, large);
+            return true;
+        }
+        return convertResource(req, resp, pathInfo, resource, resourceURI, servletPath, fragment, writer, returnMimeType, cacheKey, etag, lastModified, page, large);
+    }
+
+    // Convert a resource on the conversion threads, so that the container's threads stay free for cheap requests
+    private void convertAsync(final HttpServletRequest req, final HttpServletResponse resp, final String pathInfo, final URL resource,
+            final URI resourceURI, final String servletPath, final String fragment, final RDFWriter writer, final String mimeType,
+            final String cacheKey, final String etag, final long lastModified, final String page, final boolean large) throws IOException {
+        final AsyncContext async = req.startAsync();
+        final AtomicBoolean answered = new AtomicBoolean();
+        // A request that shares another request's conversion waits no longer than a synchronous one would
+        async.setTimeout(conversionWait);
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (answered.compareAndSet(false, true)) {
+                    log("Timed out waiting for the conversion of " + cacheKey + " " + etag);
+                    serviceUnavailable(resp);
+                    async.complete();
                 }
             }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        if (join(async, answered, req, resp, pathInfo, resource, fragment, cacheKey, etag, page)) {
+            return;
         }
-        // We did not find a writer but the client accepts everything
-        if (writer == null && acceptAll) {
-            // We use the first writer that will default (this is non-determinstic and should likely be fixed)
-            for (RDFWriterBuilder writerBuilder : writers) {
-                if (writerBuilder.defaultMIMEType() != null) {
-                    writer = writerBuilder.getWriter(servletPath);
-                    returnMimeType = writerBuilder.defaultMIMEType();
+        // The conversion is not interrupted, so the request may as well wait for it
+        async.setTimeout(0);
+        final Runnable convert = respond(async, req, resp, pathInfo, resource, fragment, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return convertResource(req, resp, pathInfo, resource, resourceURI, servletPath, fragment, writer, mimeType, cacheKey, etag, lastModified, page, large);
+            }
+        });
+        final boolean queued = conversions.submit(new ConversionExecutor.Refusable() {
+            @Override
+            public void run() {
+                // The same response may have been started while this waited in the queue, it is
+                // no older than this request's own conversion would be, so it is waited for in the same way
+                if (!join(async, answered, req, resp, pathInfo, resource, fragment, cacheKey, etag, page)) {
+                    convert.run();
                 }
             }
-            // Nope... none of the writers can default, we just fail
-            if (writer == null) {
-                return false;
+
+            @Override
+            public void refuse() {
+                // The servlet is being stopped
+                try {
+                    serviceUnavailable(resp);
+                } catch (IOException x) {
+                    // The client has gone
+                } finally {
+                    async.complete();
+                }
             }
-        } else if (writer == null) {
-            // This Http Error code indicates that the client made an impossible request
-            resp.sendError(HttpServletResponse.SC_NOT_ACCEPTABLE);
+        });
+        if (!queued) {
+            serviceUnavailable(resp);
+            async.complete();
+        }
+    }
+
+    // Have a response that is being made already sent to an asynchronous request when it is ready, without holding a thread meanwhile
+    // (streamed responses are never shared, so there is nothing to join for them)
+    private boolean join(final AsyncContext async, final AtomicBoolean answered, final HttpServletRequest req, final HttpServletResponse resp, final String pathInfo,
+            final URL resource, final String fragment, final String cacheKey, final String etag, final String page) {
+        return responseFlights.join(cacheKey + " " + etag, new SingleFlight.Callback<CachedResponse>() {
+            @Override
+            public void done(final CachedResponse response, final Throwable failure) {
+                if (!answered.compareAndSet(false, true)) {
+                    // Refused already
+                    return;
+                }
+                async.start(respond(async, req, resp, pathInfo, resource, fragment, new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return sendShared(req, resp, cacheKey, page, response, failure);
+                    }
+                }));
+            }
+        });
+    }
+
+    // Complete an asynchronous request by sending a converted resource, or the legacy resource if it could not be converted
+    private Runnable respond(final AsyncContext async, final HttpServletRequest req, final HttpServletResponse resp, final String pathInfo,
+            final URL resource, final String fragment, final Callable<Boolean> send) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!send.call()) {
+                        if (fragment == null) {
+                            legacyResource(req, resource, resp);
+                        } else {
+                            notFound(resp);
+                        }
+                    }
+                } catch (Exception x) {
+                    log("Could not convert " + pathInfo, x);
+                    try {
+                        if (!resp.isCommitted()) {
+                            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        }
+                    } catch (IOException x2) {
+                        // The client has gone
+                    }
+                } finally {
+                    async.complete();
+                }
+            }
+        };
+    }
+
+    // Send a response made for another request, return false if it could not be converted
+    private boolean sendShared(HttpServletRequest req, HttpServletResponse resp, String cacheKey, String page,
+            CachedResponse response, Throwable failure) throws ServletException, IOException {
+        if (failure instanceof IllegalArgumentException && page != null) {
+            // The page does not exist (any more)
+            notFound(resp);
+            return true;
+        } else if (failure != null) {
+            throw new ServletException(failure);
+        } else if (response == null) {
+            return false;
+        }
+        sendResponse(req, resp, cacheKey, response);
+        return true;
+    }
+
+    // Refuse a request that would wait too long for a conversion, saying when to try again
+    private void serviceUnavailable(HttpServletResponse resp) throws IOException {
+        final int retryAfter = conversions != null ? conversions.retryAfter() : (int) Math.max(1, conversionWait / 1000);
+        resp.setHeader("Retry-After", Integer.toString(retryAfter));
+        resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    // Convert a resource, write it to the client and cache it, return false if it could not be converted
+    private boolean convertResource(HttpServletRequest req, HttpServletResponse resp, String pathInfo, URL resource, URI resourceURI,
+            String servletPath, String fragment, RDFWriter writer, String returnMimeType, String cacheKey, String etag, long lastModified,
+            String page, boolean large) throws ServletException, IOException {
+        // Very large resources are returned in pages
+        final PagingConverter pager = fragment == null ? pager(resource) : null;
+        if (pager == null && large) {
+            return streamResource(req, resp, resource, resourceURI, servletPath, (StreamingRDFWriter) writer, returnMimeType, etag, lastModified);
+        } else if (pager == null && fragment == null && page == null
+                && prerenderedResource(req, pathInfo, servletPath, returnMimeType, lastModified, etag, resp)) {
+            return true;
+        }
+        final CachedResponse response;
+        try {
+            response = buildResponse(resource, resourceURI, servletPath, fragment, writer, returnMimeType, cacheKey, etag, lastModified,
+                    pager, page(pager, page));
+        } catch (IllegalArgumentException x) {
+            if (pager == null) {
+                throw x;
+            }
+            // The page does not exist (any more)
+            notFound(resp);
             return true;
+        } catch (ConversionTimeoutException x) {
+            log(x.getMessage());
+            serviceUnavailable(resp);
+            return true;
+        }
+        if (response == null) {
+            // Could not convert
+            return false;
+        }
+        responseCache.put(cacheKey, response);
+        // Finally we write the resource to the client
+        sendResponse(req, resp, cacheKey, response);
+        return true;
+    }
+
+    // The page of a resource to convert, the first page if none is asked for, or null if the resource is returned whole
+    private static String page(PagingConverter pager, String page) {
+        return pager == null ? null : page == null ? FIRST_PAGE : page;
+    }
+
+    // Convert and serialize a resource, return null if it could not be converted
+    private CachedResponse buildResponse(final URL resource, final URI resourceURI, final String servletPath, final String fragment,
+            final RDFWriter writer, final String mimeType, String cacheKey, final String etag, final long lastModified, final PagingConverter pager,
+            final String page) throws ServletException, IOException {
+        // Requests for the same representation at the same time share the response
+        return coalesce(responseFlights, cacheKey + " " + etag, new Callable<CachedResponse>() {
+            @Override
+            public CachedResponse call() throws Exception {
+                return pager != null ? pageResponse(pager, resource, resourceURI, servletPath, page, writer, mimeType, etag, lastModified)
+                        : graphResponse(resource, resourceURI, servletPath, fragment, writer, mimeType, etag, lastModified);
+            }
+        });
+    }
+
+    // Convert the current version of a resource in the background, while the response for the old version is sent
+    private void refresh(final URL resource, final URI resourceURI, final String servletPath, final String fragment,
+            final RDFWriter writer, final String mimeType, final String cacheKey, final String etag, final long lastModified, final String page) {
+        final String key = cacheKey + " " + etag;
+        if (!refreshing.add(key)) {
+            return;
+        }
+        final boolean queued = refreshes.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final PagingConverter pager = fragment == null ? pager(resource) : null;
+                    final CachedResponse response = buildResponse(resource, resourceURI, servletPath, fragment, writer, mimeType, cacheKey, etag,
+                            lastModified, pager, page(pager, page));
+                    if (response != null) {
+                        responseCache.put(cacheKey, response);
+                    }
+                } catch (Exception x) {
+                    log("Could not refresh " + cacheKey, x);
+                } finally {
+                    refreshing.remove(key);
+                }
+            }
+        });
+        if (!queued) {
+            // A later request will try again
+            refreshing.remove(key);
+        }
+    }
+
+    // Send a response for an earlier version of a resource, marked as stale
+    private void sendStale(HttpServletRequest req, HttpServletResponse resp, CachedResponse stale) throws IOException {
+        resp.setHeader("Age", Long.toString(Math.max(0, (System.currentTimeMillis() - stale.getCreated()) / 1000)));
+        resp.setHeader("Warning", "110 - \"Response is Stale\"");
+        if (isNotModified(req, stale.getETag(), stale.getLastModified())) {
+            notModified(req, resp, stale.getETag(), stale.getLastModified());
+        } else {
+            // Not put back in the cache, where it may have been replaced already
+            sendResponse(req, resp, null, stale);
+        }
+    }
+
+    // A page of a resource, or null if it could not be converted
+    private CachedResponse pageResponse(PagingConverter pager, URL resource, URI resourceURI, String servletPath, String page,
+            RDFWriter writer, String mimeType, String etag, long lastModified) throws ServletException, IOException {
+        final Page rdf = convertPage(pager, resource, resourceURI, servletPath, page);
+        if (rdf == null) {
+            return null;
+        }
+        final String next = rdf.getNext() == null ? null : resourceURI + "?page=" + rdf.getNext();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final Writer out = new EscapingWriter(buffer);
+        describePage(rdf, URI.create(resourceURI + "?page=" + page), next);
+        if (writer instanceof PageRDFWriter) {
+            ((PageRDFWriter) writer).write(rdf.getHead(), rdf.getResources(), out);
+        } else {
+            write(writer, ColumnarGraph.fromResources(rdf.getHead(), rdf.getResources()), out);
+        }
+        out.flush();
+        return new CachedResponse(mimeType, buffer.toByteArray(), etag, lastModified,
+                next == null ? null : "<" + next + ">; rel=\"next\"");
+    }
+
+    // A whole resource, or null if it could not be converted
+    private CachedResponse graphResponse(URL resource, URI resourceURI, String servletPath, String fragment, RDFWriter writer,
+            String mimeType, String etag, long lastModified) throws ServletException, IOException {
+        final ColumnarGraph rdf = convert(resource, resourceURI, servletPath, fragment, lastModified);
+        if (rdf == null) {
+            return null;
+        }
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final Writer out = new EscapingWriter(buffer);
+        write(writer, rdf, out);
+        out.flush();
+        return new CachedResponse(mimeType, buffer.toByteArray(), etag, lastModified);
+    }
+
+    // Run a conversion, or wait for the same conversion that another request started
+    private <V> V coalesce(SingleFlight<String, V> flights, String key, Callable<V> conversion) throws ServletException, IOException {
+        try {
+            return flights.run(key, conversion, conversionWait, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException x) {
+            final Throwable cause = x.getCause();
+            if (cause instanceof ServletException) {
+                throw (ServletException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new ServletException(cause);
+            }
+        } catch (TimeoutException x) {
+            throw new ConversionTimeoutException("Timed out waiting for the conversion of " + key);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(x);
+        }
+    }
+
+    // A request gave up waiting for a conversion that another request started
+    private static final class ConversionTimeoutException extends ServletException {
+
+        private static final long serialVersionUID = 1L;
+
+        ConversionTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    // Convert a resource as it is written to the client, return false if no streaming converter supports it
+    private boolean streamResource(HttpServletRequest req, HttpServletResponse resp, URL resource, URI resourceURI, String servletPath,
+            StreamingRDFWriter writer, String mimeType, String etag, long lastModified) throws ServletException, IOException {
+        resp.setContentType(mimeType);
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        final String encoding = contentEncoding(req, -1);
+        final DeflaterOutputStream compressed;
+        final EscapingWriter out;
+        if (encoding != null) {
+            resp.setHeader("Content-Encoding", encoding);
+            setValidators(resp, encodedETag(etag, encoding), lastModified);
+            compressed = CompressionUtils.compressingStream(resp.getOutputStream(), encoding);
+            out = new EscapingWriter(compressed);
+        } else {
+            setValidators(resp, etag, lastModified);
+            compressed = null;
+            out = new EscapingWriter(resp.getOutputStream());
         }
-        // Now we search for a converter
         for (Converter converter : converters) {
+            if (converter instanceof StreamingConverter) {
+                try {
+                    if (((StreamingConverter) converter).convert(resource, resourceURI, servletPath, new ClientSink(writer.sink(out), out))) {
+                        out.flush();
+                        if (compressed != null) {
+                            compressed.finish();
+                        }
+                        return true;
+                    }
+                } catch (SourceParseException x) {
+                    throw new ServletException(x);
+                } catch (ClientGoneException x) {
+                    // Nothing more can be sent
+                    return true;
+                }
+            }
+        }
+        // Nothing has been sent, so the response can be used for the legacy resource
+        resp.reset();
+        return false;
+    }
+
+    // Passes triples on to a writer's sink, stopping the conversion once writing to the client has failed
+    private static final class ClientSink implements TripleSink {
+
+        private final TripleSink sink;
+        private final EscapingWriter out;
+
+        ClientSink(TripleSink sink, EscapingWriter out) {
+            this.sink = sink;
+            this.out = out;
+        }
+
+        @Override
+        public void startDocument(URIRef headResource, Collection<String> namespaces) {
+            sink.startDocument(headResource, namespaces);
+        }
+
+        @Override
+        public void triple(Resource subject, URIRef property, Value object) {
+            if (out.hasError()) {
+                throw new ClientGoneException();
+            }
+            sink.triple(subject, property, object);
+        }
+
+        @Override
+        public void endDocument() {
+            sink.endDocument();
+        }
+    }
+
+    // Thrown through a converter to stop it once the client has gone
+    private static final class ClientGoneException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    // Send a cached response, compressing it if appropriate, and cache the compressed body if cacheKey is not null
+    private void sendResponse(HttpServletRequest req, HttpServletResponse resp, String cacheKey, CachedResponse response) throws IOException {
+        byte[] body = response.getBody();
+        String etag = response.getETag();
+        final String encoding = contentEncoding(req, body.length);
+        if (encoding != null) {
+            byte[] encodedBody = response.getEncodedBody(encoding);
+            if (encodedBody == null) {
+                // Compress once and keep the result for later requests
+                encodedBody = CompressionUtils.compress(body, encoding);
+                if (cacheKey != null) {
+                    responseCache.putEncodedBody(cacheKey, etag, encoding, encodedBody);
+                }
+            }
+            body = encodedBody;
+            etag = encodedETag(etag, encoding);
+            resp.setHeader("Content-Encoding", encoding);
+        }
+        resp.setContentType(response.getMimeType());
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        if (response.getLink() != null) {
+            resp.setHeader("Link", response.getLink());
+        }
+        setValidators(resp, etag, response.getLastModified());
+        resp.setContentLength(body.length);
+        resp.getOutputStream().write(body);
+    }
+
+    // The content coding to use for a response of a given length (-1 if not known), or null for none
+    private String contentEncoding(HttpServletRequest req, long length) {
+        if (compressionThreshold < 0 || (length >= 0 && length < compressionThreshold)) {
+            return null;
+        } else {
+            return CompressionUtils.chooseEncoding(req.getHeader("Accept-Encoding"));
+        }
+    }
+
+    // Copy a prerendered resource to the client, return false if not available or out of date
+    private boolean prerenderedResource(HttpServletRequest req, String pathInfo, String servletPath, String mimeType, long lastModified,
+            String etag, HttpServletResponse resp) throws IOException {
+        if (prerenderedPath == null || !servletPath.equals(prerendered.getProperty(Prerenderer.SERVLET_PATH_KEY))) {
+            return false;
+        }
+        // Files written with other prefixes differ from what the tag is for
+        if (!Integer.toHexString(NamespaceRegistry.getInstance().fingerprint()).equals(prerendered.getProperty(Prerenderer.NAMESPACES_KEY))) {
+            return false;
+        }
+        final String extension = prerendered.getProperty(Prerenderer.MIMETYPE_PREFIX + mimeType);
+        final String renderedTime = prerendered.getProperty(Prerenderer.RESOURCE_PREFIX + pathInfo);
+        if (extension == null || renderedTime == null || lastModified > Long.parseLong(renderedTime)) {
+            return false;
+        }
+        final String renderedPath = prerenderedPath + pathInfo + "." + extension;
+        final URL rendered = getServletContext().getResource(renderedPath);
+        if (rendered == null) {
+            return false;
+        }
+        resp.setContentType(mimeType);
+        resp.setCharacterEncoding("UTF-8");
+        final String encoding = contentEncoding(req, contentLength(rendered));
+        final URL precompressed = CompressionUtils.GZIP.equals(encoding)
+                ? getServletContext().getResource(renderedPath + Prerenderer.GZIP_EXTENSION) : null;
+        if (precompressed != null) {
+            resp.setHeader("Content-Encoding", encoding);
+            resp.setStatus(HttpServletResponse.SC_OK);
+            setValidators(resp, encodedETag(etag, encoding), lastModified);
+            copy(precompressed.openStream(), resp.getOutputStream());
+        } else {
+            copy(req, resp, rendered, encoding, etag, lastModified);
+        }
+        return true;
+    }
+
+    // Copy the legacy resource to the client as is
+    private void legacyResource(HttpServletRequest req, URL resource, HttpServletResponse resp) throws IOException {
+        final long lastModified = lastModified(resource);
+        final String etag = responseCache.etag(resource, lastModified, "legacy");
+        resp.setHeader("Vary", "Accept, Accept-Encoding");
+        if (isNotModified(req, etag, lastModified)) {
+            notModified(req, resp, etag, lastModified);
+            return;
+        }
+        copy(req, resp, resource, contentEncoding(req, contentLength(resource)), etag, lastModified);
+    }
+
+    // Copy a resource to the client, compressing it on the fly if encoding is not null
+    private void copy(HttpServletRequest req, HttpServletResponse resp, URL resource, String encoding, String etag, long lastModified) throws IOException {
+        resp.setStatus(HttpServletResponse.SC_OK);
+        if (encoding == null) {
+            setValidators(resp, etag, lastModified);
+            copy(resource.openStream(), resp.getOutputStream());
+        } else {
+            resp.setHeader("Content-Encoding", encoding);
+            setValidators(resp, encodedETag(etag, encoding), lastModified);
+            final DeflaterOutputStream out = CompressionUtils.compressingStream(resp.getOutputStream(), encoding);
+            copy(resource.openStream(), out);
+            out.finish();
+        }
+    }
+
+    // The client's copy is current, which may be a compressed variant
+    private void notModified(HttpServletRequest req, HttpServletResponse resp, String etag, long lastModified) {
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        setValidators(resp, matchedETag(req, etag), lastModified);
+    }
+
+    private void setValidators(HttpServletResponse resp, String etag, long lastModified) {
+        resp.setHeader("ETag", etag);
+        if (lastModified > 0) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+    }
+
+    // Write a graph, directly from its columns if the writer supports it
+    private static void write(RDFWriter writer, ColumnarGraph rdf, Writer out) {
+        if (writer instanceof StreamingRDFWriter) {
+            rdf.replay(((StreamingRDFWriter) writer).sink(out));
+        } else {
+            writer.write(rdf.toResource(new RDFFactory()), out);
+        }
+    }
+
+    // Convert the resource (or a node of it if fragment is not null) using the first converter that supports it (or the caches)
+    private ColumnarGraph convert(final URL resource, final URI documentURI, final String servletPath, final String fragment,
+            final long lastModified) throws ServletException, IOException {
+        // Sub-resources are cached under the URI of the node
+        final URI resourceURI = fragment == null ? documentURI : URI.create(documentURI + "#" + fragment);
+        final ColumnarGraph cached = graphCache.get(resource, resourceURI, lastModified);
+        if (cached != null) {
+            return cached;
+        }
+        // Requests for the same version of a resource at the same time share one conversion
+        return coalesce(graphFlights, resource + " " + resourceURI + " " + lastModified, new Callable<ColumnarGraph>() {
+            @Override
+            public ColumnarGraph call() throws Exception {
+                return convertGraph(resource, documentURI, resourceURI, servletPath, fragment, lastModified);
+            }
+        });
+    }
+
+    private ColumnarGraph convertGraph(URL resource, URI documentURI, URI resourceURI, String servletPath, String fragment,
+            long lastModified) throws ServletException, IOException {
+        URIRef rdf = null;
+        // Only trust the store if we know the version of the resource
+        final boolean useStore = graphStore != null && lastModified > 0;
+        if (useStore) {
             try {
-                rdf = converter.convert(resource, resourceURI, servletPath);
+                rdf = graphStore.get(resource, resourceURI, lastModified, new RDFFactory());
+            } catch (IOException x) {
+                log("Could not read stored graph for " + resource, x);
+            }
+            if (rdf != null) {
+                final ColumnarGraph graph = ColumnarGraph.fromResource(rdf);
+                graphCache.put(resource, resourceURI, lastModified, graph);
+                return graph;
+            }
+        }
+        for (Converter converter : converters) {
+            try {
+                if (fragment == null) {
+                    rdf = converter.convert(resource, resourceURI, servletPath);
+                } else if (converter instanceof SubResourceConverter) {
+                    rdf = ((SubResourceConverter) converter).convert(resource, documentURI, fragment, servletPath);
+                }
                 if (rdf != null) {
-                    break;
+                    final ColumnarGraph graph = ColumnarGraph.fromResource(rdf);
+                    graphCache.put(resource, resourceURI, lastModified, graph);
+                    if (useStore) {
+                        try {
+                            graphStore.put(resource, resourceURI, lastModified, rdf);
+                        } catch (IOException x) {
+                            log("Could not store graph for " + resource, x);
+                        }
+                    }
+                    return graph;
                 }
             } catch (SourceParseException x) {
                 throw new ServletException(x);
             }
         }
-        if (rdf == null) {
-            // Could not convert
-            return false;
-        } else {
-            // Finally we write the resource to the client
-            resp.setContentType(returnMimeType);
-            resp.setStatus(HttpServletResponse.SC_OK);
-            writer.write(rdf, resp.getWriter());
-            return true;
+        return null;
+    }
+
+    // The converter that returns a resource in pages, or null if it is returned whole
+    private PagingConverter pager(URL resource) throws IOException {
+        for (Converter converter : converters) {
+            if (converter instanceof PagingConverter && ((PagingConverter) converter).isPaged(resource)) {
+                return (PagingConverter) converter;
+            }
+        }
+        return null;
+    }
+
+    // Convert a page of a resource (not cached as graphs, as pages are not reused once serialized)
+    private Page convertPage(PagingConverter pager, URL resource, URI resourceURI, String servletPath, String page) throws ServletException, IOException {
+        try {
+            return pager.convertPage(resource, resourceURI, page.equals(FIRST_PAGE) ? null : page, servletPath);
+        } catch (SourceParseException x) {
+            throw new ServletException(x);
+        }
+    }
+
+    // Describe a page as a Hydra partial collection view of the resource
+    private static void describePage(Page page, URI viewURI, String next) {
+        final RDFFactory factory = new RDFFactory();
+        final URIRef head = page.getHead();
+        final URIRef view = factory.newURIRef(viewURI);
+        head.addTriple(factory.newProperty(HYDRA + "view"), view);
+        view.addTriple(factory.newProperty(RDF + "type"), factory.newProperty(HYDRA + "PartialCollectionView"));
+        if (next != null) {
+            view.addTriple(factory.newProperty(HYDRA + "next"), factory.newURIRef(URI.create(next)));
         }
     }
 
@@ -277,58 +1331,78 @@ public class Re_SourceServlet extends HttpServlet {
     }
 
     private void listFilesPage(HttpServletRequest req, HttpServletResponse resp, String rootPath) throws IOException {
-        for (String accept : getAccepts(req)) {
-            if (accept.equals("application/xhtml+xml") || accept.equals("text/html") || accept.equals("*/*")) {
-                resp.setContentType("application/xhtml+xml");
-                addExtraHeaders(resp);
-                resp.setStatus(HttpServletResponse.SC_OK);
-                FileLister.writeFileAsHTML(resp.getWriter(), rootPath, getServletContext());
-                return;
-            } else if (accept.equals("application/rdf+xml")) {
-                resp.setContentType("application/rdf+xml");
-                addExtraHeaders(resp);
-                resp.setStatus(HttpServletResponse.SC_OK);
-                FileLister.writeFileAsXMLRDF(resp.getWriter(), rootPath, getServletContext(), rootPath.substring(DATA_PATH.length()));
-                return;
-            } else if (accept.equals("text/turtle")) {
-                resp.setContentType("text/turtle");
-                addExtraHeaders(resp);
-                resp.setStatus(HttpServletResponse.SC_OK);
-                FileLister.writeFileAsTurtle(resp.getWriter(), rootPath, getServletContext(), rootPath.substring(DATA_PATH.length()));
-                return;
-            }
-        }
-        resp.sendError(HttpServletResponse.SC_NOT_ACCEPTABLE);
-    }
-
-    private List<String> getAccepts(HttpServletRequest req) {
-        final String acceptStr = req.getHeader("Accept");
-        if (acceptStr == null) {
-            return Collections.singletonList("*/*");
+        final int page, limit;
+        try {
+            page = req.getParameter("page") == null ? 1 : Integer.parseInt(req.getParameter("page"));
+            limit = req.getParameter("limit") == null ? listingPageSize : Math.min(MAX_LISTING_LIMIT, Integer.parseInt(req.getParameter("limit")));
+        } catch (NumberFormatException x) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (page < 1 || limit < 1) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        final DirectoryListing listing = listing(rootPath);
+        final long start = (long) (page - 1) * limit;
+        if (listing == null || (page > 1 && start >= listing.size())) {
+            notFound(resp);
+            return;
+        }
+        final int from = (int) start;
+        final int to = (int) Math.min(start + limit, listing.size());
+        final String next = to < listing.size() ? "?page=" + (page + 1) + "&limit=" + limit : null;
+        final String accept = listingNegotiator.negotiate(req.getHeader("Accept"));
+        if (accept == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_ACCEPTABLE);
+        } else if (accept.equals("application/xhtml+xml") || accept.equals("text/html")) {
+            resp.setContentType("application/xhtml+xml");
+            addListingHeaders(resp, next);
+            FileLister.writeFileAsHTML(new EscapingWriter(resp.getOutputStream()), listing, from, to, next);
+        } else if (accept.equals("application/rdf+xml")) {
+            resp.setContentType("application/rdf+xml");
+            addListingHeaders(resp, next);
+            FileLister.writeFileAsXMLRDF(new EscapingWriter(resp.getOutputStream()), listing, from, to, next, rootPath.substring(DATA_PATH.length()));
         } else {
-            final String[] acceptFields = acceptStr.split(",");
-            final ArrayList<String> accepts = new ArrayList<String>(acceptFields.length);
-            for (String acceptField : acceptFields) {
-                if (acceptField.indexOf(";") >= 0) {
-                    accepts.add(acceptField.substring(0, acceptField.indexOf(";")));
-                } else {
-                    accepts.add(acceptField);
-                }
-            }
-            if (accepts.isEmpty()) {
-                return Collections.singletonList("*/*");
+            resp.setContentType("text/turtle");
+            addListingHeaders(resp, next);
+            FileLister.writeFileAsTurtle(new EscapingWriter(resp.getOutputStream()), listing, from, to, next, rootPath.substring(DATA_PATH.length()));
+        }
+    }
+
+    private void addListingHeaders(HttpServletResponse resp, String next) {
+        addExtraHeaders(resp);
+        resp.setHeader("Vary", "Accept");
+        resp.setCharacterEncoding("UTF-8");
+        if (next != null) {
+            resp.setHeader("Link", "<" + next + ">; rel=\"next\"");
+        }
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    // The listing of a directory, from the cache if it is still current
+    private DirectoryListing listing(String rootPath) {
+        DirectoryListing listing = listings.get(rootPath);
+        if (listing == null || (changeListener == null && System.currentTimeMillis() - listing.created() > LISTING_TTL)) {
+            listing = DirectoryListing.list(getServletContext(), rootPath);
+            if (listing != null) {
+                listings.put(rootPath, listing);
             }
-            return Collections.unmodifiableList(accepts);
         }
+        return listing;
     }
 
     private void copy(InputStream is, OutputStream os) throws IOException {
-        byte[] buf = new byte[32768];
-        int s;
-        while ((s = is.read(buf)) != -1) {
-            os.write(buf, 0, s);
+        try {
+            byte[] buf = new byte[32768];
+            int s;
+            while ((s = is.read(buf)) != -1) {
+                os.write(buf, 0, s);
+            }
+            os.flush();
+        } finally {
+            is.close();
         }
-        os.flush();
     }
 
     private void addExtraHeaders(HttpServletResponse resp) {
@@ -0,0 +1,152 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Utility functions for compressing responses
+ *
+ * @author John McCrae
+ */
+public final class CompressionUtils {
+
+    /**
+     * The gzip content coding
+     */
+    public static final String GZIP = "gzip";
+    /**
+     * The deflate (zlib) content coding
+     */
+    public static final String DEFLATE = "deflate";
+
+    // Do not instantiate!
+    private CompressionUtils() {
+    }
+
+    /**
+     * Choose a content coding from an Accept-Encoding header. gzip is
+     * preferred over deflate if the client accepts both.
+     *
+     * @param acceptEncoding The value of the header (may be null)
+     * @return {@link #GZIP}, {@link #DEFLATE} or null if the response should
+     * not be compressed
+     */
+    public static String chooseEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1, deflate = -1, any = -1;
+        for (String field : acceptEncoding.split(",")) {
+            final int semicolon = field.indexOf(';');
+            final String coding = (semicolon >= 0 ? field.substring(0, semicolon) : field).trim().toLowerCase();
+            double q = 1.0;
+            if (semicolon >= 0) {
+                for (String param : field.substring(semicolon + 1).split(";")) {
+                    final String[] nameValue = param.split("=", 2);
+                    if (nameValue.length == 2 && nameValue[0].trim().equalsIgnoreCase("q")) {
+                        q = quality(nameValue[1].trim());
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        // Codings not listed explicitly get the quality of "*"
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        } else if (deflate > 0) {
+            return DEFLATE;
+        } else {
+            return null;
+        }
+    }
+
+    // The value of a q parameter, malformed values are ignored as if the parameter was not given
+    private static double quality(String value) {
+        try {
+            final double q = Double.parseDouble(value);
+            return q >= 0.0 && q <= 1.0 ? q : 1.0;
+        } catch (NumberFormatException x) {
+            return 1.0;
+        }
+    }
+
+    /**
+     * Create a stream that compresses its output. Call
+     * {@link DeflaterOutputStream#finish()} to complete the output.
+     *
+     * @param out The stream to write compressed data to
+     * @param encoding {@link #GZIP} or {@link #DEFLATE}
+     * @return The compressing stream
+     * @throws IOException If the stream could not be created
+     */
+    public static DeflaterOutputStream compressingStream(OutputStream out, String encoding) throws IOException {
+        if (encoding.equals(GZIP)) {
+            return new GZIPOutputStream(out, 8192);
+        } else if (encoding.equals(DEFLATE)) {
+            return new DeflaterOutputStream(out);
+        } else {
+            throw new IllegalArgumentException("Unsupported encoding " + encoding);
+        }
+    }
+
+    /**
+     * Compress data
+     *
+     * @param data The data
+     * @param encoding {@link #GZIP} or {@link #DEFLATE}
+     * @return The compressed data
+     */
+    public static byte[] compress(byte[] data, String encoding) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 4 + 64);
+        try {
+            final DeflaterOutputStream out = compressingStream(buffer, encoding);
+            out.write(data);
+            out.finish();
+        } catch (IOException x) {
+            // Not possible when writing to memory
+            throw new RuntimeException(x);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,395 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A buffered writer for serializers, that escapes XML and RDF literals as it
+ * writes them, in a single pass and without creating intermediate strings.
+ * When writing to a stream the characters are encoded to UTF-8 directly into
+ * the buffer. Like {@link java.io.PrintWriter} the print methods never throw
+ * exceptions, use {@link #checkError()} to see if writing failed.
+ *
+ * @author John McCrae
+ */
+public final class EscapingWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private final OutputStream stream;
+    private final Writer writer;
+    private final byte[] bytes;
+    private final char[] chars;
+    private int n = 0;
+    // A high surrogate waiting for the rest of its code point
+    private char highSurrogate = 0;
+    private boolean error = false;
+
+    /**
+     * Create a writer that writes UTF-8 to a stream
+     * @param out The stream
+     */
+    public EscapingWriter(OutputStream out) {
+        this.stream = out;
+        this.writer = null;
+        this.bytes = new byte[BUFFER_SIZE];
+        this.chars = null;
+    }
+
+    /**
+     * Create a writer that writes to another writer
+     * @param out The writer
+     */
+    public EscapingWriter(Writer out) {
+        this.stream = null;
+        this.writer = out;
+        this.bytes = null;
+        this.chars = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Use a writer as an escaping writer
+     * @param out The writer
+     * @return The writer if it is already an escaping writer or a new escaping
+     * writer writing to it
+     */
+    public static EscapingWriter wrap(Writer out) {
+        return out instanceof EscapingWriter ? (EscapingWriter) out : new EscapingWriter(out);
+    }
+
+    /**
+     * Write a string ("null" if it is null, as {@link java.io.PrintWriter})
+     * @return This writer
+     */
+    public EscapingWriter print(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            put(s.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Write a number
+     * @return This writer
+     */
+    public EscapingWriter print(long l) {
+        if (l == Long.MIN_VALUE) {
+            return print(Long.toString(l));
+        }
+        if (l < 0) {
+            put('-');
+            l = -l;
+        }
+        // Find the most significant digit, then write the digits in order
+        long unit = 1;
+        while (unit <= l / 10) {
+            unit *= 10;
+        }
+        for (; unit > 0; unit /= 10) {
+            put((char) ('0' + l / unit % 10));
+        }
+        return this;
+    }
+
+    /**
+     * Write a string and end the line
+     * @return This writer
+     */
+    public EscapingWriter println(String s) {
+        return print(s).println();
+    }
+
+    /**
+     * End the line
+     * @return This writer
+     */
+    public EscapingWriter println() {
+        put('\n');
+        return this;
+    }
+
+    /**
+     * Write a string as XML character data or an attribute value
+     * @return This writer
+     */
+    public EscapingWriter printXML(String s) {
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            final String escape = xmlEscape(c);
+            if (escape == null) {
+                put(c);
+            } else {
+                print(escape);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write a string as the contents of a quoted Turtle or N-Triples literal
+     * @return This writer
+     */
+    public EscapingWriter printLiteral(String s) {
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                put(c);
+            } else {
+                print(literalEscape(c));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Escape a string for XML character data or an attribute value
+     * @param s The string
+     * @return The escaped string (the same string if nothing is escaped)
+     */
+    public static String escapeXML(String s) {
+        final int len = s.length();
+        int i = 0;
+        while (i < len && xmlEscape(s.charAt(i)) == null) {
+            i++;
+        }
+        if (i == len) {
+            return s;
+        }
+        final StringBuilder sb = new StringBuilder(len + 16).append(s, 0, i);
+        for (; i < len; i++) {
+            final char c = s.charAt(i);
+            final String escape = xmlEscape(c);
+            if (escape == null) {
+                sb.append(c);
+            } else {
+                sb.append(escape);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escape a string as the contents of a quoted Turtle or N-Triples literal
+     * @param s The string
+     * @return The escaped string (the same string if nothing is escaped)
+     */
+    public static String escapeLiteral(String s) {
+        final int len = s.length();
+        int i = 0;
+        while (i < len && s.charAt(i) >= 0x20 && s.charAt(i) != '"' && s.charAt(i) != '\\') {
+            i++;
+        }
+        if (i == len) {
+            return s;
+        }
+        final StringBuilder sb = new StringBuilder(len + 16).append(s, 0, i);
+        for (; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                sb.append(c);
+            } else {
+                sb.append(literalEscape(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    // The entity for a character or null if it need not be escaped
+    private static String xmlEscape(char c) {
+        if (c > '>') {
+            return null;
+        }
+        switch (c) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return "&quot;";
+            case '\'':
+                return "&apos;";
+            default:
+                return null;
+        }
+    }
+
+    // The escape sequence for a quote, backslash or control character
+    private static String literalEscape(char c) {
+        switch (c) {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\t':
+                return "\\t";
+            default:
+                return new String(new char[]{'\\', 'u', '0', '0', HEX[(c >> 4) & 0xf], HEX[c & 0xf]});
+        }
+    }
+
+    private void put(char c) {
+        if (stream == null) {
+            if (n == chars.length) {
+                drain();
+            }
+            chars[n++] = c;
+        } else if (c < 0x80 && highSurrogate == 0) {
+            if (n == bytes.length) {
+                drain();
+            }
+            bytes[n++] = (byte) c;
+        } else {
+            encode(c);
+        }
+    }
+
+    private void encode(char c) {
+        if (n + 4 > bytes.length) {
+            drain();
+        }
+        if (highSurrogate != 0) {
+            final char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int cp = Character.toCodePoint(high, c);
+                bytes[n++] = (byte) (0xf0 | (cp >> 18));
+                bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                bytes[n++] = (byte) (0x80 | (cp & 0x3f));
+                return;
+            }
+            // Unpaired surrogate
+            bytes[n++] = '?';
+            put(c);
+        } else if (c < 0x80) {
+            bytes[n++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[n++] = (byte) (0xc0 | (c >> 6));
+            bytes[n++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[n++] = '?';
+        } else {
+            bytes[n++] = (byte) (0xe0 | (c >> 12));
+            bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            bytes[n++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void drain() {
+        try {
+            if (stream == null) {
+                writer.write(chars, 0, n);
+            } else {
+                stream.write(bytes, 0, n);
+            }
+        } catch (IOException x) {
+            error = true;
+        }
+        n = 0;
+    }
+
+    /**
+     * Check if an error has occurred so far, without flushing the writer
+     * @return true if writing to the underlying stream or writer failed
+     */
+    public boolean hasError() {
+        return error;
+    }
+
+    /**
+     * Flush the writer and check if an error has occurred
+     * @return true if writing to the underlying stream or writer failed
+     */
+    public boolean checkError() {
+        flush();
+        return error;
+    }
+
+    @Override
+    public void write(int c) {
+        put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            put(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            put(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        try {
+            if (stream == null) {
+                writer.flush();
+            } else {
+                stream.flush();
+            }
+        } catch (IOException x) {
+            error = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            if (stream == null) {
+                writer.close();
+            } else {
+                stream.close();
+            }
+        } catch (IOException x) {
+            error = true;
+        }
+    }
+}
@@ -59,6 +59,93 @@ public final class ServletUtils {
                 + req.getContextPath();
     }
 
+    /**
+     * Check the conditional headers (If-None-Match and If-Modified-Since) of
+     * a request. If-Modified-Since is ignored if If-None-Match is present. The
+     * entity tags of compressed variants (see {@link #encodedETag(String, String)})
+     * also match.
+     *
+     * @param req The request object from the client
+     * @param etag The current entity tag of the response (including quotes)
+     * @param lastModified The current modification time of the response, or 0
+     * if not known
+     * @return true if the client's copy is current
+     */
+    public static boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // GET requests use the weak comparison function
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+                // Compressed variants have the same content
+                if (isVariant(tag, etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (lastModified > 0) {
+            long ifModifiedSince;
+            try {
+                ifModifiedSince = req.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException x) {
+                // Unparseable dates are ignored
+                ifModifiedSince = -1;
+            }
+            // HTTP dates only have a resolution of one second
+            return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * The entity tag to send with a 304 Not Modified response, which is the
+     * tag of a compressed variant if that is the tag in If-None-Match that
+     * matched
+     *
+     * @param req The request object from the client
+     * @param etag The current entity tag of the response (including quotes)
+     * @return The entity tag (including quotes)
+     */
+    public static String matchedETag(HttpServletRequest req, String etag) {
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag)) {
+                    return etag;
+                } else if (isVariant(tag, etag)) {
+                    return tag;
+                }
+            }
+        }
+        return etag;
+    }
+
+    private static boolean isVariant(String tag, String etag) {
+        return tag.length() > etag.length() && tag.startsWith(etag.substring(0, etag.length() - 1) + "-");
+    }
+
+    /**
+     * The entity tag of a compressed variant of a response
+     *
+     * @param etag The entity tag of the uncompressed response (including quotes)
+     * @param encoding The content coding
+     * @return The entity tag (including quotes)
+     */
+    public static String encodedETag(String etag, String encoding) {
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+
     /**
      * Get the servlet path to which the servlet is deployed
      *
@@ -0,0 +1,160 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility functions for working with resource URLs
+ *
+ * @author John McCrae
+ */
+public final class URLUtils {
+
+    // Do not instantiate!
+    private URLUtils() {
+    }
+
+    /**
+     * Get the last modification time of a resource
+     *
+     * @param url The URL of the resource
+     * @return The modification time in milliseconds since the epoch or 0 if
+     * not known
+     * @throws IOException If the resource could not be accessed
+     */
+    public static long lastModified(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return new File(url.toURI()).lastModified();
+            } catch (URISyntaxException x) {
+                // Fall through to the generic method
+            } catch (IllegalArgumentException x) {
+                // Fall through to the generic method
+            }
+        }
+        final URLConnection connection = url.openConnection();
+        try {
+            return connection.getLastModified();
+        } finally {
+            // Some connections (e.g., jar:) open the resource to read the headers
+            try {
+                connection.getInputStream().close();
+            } catch (IOException x) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Get the size of a resource
+     *
+     * @param url The URL of the resource
+     * @return The size in bytes or -1 if not known
+     * @throws IOException If the resource could not be accessed
+     */
+    public static long contentLength(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                final File file = new File(url.toURI());
+                return file.exists() ? file.length() : -1;
+            } catch (URISyntaxException x) {
+                // Fall through to the generic method
+            } catch (IllegalArgumentException x) {
+                // Fall through to the generic method
+            }
+        }
+        final URLConnection connection = url.openConnection();
+        try {
+            return connection.getContentLength();
+        } finally {
+            // Some connections (e.g., jar:) open the resource to read the headers
+            try {
+                connection.getInputStream().close();
+            } catch (IOException x) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Create a file name for a key, such as a URL. The name is the SHA-1 hash of
+     * the key in hexadecimal, so it is safe on all file systems.
+     *
+     * @param key The key
+     * @return The file name
+     */
+    public static String fileName(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException x) {
+            throw new RuntimeException(x);
+        } catch (UnsupportedEncodingException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Check that a string has only characters that may occur in a URI. This
+     * does not check the structure of the URI, but if it returns false the
+     * string is certainly not a URI, and no exception is thrown.
+     *
+     * @param s The string
+     * @return False if {@link java.net.URI} would reject the string
+     */
+    public static boolean hasURICharacters(String s) {
+        final int n = s.length();
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= n || Character.digit(s.charAt(i + 1), 16) < 0 || Character.digit(s.charAt(i + 2), 16) < 0) {
+                    return false;
+                }
+                i += 2;
+            } else if (c < 0x80) {
+                if (c <= ' ' || c == 0x7f || "\"<>\\^`{|}".indexOf(c) >= 0) {
+                    return false;
+                }
+            } else if (Character.isSpaceChar(c) || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -39,6 +39,6 @@ public class XMLUtils {
      * @return The string as valid XML
      */
     public static String escapeXML(String str) {
-        return str.replaceAll("\"", "&quot;").replaceAll("&", "&amp;").replaceAll("<", "&lt;").replaceAll(">", "&gt;").replaceAll("'", "&apos;");
+        return EscapingWriter.escapeXML(str);
     }
 }
@@ -0,0 +1,269 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Resolves external DTDs and entities of documents without using the
+ * network. Entities are looked up by public and then system identifier in
+ * catalogs, which are read into memory when they are loaded. Entities that
+ * are not in a catalog are treated according to the {@link Policy}. All
+ * methods are thread-safe.
+ *
+ * Catalogs are in the OASIS XML Catalogs format, of which only the public and
+ * system entries are used, e.g.,
+ * <pre>
+ * &lt;catalog xmlns="urn:oasis:names:tc:entity:xmlns:xml:catalog"&gt;
+ *   &lt;public publicId="-//Example//DTD Lexicon//EN" uri="lexicon.dtd"/&gt;
+ *   &lt;system systemId="http://www.example.com/lexicon.dtd" uri="lexicon.dtd"/&gt;
+ * &lt;/catalog&gt;
+ * </pre>
+ *
+ * @author John McCrae
+ */
+public final class CatalogEntityResolver implements EntityResolver {
+
+    /**
+     * What to do with an entity that is not in a catalog
+     */
+    public static enum Policy {
+
+        /**
+         * Read it as empty
+         */
+        IGNORE,
+        /**
+         * Read it if it is a local file, otherwise read it as empty
+         */
+        LOCAL,
+        /**
+         * Read it from wherever it is, which may block on the network
+         */
+        FETCH,
+        /**
+         * Fail to parse the document
+         */
+        REJECT
+    }
+    private static final CatalogEntityResolver instance = new CatalogEntityResolver();
+    private static final byte[] EMPTY = new byte[0];
+    private final Map<String, byte[]> publicIds = new ConcurrentHashMap<String, byte[]>();
+    private final Map<String, byte[]> systemIds = new ConcurrentHashMap<String, byte[]>();
+    // Local files by system id, with the time they were read
+    private final Map<String, LocalEntity> localFiles = new ConcurrentHashMap<String, LocalEntity>();
+    private volatile Policy policy = Policy.LOCAL;
+
+    /**
+     * The resolver used by the converters of this application
+     */
+    public static CatalogEntityResolver getInstance() {
+        return instance;
+    }
+
+    /**
+     * Set what to do with entities that are not in a catalog (default: LOCAL)
+     */
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Load a catalog and all the entities it lists
+     *
+     * @param catalog The location of the catalog, against which relative
+     * locations of entities are resolved
+     * @return The number of entries loaded
+     * @throws IOException If the catalog or one of its entities could not be
+     * read
+     */
+    public int loadCatalog(final URL catalog) throws IOException {
+        final int[] entries = new int[1];
+        try {
+            final SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            final InputSource source = new InputSource(catalog.toString());
+            factory.newSAXParser().parse(source, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                    try {
+                        if (localName.equals("public") && attributes.getValue("publicId") != null && attributes.getValue("uri") != null) {
+                            publicIds.put(attributes.getValue("publicId"), read(new URL(catalog, attributes.getValue("uri"))));
+                            entries[0]++;
+                        } else if (localName.equals("system") && attributes.getValue("systemId") != null && attributes.getValue("uri") != null) {
+                            systemIds.put(attributes.getValue("systemId"), read(new URL(catalog, attributes.getValue("uri"))));
+                            entries[0]++;
+                        }
+                    } catch (IOException x) {
+                        throw new SAXException(x);
+                    }
+                }
+
+                @Override
+                public InputSource resolveEntity(String publicId, String systemId) {
+                    // The DTD of the catalog itself is not needed
+                    return new InputSource(new ByteArrayInputStream(EMPTY));
+                }
+            });
+        } catch (ParserConfigurationException x) {
+            throw new IOException(x);
+        } catch (SAXException x) {
+            if (x.getException() instanceof IOException) {
+                throw (IOException) x.getException();
+            }
+            throw new IOException("Bad catalog " + catalog, x);
+        }
+        return entries[0];
+    }
+
+    /**
+     * Add an entity
+     *
+     * @param publicId The public identifier or null
+     * @param systemId The system identifier or null
+     * @param content The content of the entity
+     */
+    public void addEntity(String publicId, String systemId, byte[] content) {
+        if (publicId != null) {
+            publicIds.put(publicId, content);
+        }
+        if (systemId != null) {
+            systemIds.put(systemId, content);
+        }
+    }
+
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+        byte[] content = publicId == null ? null : publicIds.get(publicId);
+        if (content == null && systemId != null) {
+            content = systemIds.get(systemId);
+        }
+        if (content != null) {
+            return source(publicId, systemId, content);
+        }
+        switch (policy) {
+            case FETCH:
+                // The parser reads the entity as usual
+                return null;
+            case REJECT:
+                throw new SAXException("External entity not in catalog: " + (systemId == null ? publicId : systemId));
+            case LOCAL:
+                final File file = localFile(systemId);
+                if (file != null) {
+                    return source(publicId, systemId, readLocal(systemId, file));
+                }
+                return ignore(publicId, systemId);
+            default:
+                return ignore(publicId, systemId);
+        }
+    }
+
+    // The entity is read as empty
+    private static InputSource ignore(String publicId, String systemId) {
+        return source(publicId, systemId, EMPTY);
+    }
+
+    private static InputSource source(String publicId, String systemId, byte[] content) {
+        final InputSource source = new InputSource(new ByteArrayInputStream(content));
+        source.setPublicId(publicId);
+        // So that relative references in the entity are resolved as before
+        source.setSystemId(systemId);
+        return source;
+    }
+
+    private static File localFile(String systemId) {
+        if (systemId == null || !systemId.startsWith("file:")) {
+            return null;
+        }
+        try {
+            final File file = new File(new URI(systemId));
+            return file.isFile() ? file : null;
+        } catch (URISyntaxException x) {
+            return null;
+        } catch (IllegalArgumentException x) {
+            return null;
+        }
+    }
+
+    // Local files are read again only if they changed
+    private byte[] readLocal(String systemId, File file) throws IOException {
+        final long modified = file.lastModified();
+        final LocalEntity cached = localFiles.get(systemId);
+        if (cached != null && cached.modified == modified) {
+            return cached.content;
+        }
+        final byte[] content = read(file.toURI().toURL());
+        localFiles.put(systemId, new LocalEntity(modified, content));
+        return content;
+    }
+
+    private static byte[] read(URL url) throws IOException {
+        final InputStream in = url.openStream();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class LocalEntity {
+
+        final long modified;
+        final byte[] content;
+
+        LocalEntity(long modified, byte[] content) {
+            this.modified = modified;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import eu.monnetproject.re_source.Page;
+import eu.monnetproject.re_source.SourceParseException;
+import eu.monnetproject.re_source.rdf.RDFFactory;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.TripleSink;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Converts a document in pages of a fixed number of elements. Each page after
+ * the first is identified by a token that records the offset of its first
+ * element in the document and the state of the converter at that element, so
+ * that the page can be converted by parsing only the prolog of the document,
+ * the start tags of the ancestors of the element and the document from the
+ * element onwards. The pages together contain exactly the triples of the
+ * whole document.
+ *
+ * @author John McCrae
+ */
+public class DocumentPager {
+
+    private final URL source;
+    private final ElementIndex index;
+    private final int pageSize;
+
+    /**
+     * Create a pager
+     * @param source The URL of the document
+     * @param index The index of the document
+     * @param pageSize The number of elements in a page
+     */
+    public DocumentPager(URL source, ElementIndex index, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.source = source;
+        this.index = index;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Convert a page
+     * @param uri The URI of the document
+     * @param servletPrefix The URI where this server is published
+     * @param token The token of the page or null for the first page
+     * @return The page
+     * @throws IllegalArgumentException If the token is not valid for the
+     * current version of the document
+     * @throws SourceParseException If the document could not be parsed
+     * @throws IOException If the document could not be read
+     */
+    public Page page(URI uri, String servletPrefix, String token) throws SourceParseException, IOException {
+        final ParsePosition position = token == null ? null : ParsePosition.decode(token, index.getLastModified());
+        if (position != null && position.ordinal >= index.getElementCount()) {
+            throw new IllegalArgumentException("Bad token");
+        }
+        final InputStream in = position == null ? source.openStream() : index.openAt(source, position);
+        final PageSink sink = new PageSink();
+        final XML2RDFConverter converter;
+        try {
+            final List<String> usedIds = position == null ? Collections.<String>emptyList() : index.usedIdsAt(position.ordinal);
+            converter = new XML2RDFConverter(new InputSource(in), uri, servletPrefix, position, usedIds, pageSize, new RDFFactory());
+            converter.toRDF(sink);
+        } catch (ParserConfigurationException x) {
+            throw new RuntimeException(x);
+        } catch (SAXException x) {
+            throw new RuntimeException(x);
+        } finally {
+            in.close();
+        }
+        final ParsePosition next = converter.stoppedAt();
+        final List<Resource> roots = new ArrayList<Resource>();
+        for (Resource subject : sink.subjects) {
+            if (!sink.objects.contains(subject)) {
+                roots.add(subject);
+            }
+        }
+        if (next == null) {
+            return new Page(sink.head, roots, null);
+        } else {
+            final long start = position == null ? 0 : position.offset;
+            final long offset = start + startTagOffset(start, converter.elements());
+            return new Page(sink.head, roots, next.at(offset).encode(index.getLastModified()));
+        }
+    }
+
+    // The offset relative to start of the n-th (counting from 0) start tag after start
+    private long startTagOffset(long start, final int n) throws IOException {
+        final InputStream in = ElementIndex.openAt(source, start);
+        final long[] offset = new long[1];
+        try {
+            new XMLScanner(in, new XMLScanner.Handler() {
+                private int count = 0;
+
+                @Override
+                public void startElement(String qName, String id, long elementOffset) throws IOException {
+                    if (count++ == n) {
+                        offset[0] = elementOffset;
+                        throw new Found();
+                    }
+                }
+
+                @Override
+                public void endElement(long elementOffset) {
+                }
+            }).scan();
+            throw new IOException("Document is shorter than expected");
+        } catch (Found x) {
+            return offset[0];
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class Found extends IOException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    // Builds the graph of the page and records which resources are linked to
+    private static final class PageSink implements TripleSink {
+
+        URIRef head;
+        final Set<Resource> subjects = new LinkedHashSet<Resource>();
+        final Set<Value> objects = new HashSet<Value>();
+
+        @Override
+        public void startDocument(URIRef headResource, Collection<String> namespaces) {
+            this.head = headResource;
+        }
+
+        @Override
+        public void triple(Resource subject, URIRef property, Value object) {
+            subject.addTriple(property, object);
+            subjects.add(subject);
+            objects.add(object);
+        }
+
+        @Override
+        public void endDocument() {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the positions at which a document can be split into parts that are
+ * converted separately. The document is split before elements at a given
+ * depth, such that each part has at least a given number of elements.
+ *
+ * @author John McCrae
+ */
+final class DocumentSplitter extends NodeIdAllocator implements XMLScanner.Handler {
+
+    private final int depth;
+    private final int minElements;
+    private final List<String> names = new ArrayList<String>(), ids = new ArrayList<String>();
+    // Children of the document and of each open element
+    private final List<Integer> children = new ArrayList<Integer>();
+    private final List<ParsePosition> splits = new ArrayList<ParsePosition>();
+    private int ordinal = 0;
+    private int lastSplit = 0;
+
+    private DocumentSplitter(int depth, int minElements) {
+        this.depth = depth;
+        this.minElements = minElements;
+        children.add(0);
+    }
+
+    /**
+     * Split a document
+     * @param source The URL of the document
+     * @param depth The depth of the elements to split at (the root element is
+     * at depth 0)
+     * @param minElements The minimum number of elements of each part
+     * @return The positions at which the parts after the first start
+     * @throws IOException If the document could not be read
+     */
+    public static List<ParsePosition> split(URL source, int depth, int minElements) throws IOException {
+        final DocumentSplitter splitter = new DocumentSplitter(depth, minElements);
+        final InputStream in = source.openStream();
+        try {
+            new XMLScanner(in, splitter).scan();
+        } finally {
+            in.close();
+        }
+        return splitter.splits;
+    }
+
+    @Override
+    public void startElement(String qName, String id, long offset) {
+        if (names.size() == depth && ordinal - lastSplit >= minElements) {
+            final int[] counts = new int[children.size()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = children.get(i);
+            }
+            splits.add(new ParsePosition(offset, ordinal, nextNodeId(), names.toArray(new String[names.size()]),
+                    ids.toArray(new String[ids.size()]), counts));
+            lastSplit = ordinal;
+        }
+        ordinal++;
+        final int parent = children.size() - 1;
+        children.set(parent, children.get(parent) + 1);
+        names.add(qName);
+        ids.add(allocate(id));
+        children.add(0);
+    }
+
+    @Override
+    public void endElement(long offset) {
+        if (names.isEmpty()) {
+            return;
+        }
+        names.remove(names.size() - 1);
+        ids.remove(ids.size() - 1);
+        children.remove(children.size() - 1);
+    }
+}
@@ -0,0 +1,600 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the elements of an XML document by their node id, giving the
+ * byte span of each element in the source file and the state of the
+ * converter at its start. This allows a single element to be converted
+ * (with {@link XML2RDFConverter#XML2RDFConverter(org.xml.sax.InputSource, java.net.URI, java.lang.String, eu.monnetproject.re_source.xml.ElementIndex.Entry)})
+ * giving exactly the same triples as the conversion of the whole document.
+ *
+ * @author John McCrae
+ */
+public class ElementIndex {
+
+    private static final int MAGIC = 0x52534932; // "RSI2"
+    private final String source;
+    private final long lastModified;
+    private final String charset;
+    private final byte[] prolog;
+    private final int elementCount;
+    // Ids that could not be allocated, by the ordinal of the element that tried and the ordinal that claimed the id
+    private final int[] collidedAt, claimedAt;
+    private final String[] collisions;
+    private final int size;
+    private final String[] ids, parentIds;
+    private final long[] starts, ends;
+    private final int[] nodeIds, indexes;
+    private final Map<Integer, String[]> usedIds;
+    // Positions of the entries, sorted by id
+    private final int[] byId;
+
+    private ElementIndex(String source, long lastModified, String charset, byte[] prolog, int elementCount,
+            int[] collidedAt, int[] claimedAt, String[] collisions, int size, String[] ids, String[] parentIds,
+            long[] starts, long[] ends, int[] nodeIds, int[] indexes, Map<Integer, String[]> usedIds) {
+        this.source = source;
+        this.lastModified = lastModified;
+        this.charset = charset;
+        this.prolog = prolog;
+        this.elementCount = elementCount;
+        this.collidedAt = collidedAt;
+        this.claimedAt = claimedAt;
+        this.collisions = collisions;
+        this.size = size;
+        this.ids = ids;
+        this.parentIds = parentIds;
+        this.starts = starts;
+        this.ends = ends;
+        this.nodeIds = nodeIds;
+        this.indexes = indexes;
+        this.usedIds = usedIds;
+        final Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return ElementIndex.this.ids[i1].compareTo(ElementIndex.this.ids[i2]);
+            }
+        });
+        this.byId = new int[size];
+        for (int i = 0; i < size; i++) {
+            byId[i] = sorted[i];
+        }
+    }
+
+    /**
+     * Index a document
+     * @param source The URL of the document
+     * @param lastModified The modification time of the document
+     * @param records The names of the elements to index (in addition to those
+     * with an id attribute) or null to index all elements
+     * @return The index
+     * @throws IOException If the document could not be read or is in an
+     * unsupported encoding
+     */
+    public static ElementIndex build(URL source, long lastModified, Set<String> records) throws IOException {
+        final Builder builder = new Builder(records);
+        final InputStream in = source.openStream();
+        final XMLScanner scanner = new XMLScanner(in, builder);
+        try {
+            scanner.scan();
+        } finally {
+            in.close();
+        }
+        if (scanner.rootOffset() < 0) {
+            throw new IOException("No root element in " + source);
+        }
+        final byte[] prolog = new byte[(int) scanner.rootOffset()];
+        final InputStream in2 = source.openStream();
+        try {
+            new DataInputStream(in2).readFully(prolog);
+        } finally {
+            in2.close();
+        }
+        final int n = builder.size;
+        final int nc = builder.collisions.size();
+        return new ElementIndex(source.toString(), lastModified, scanner.charset().name(), prolog, builder.ordinal,
+                Arrays.copyOf(builder.collidedAt, nc), Arrays.copyOf(builder.collisionClaimedAt, nc),
+                builder.collisions.toArray(new String[nc]), n, Arrays.copyOf(builder.ids, n), Arrays.copyOf(builder.parentIds, n),
+                Arrays.copyOf(builder.starts, n), Arrays.copyOf(builder.ends, n), Arrays.copyOf(builder.nodeIds, n),
+                Arrays.copyOf(builder.indexes, n), builder.usedIds);
+    }
+
+    /**
+     * Get an element from the index
+     * @param id The node id of the element
+     * @return The entry or null if the element is not in the index
+     */
+    public Entry get(String id) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int i = byId[mid];
+            final int c = ids[i].compareTo(id);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                final String[] used = usedIds.get(i);
+                return new Entry(ids[i], parentIds[i], starts[i], ends[i], nodeIds[i], indexes[i],
+                        used == null ? Collections.<String>emptyList() : Arrays.asList(used));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Open an element of the document as an XML document by itself
+     * @param source The URL of the document
+     * @param entry The element
+     * @return A stream of the prolog of the document followed by the element
+     * @throws IOException If the document could not be read
+     */
+    public InputStream open(URL source, Entry entry) throws IOException {
+        final InputStream in = openAt(source, entry.start);
+        return new SequenceInputStream(new ByteArrayInputStream(prolog), new LimitedInputStream(in, entry.end - entry.start));
+    }
+
+    /**
+     * Open the document at an offset
+     */
+    static InputStream openAt(URL source, long offset) throws IOException {
+        final InputStream in = source.openStream();
+        long toSkip = offset;
+        while (toSkip > 0) {
+            final long skipped = in.skip(toSkip);
+            if (skipped <= 0) {
+                in.close();
+                throw new IOException("Document is shorter than its index");
+            }
+            toSkip -= skipped;
+        }
+        return in;
+    }
+
+    /**
+     * Open the document as seen by a converter continuing from a position,
+     * i.e., the prolog, the start tags of the ancestors of the element at the
+     * position and the document from that element onwards
+     * @throws IllegalArgumentException If there is no element at the position
+     */
+    InputStream openAt(URL source, ParsePosition position) throws IOException {
+        final InputStream rest = new BufferedInputStream(openAt(source, position.offset));
+        rest.mark(1);
+        if (rest.read() != '<') {
+            rest.close();
+            throw new IllegalArgumentException("No element at " + position.offset);
+        }
+        rest.reset();
+        final StringBuilder ancestors = new StringBuilder();
+        for (String name : position.names) {
+            ancestors.append('<').append(name).append('>');
+        }
+        return new SequenceInputStream(new SequenceInputStream(new ByteArrayInputStream(prolog),
+                new ByteArrayInputStream(ancestors.toString().getBytes(charset))), rest);
+    }
+
+    /**
+     * The ids used before an element that are asked for by the allocation of
+     * the ids of the element or any element after it
+     * @param ordinal The position of the element in the document (counting
+     * from 0 in document order)
+     * @return The ids to mark as used when continuing the allocation at this element
+     */
+    public List<String> usedIdsAt(int ordinal) {
+        List<String> used = Collections.emptyList();
+        for (int i = 0; i < collisions.length; i++) {
+            if (collidedAt[i] >= ordinal && claimedAt[i] < ordinal) {
+                if (used.isEmpty()) {
+                    used = new ArrayList<String>();
+                }
+                used.add(collisions[i]);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * The encoding of the document
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * The total number of elements in the document (including those not in
+     * the index)
+     */
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * The URL of the indexed document
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * The modification time of the document when it was indexed
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * The number of elements in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Write the index
+     * @param out The stream to write to (not closed)
+     * @throws IOException If an I/O error occurs
+     */
+    public void write(OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeUTF(source);
+        data.writeLong(lastModified);
+        data.writeUTF(charset);
+        data.writeInt(prolog.length);
+        data.write(prolog);
+        data.writeInt(elementCount);
+        data.writeInt(collisions.length);
+        for (int i = 0; i < collisions.length; i++) {
+            data.writeInt(collidedAt[i]);
+            data.writeInt(claimedAt[i]);
+            data.writeUTF(collisions[i]);
+        }
+        data.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            data.writeUTF(ids[i]);
+            data.writeBoolean(parentIds[i] != null);
+            if (parentIds[i] != null) {
+                data.writeUTF(parentIds[i]);
+            }
+            data.writeLong(starts[i]);
+            data.writeLong(ends[i]);
+            data.writeInt(nodeIds[i]);
+            data.writeInt(indexes[i]);
+        }
+        data.writeInt(usedIds.size());
+        for (Map.Entry<Integer, String[]> e : usedIds.entrySet()) {
+            data.writeInt(e.getKey());
+            data.writeInt(e.getValue().length);
+            for (String id : e.getValue()) {
+                data.writeUTF(id);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Read an index written by {@link #write(java.io.OutputStream)}
+     * @param in The stream to read from (not closed)
+     * @return The index
+     * @throws IOException If the index could not be read
+     */
+    public static ElementIndex read(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an element index");
+        }
+        final String source = data.readUTF();
+        final long lastModified = data.readLong();
+        final String charset = data.readUTF();
+        final byte[] prolog = new byte[data.readInt()];
+        data.readFully(prolog);
+        final int elementCount = data.readInt();
+        final int nCollisions = data.readInt();
+        final int[] collidedAt = new int[nCollisions], claimedAt = new int[nCollisions];
+        final String[] collisions = new String[nCollisions];
+        for (int i = 0; i < nCollisions; i++) {
+            collidedAt[i] = data.readInt();
+            claimedAt[i] = data.readInt();
+            collisions[i] = data.readUTF();
+        }
+        final int size = data.readInt();
+        final String[] ids = new String[size], parentIds = new String[size];
+        final long[] starts = new long[size], ends = new long[size];
+        final int[] nodeIds = new int[size], indexes = new int[size];
+        // Parent ids are shared by many elements
+        final Map<String, String> parents = new HashMap<String, String>();
+        for (int i = 0; i < size; i++) {
+            ids[i] = data.readUTF();
+            if (data.readBoolean()) {
+                final String parent = data.readUTF();
+                parentIds[i] = parents.containsKey(parent) ? parents.get(parent) : parent;
+                parents.put(parent, parentIds[i]);
+            }
+            starts[i] = data.readLong();
+            ends[i] = data.readLong();
+            nodeIds[i] = data.readInt();
+            indexes[i] = data.readInt();
+        }
+        final Map<Integer, String[]> usedIds = new HashMap<Integer, String[]>();
+        final int nUsed = data.readInt();
+        for (int i = 0; i < nUsed; i++) {
+            final int key = data.readInt();
+            final String[] used = new String[data.readInt()];
+            for (int j = 0; j < used.length; j++) {
+                used[j] = data.readUTF();
+            }
+            usedIds.put(key, used);
+        }
+        return new ElementIndex(source, lastModified, charset, prolog, elementCount, collidedAt, claimedAt, collisions,
+                size, ids, parentIds, starts, ends, nodeIds, indexes, usedIds);
+    }
+
+    /**
+     * An element in the index
+     */
+    public static final class Entry {
+
+        private final String id, parentId;
+        private final long start, end;
+        private final int nodeId, index;
+        private final List<String> usedIds;
+
+        Entry(String id, String parentId, long start, long end, int nodeId, int index, List<String> usedIds) {
+            this.id = id;
+            this.parentId = parentId;
+            this.start = start;
+            this.end = end;
+            this.nodeId = nodeId;
+            this.index = index;
+            this.usedIds = usedIds;
+        }
+
+        /**
+         * The node id of the element
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * The node id of the parent element or null if this is the root
+         */
+        public String getParentId() {
+            return parentId;
+        }
+
+        /**
+         * The offset of the element in the source
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * The offset after the end of the element in the source
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * The number of the next generated node id at the start of the element
+         */
+        public int getNodeId() {
+            return nodeId;
+        }
+
+        /**
+         * The index of the element among its siblings
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * The ids used before the element that collide with ids in the element
+         */
+        public List<String> getUsedIds() {
+            return usedIds;
+        }
+    }
+
+    // Replays the node id allocation of the converter over the scanned elements
+    private static final class Builder extends NodeIdAllocator implements XMLScanner.Handler {
+
+        private final Set<String> records;
+        private final Map<String, Integer> claimedAt = new HashMap<String, Integer>();
+        private final Map<Integer, String[]> usedIds = new HashMap<Integer, String[]>();
+        private final List<Open> open = new ArrayList<Open>();
+        private int documentChildren = 0;
+        int ordinal = 0;
+        final List<String> collisions = new ArrayList<String>();
+        int[] collidedAt = new int[16], collisionClaimedAt = new int[16];
+        int size = 0;
+        String[] ids = new String[1024], parentIds = new String[1024];
+        long[] starts = new long[1024], ends = new long[1024];
+        int[] nodeIds = new int[1024], indexes = new int[1024];
+
+        Builder(Set<String> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void startElement(String qName, String idAttribute, long offset) {
+            final Open parent = open.isEmpty() ? null : open.get(open.size() - 1);
+            final Open element = new Open(ordinal++);
+            open.add(element);
+            final int nodeId = nextNodeId();
+            element.id = allocate(idAttribute);
+            if (records == null || records.contains(qName) || element.id.equals(idAttribute)) {
+                if (size == ids.length) {
+                    grow();
+                }
+                element.entry = size++;
+                ids[element.entry] = element.id;
+                parentIds[element.entry] = parent == null ? null : parent.id;
+                starts[element.entry] = offset;
+                nodeIds[element.entry] = nodeId;
+                indexes[element.entry] = parent == null ? documentChildren++ : parent.children++;
+            } else if (parent == null) {
+                documentChildren++;
+            } else {
+                parent.children++;
+            }
+        }
+
+        @Override
+        public void endElement(long offset) {
+            if (open.isEmpty()) {
+                return;
+            }
+            final Open element = open.remove(open.size() - 1);
+            if (element.entry >= 0) {
+                ends[element.entry] = offset;
+                if (element.used != null) {
+                    usedIds.put(element.entry, element.used.toArray(new String[element.used.size()]));
+                }
+            }
+        }
+
+        @Override
+        protected void claimed(String id) {
+            claimedAt.put(id, open.get(open.size() - 1).ordinal);
+        }
+
+        @Override
+        protected void collided(String id) {
+            // The id must be marked as used for all elements that started after it was claimed
+            final int at = claimedAt.get(id);
+            final Open current = open.get(open.size() - 1);
+            if (collisions.size() == collidedAt.length) {
+                collidedAt = Arrays.copyOf(collidedAt, collidedAt.length * 2);
+                collisionClaimedAt = Arrays.copyOf(collisionClaimedAt, collidedAt.length);
+            }
+            collidedAt[collisions.size()] = current.ordinal;
+            collisionClaimedAt[collisions.size()] = at;
+            collisions.add(id);
+            for (Open element : open) {
+                // The element being allocated does not have an entry yet
+                if (element.ordinal > at && (element.entry >= 0 || element == current)) {
+                    if (element.used == null) {
+                        element.used = new ArrayList<String>();
+                    }
+                    element.used.add(id);
+                }
+            }
+        }
+
+        private void grow() {
+            final int n = ids.length * 2;
+            ids = Arrays.copyOf(ids, n);
+            parentIds = Arrays.copyOf(parentIds, n);
+            starts = Arrays.copyOf(starts, n);
+            ends = Arrays.copyOf(ends, n);
+            nodeIds = Arrays.copyOf(nodeIds, n);
+            indexes = Arrays.copyOf(indexes, n);
+        }
+    }
+
+    private static final class Open {
+
+        final int ordinal;
+        String id;
+        int entry = -1;
+        int children = 0;
+        List<String> used;
+
+        Open(int ordinal) {
+            this.ordinal = ordinal;
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Allocates the fragment identifiers of the nodes of a document. An element
+ * keeps its id attribute if it has not been used yet, otherwise it is given
+ * the next free id of the form "n1", "n2", etc. Only the ids taken from the
+ * document are stored, so memory does not grow with the number of elements.
+ *
+ * @author John McCrae
+ */
+class NodeIdAllocator {
+
+    private final Set<String> explicitIds = new HashSet<String>();
+    private int nodeId;
+
+    public NodeIdAllocator() {
+        this.nodeId = 1;
+    }
+
+    /**
+     * Create an allocator that continues the allocation of a document part way
+     * through
+     * @param nodeId The number of the next generated id
+     * @param usedIds Ids from the document that are known to be used and that
+     * will be asked for
+     */
+    public NodeIdAllocator(int nodeId, Collection<String> usedIds) {
+        this.nodeId = nodeId;
+        this.explicitIds.addAll(usedIds);
+    }
+
+    /**
+     * Allocate an id for the next element
+     * @param id The value of the id attribute of the element or null if it
+     * has none
+     * @return The id of the element
+     */
+    public String allocate(String id) {
+        if (id != null && !isUsed(id)) {
+            explicitIds.add(id);
+            claimed(id);
+            return id;
+        }
+        String generated;
+        while (true) {
+            generated = "n" + nodeId++;
+            // Most documents have no id attributes
+            if (!explicitIds.isEmpty() && explicitIds.contains(generated)) {
+                collided(generated);
+            } else {
+                return generated;
+            }
+        }
+    }
+
+    /**
+     * The number of the next generated id
+     */
+    public int nextNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Called when an id from the document is allocated
+     */
+    protected void claimed(String id) {
+    }
+
+    /**
+     * Called when an id could not be allocated as it had been taken from the
+     * document before
+     */
+    protected void collided(String id) {
+    }
+
+    private boolean isUsed(String id) {
+        if (explicitIds.contains(id)) {
+            collided(id);
+            return true;
+        }
+        return generatedNumber(id) < nodeId;
+    }
+
+    // The number of a generated id (e.g., 12 for "n12") or MAX_VALUE if the id cannot be generated
+    private static int generatedNumber(String id) {
+        if (id.length() < 2 || id.length() > 10 || id.charAt(0) != 'n' || id.charAt(1) == '0') {
+            return Integer.MAX_VALUE;
+        }
+        int n = 0;
+        for (int i = 1; i < id.length(); i++) {
+            final char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return Integer.MAX_VALUE;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+}
@@ -0,0 +1,205 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import eu.monnetproject.re_source.SourceParseException;
+import eu.monnetproject.re_source.rdf.RDFFactory;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.TripleSink;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Converts a document on several threads. The document is split before
+ * elements at a given depth into parts which are converted in parallel, each
+ * continuing the node ids and indexes of the document at the start of the
+ * part (as for {@link DocumentPager}). The triples of the parts are then added
+ * to the graph in document order, so the result is the same as that of
+ * {@link XML2RDFConverter}.
+ *
+ * @author John McCrae
+ */
+public class ParallelConverter {
+
+    private final URL source;
+    private final ElementIndex index;
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final int minElements;
+
+    /**
+     * Create a converter
+     * @param source The URL of the document
+     * @param index The index of the document
+     * @param pool The pool to convert the parts in
+     * @param splitDepth The depth of the elements to split the document at
+     * (the root element is at depth 0)
+     * @param minElements The minimum number of elements in each part
+     */
+    public ParallelConverter(URL source, ElementIndex index, ForkJoinPool pool, int splitDepth, int minElements) {
+        this.source = source;
+        this.index = index;
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        this.minElements = minElements;
+    }
+
+    /**
+     * Convert the document
+     * @param uri The base URI of the document
+     * @param servletPrefix The URI where this server is published
+     * @return The document as RDF
+     * @throws SourceParseException If the document could not be parsed
+     * @throws IOException If the document could not be read
+     */
+    public URIRef convert(URI uri, String servletPrefix) throws SourceParseException, IOException {
+        final List<ParsePosition> splits = DocumentSplitter.split(source, splitDepth, minElements);
+        final Part[] parts = new Part[splits.size() + 1];
+        for (int i = 0; i < parts.length; i++) {
+            final ParsePosition start = i == 0 ? null : splits.get(i - 1);
+            final int startOrdinal = start == null ? 0 : start.ordinal;
+            parts[i] = new Part(start, i < splits.size() ? splits.get(i).ordinal - startOrdinal : -1);
+        }
+        final RDFFactory factory = new RDFFactory();
+        pool.invoke(new ConvertTask(parts, 0, parts.length, uri, servletPrefix, factory));
+        for (Part part : parts) {
+            if (part.error instanceof SourceParseException) {
+                throw (SourceParseException) part.error;
+            } else if (part.error instanceof IOException) {
+                throw (IOException) part.error;
+            } else if (part.error != null) {
+                throw new RuntimeException(part.error);
+            }
+        }
+        for (Part part : parts) {
+            part.addTriples();
+        }
+        return factory.newURIRef(uri);
+    }
+
+    // Convert a part of the document, keeping the triples until all parts are converted
+    private void convert(Part part, URI uri, String servletPrefix, RDFFactory factory) throws SourceParseException, IOException {
+        final InputStream in = part.start == null ? source.openStream() : index.openAt(source, part.start);
+        try {
+            final List<String> usedIds = part.start == null ? Collections.<String>emptyList() : index.usedIdsAt(part.start.ordinal);
+            final XML2RDFConverter converter = new XML2RDFConverter(new InputSource(in), uri, servletPrefix, part.start, usedIds, part.elements, factory);
+            converter.toRDF(part);
+            if (part.elements >= 0 && converter.stoppedAt() == null) {
+                throw new IOException("Document changed during conversion");
+            }
+        } catch (ParserConfigurationException x) {
+            throw new RuntimeException(x);
+        } catch (SAXException x) {
+            throw new RuntimeException(x);
+        } finally {
+            in.close();
+        }
+    }
+
+    private final class ConvertTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Part[] parts;
+        private final int from, to;
+        private final URI uri;
+        private final String servletPrefix;
+        private final RDFFactory factory;
+
+        ConvertTask(Part[] parts, int from, int to, URI uri, String servletPrefix, RDFFactory factory) {
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+            this.uri = uri;
+            this.servletPrefix = servletPrefix;
+            this.factory = factory;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    convert(parts[from], uri, servletPrefix, factory);
+                } catch (Exception x) {
+                    parts[from].error = x;
+                }
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new ConvertTask(parts, from, mid, uri, servletPrefix, factory),
+                        new ConvertTask(parts, mid, to, uri, servletPrefix, factory));
+            }
+        }
+    }
+
+    // A part of the document and the triples produced from it, in order
+    private static final class Part implements TripleSink {
+
+        final ParsePosition start;
+        final int elements;
+        final List<Value> triples = new ArrayList<Value>();
+        Exception error;
+
+        Part(ParsePosition start, int elements) {
+            this.start = start;
+            this.elements = elements;
+        }
+
+        @Override
+        public void startDocument(URIRef headResource, Collection<String> namespaces) {
+        }
+
+        @Override
+        public void triple(Resource subject, URIRef property, Value object) {
+            triples.add(subject);
+            triples.add(property);
+            triples.add(object);
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        void addTriples() {
+            for (int i = 0; i < triples.size(); i += 3) {
+                ((Resource) triples.get(i)).addTriple((URIRef) triples.get(i + 1), triples.get(i + 2));
+            }
+            triples.clear();
+        }
+    }
+}
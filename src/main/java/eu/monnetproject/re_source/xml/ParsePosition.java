@@ -0,0 +1,163 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The state of the converter at the start of an element, from which the
+ * conversion of a document can be continued
+ *
+ * @author John McCrae
+ */
+final class ParsePosition {
+
+    private static final int VERSION = 1;
+    /**
+     * The offset of the element in the document
+     */
+    final long offset;
+    /**
+     * The number of elements before this element
+     */
+    final int ordinal;
+    /**
+     * The number of the next generated node id
+     */
+    final int nodeId;
+    /**
+     * The names and node ids of the ancestors of the element, from the root
+     */
+    final String[] names, ids;
+    /**
+     * The number of children so far of the document and of each ancestor
+     */
+    final int[] children;
+
+    ParsePosition(long offset, int ordinal, int nodeId, String[] names, String[] ids, int[] children) {
+        assert (names.length == ids.length && children.length == names.length + 1);
+        this.offset = offset;
+        this.ordinal = ordinal;
+        this.nodeId = nodeId;
+        this.names = names;
+        this.ids = ids;
+        this.children = children;
+    }
+
+    /**
+     * A copy of this position at a given offset
+     */
+    ParsePosition at(long offset) {
+        return new ParsePosition(offset, ordinal, nodeId, names, ids, children);
+    }
+
+    /**
+     * Encode this position as a string that can be used in a URL
+     * @param lastModified The version of the document
+     */
+    String encode(long lastModified) {
+        try {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(VERSION);
+            out.writeLong(lastModified);
+            out.writeLong(offset);
+            out.writeInt(ordinal);
+            out.writeInt(nodeId);
+            out.writeInt(names.length);
+            out.writeInt(children[0]);
+            for (int i = 0; i < names.length; i++) {
+                out.writeUTF(names[i]);
+                out.writeUTF(ids[i]);
+                out.writeInt(children[i + 1]);
+            }
+            out.flush();
+            final StringBuilder sb = new StringBuilder(buffer.size() * 2);
+            for (byte b : buffer.toByteArray()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (IOException x) {
+            // Not possible when writing to memory
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Decode a position
+     * @param token The result of {@link #encode(long)}
+     * @param lastModified The current version of the document
+     * @return The position
+     * @throws IllegalArgumentException If the token is not valid or was
+     * created for another version of the document
+     */
+    static ParsePosition decode(String token, long lastModified) {
+        if (token.length() % 2 != 0) {
+            throw new IllegalArgumentException("Bad token");
+        }
+        final byte[] bytes = new byte[token.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int hi = Character.digit(token.charAt(2 * i), 16), lo = Character.digit(token.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("Bad token");
+            }
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readByte() != VERSION || in.readLong() != lastModified) {
+                throw new IllegalArgumentException("Token is out of date");
+            }
+            final long offset = in.readLong();
+            final int ordinal = in.readInt();
+            final int nodeId = in.readInt();
+            final int depth = in.readInt();
+            if (offset < 0 || ordinal < 0 || nodeId < 1 || depth < 0 || depth > bytes.length) {
+                throw new IllegalArgumentException("Bad token");
+            }
+            final String[] names = new String[depth], ids = new String[depth];
+            final int[] children = new int[depth + 1];
+            children[0] = in.readInt();
+            for (int i = 0; i < depth; i++) {
+                names[i] = in.readUTF();
+                // The names are written as tags when continuing
+                if (!names[i].matches("[^\\s<>/&\"'=]+")) {
+                    throw new IllegalArgumentException("Bad token");
+                }
+                ids[i] = in.readUTF();
+                children[i + 1] = in.readInt();
+            }
+            return new ParsePosition(offset, ordinal, nodeId, names, ids, children);
+        } catch (IOException x) {
+            throw new IllegalArgumentException("Bad token");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * A pool of SAX parsers, as creating a parser costs far more than resetting
+ * one. Parsers are created when the pool is empty and dropped when it is
+ * full, so the pool never blocks.
+ *
+ * @author John McCrae
+ */
+final class SAXParserPool {
+
+    private final SAXParserFactory factory = SAXParserFactory.newInstance();
+    private final ConcurrentLinkedQueue<SAXParser> idle = new ConcurrentLinkedQueue<SAXParser>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maxIdle;
+
+    /**
+     * Create a pool
+     * @param maxIdle The largest number of parsers to keep
+     */
+    public SAXParserPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Take a parser from the pool, creating one if there are none free
+     * @return The parser
+     * @throws ParserConfigurationException If a parser could not be created
+     * @throws SAXException If a parser could not be created
+     */
+    public SAXParser take() throws ParserConfigurationException, SAXException {
+        final SAXParser parser = idle.poll();
+        if (parser != null) {
+            idleCount.decrementAndGet();
+            return parser;
+        }
+        // The factory is not thread-safe
+        synchronized (factory) {
+            return factory.newSAXParser();
+        }
+    }
+
+    /**
+     * Return a parser to the pool
+     * @param parser The parser, which must not be used again by the caller
+     */
+    public void release(SAXParser parser) {
+        try {
+            parser.reset();
+        } catch (UnsupportedOperationException x) {
+            // Cannot be reused
+            return;
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(parser);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}
@@ -28,46 +28,73 @@ package eu.monnetproject.re_source.xml;
 
 import eu.monnetproject.re_source.SourceParseException;
 import eu.monnetproject.re_source.rdf.RDFFactory;
-import static eu.monnetproject.re_source.rdf.RDFPrefixes.XSD;
 import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.TripleSink;
 import eu.monnetproject.re_source.rdf.URIRef;
 import eu.monnetproject.re_source.rdf.Value;
 import eu.monnetproject.re_source.servlet.Re_SourceServlet;
+import eu.monnetproject.re_source.util.URLUtils;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 /**
- * A converter from XML to RDF
+ * A converter from XML to RDF. The triples are produced as the document is
+ * parsed, so only the path from the root to the current element is held in
+ * memory unless the whole graph is requested with {@link #toRDF()}. Parsers
+ * are taken from a pool, and the properties and the path are kept so that
+ * little is allocated for each element beyond the triples themselves.
  *
  * @author John McCrae
  */
 public class XML2RDFConverter extends DefaultHandler {
 
-    private final SAXParser saxParser;
+    private static final SAXParserPool parsers = new SAXParserPool(16);
     private final InputSource source;
     private final URIRef headResource;
-    private final String servletPrefix;
-    private final RDFFactory rdfFactory = new RDFFactory();
-    // Stateful variables
-    private Deque<Resource> resources = new LinkedList<Resource>();
-    private Deque<Integer> indexes = new LinkedList<Integer>();
-    private int nodeId = 1;
-    private Set<String> usedIds = new HashSet<String>();
+    private final RDFFactory rdfFactory;
+    // The resource the root element is attached to and the index of the root element
+    private final URIRef root;
+    private final int rootIndex;
+    // Where to continue from and how many elements to convert (-1 for all), for paging
+    private final ParsePosition resumeFrom;
+    private final int maxElements;
+    // The start of the URIs of nodes and properties
+    private final String nodePrefix;
+    private final String ontologyPrefix;
+    private final URIRef valueProperty;
+    private final URIRef indexProperty;
+    private final Map<String, URIRef> properties = new HashMap<String, URIRef>();
+    // Stateful variables: the resources, indexes of the next child and names
+    // of the elements from the root down to the current element
+    private TripleSink sink;
+    private Resource[] resources = new Resource[16];
+    private int[] indexes = new int[16];
+    private String[] names = new String[16];
+    private int depth = 0;
+    // The text since the last tag
+    private final StringBuilder text = new StringBuilder();
+    private boolean blank = true;
+    private final NodeIdAllocator nodeIds;
+    // Whether nodes are made by the factory, which holds on to them
+    private boolean shareNodes;
     private String language = null;
+    private int skipElements = 0;
+    private int elements = 0;
+    private ParsePosition stoppedAt = null;
 
     /**
      * Create a new converter
@@ -81,11 +108,88 @@ public class XML2RDFConverter extends DefaultHandler {
      */
     public XML2RDFConverter(InputSource source, URI uri, String servletPrefix) throws ParserConfigurationException, SAXException {
         assert (uri.getFragment() == null);
-        final SAXParserFactory factory = SAXParserFactory.newInstance();
-        this.saxParser = factory.newSAXParser();
         this.source = source;
+        this.rdfFactory = new RDFFactory();
         this.headResource = rdfFactory.newURIRef(uri);
-        this.servletPrefix = servletPrefix;
+        this.nodePrefix = uri.toString() + "#";
+        this.ontologyPrefix = servletPrefix + Re_SourceServlet.ontologyPath();
+        this.valueProperty = rdfFactory.newProperty(valueProperty());
+        this.indexProperty = rdfFactory.newProperty(indexProperty());
+        this.root = headResource;
+        this.rootIndex = 0;
+        this.nodeIds = new NodeIdAllocator();
+        this.resumeFrom = null;
+        this.maxElements = -1;
+    }
+
+    /**
+     * Create a converter for a single element of a document. The triples
+     * produced are those of the element and its descendants in the conversion
+     * of the whole document, plus the triple linking it to its parent.
+     *
+     * @param fragment The element, as opened by {@link ElementIndex#open(java.net.URL, eu.monnetproject.re_source.xml.ElementIndex.Entry)}
+     * @param uri The base URI of the whole document
+     * @param servletPrefix The URI where this server is published
+     * @param entry The index entry of the element
+     * @throws ParserConfigurationException If the XML parse is not properly
+     * configured
+     * @throws SAXException If an error occurred in setting up the XML parser
+     */
+    public XML2RDFConverter(InputSource fragment, URI uri, String servletPrefix, ElementIndex.Entry entry) throws ParserConfigurationException, SAXException {
+        assert (uri.getFragment() == null);
+        this.source = fragment;
+        this.rdfFactory = new RDFFactory();
+        this.headResource = rdfFactory.newURIRef(uri);
+        this.nodePrefix = uri.toString() + "#";
+        this.ontologyPrefix = servletPrefix + Re_SourceServlet.ontologyPath();
+        this.valueProperty = rdfFactory.newProperty(valueProperty());
+        this.indexProperty = rdfFactory.newProperty(indexProperty());
+        this.root = entry.getParentId() == null ? headResource
+                : rdfFactory.newURIRef(URI.create(nodePrefix + entry.getParentId()));
+        this.rootIndex = entry.getIndex();
+        this.nodeIds = new NodeIdAllocator(entry.getNodeId(), entry.getUsedIds());
+        this.resumeFrom = null;
+        this.maxElements = -1;
+    }
+
+    /**
+     * Create a converter for a page of a document, which stops at the start
+     * of an element once a given number of elements have been converted
+     *
+     * @param source The document from the start, or if continuing, the prolog
+     * followed by the start tags of the ancestors of the element to continue
+     * from and the rest of the document from that element
+     * @param uri The base URI of this document
+     * @param servletPrefix The URI where this server is published
+     * @param resumeFrom The position to continue from or null to start at the
+     * beginning
+     * @param usedIds The ids to be marked as used (see {@link ElementIndex#usedIdsAt(int)})
+     * @param maxElements The maximum number of elements to convert (or -1
+     * for the rest of the document)
+     * @param rdfFactory The factory for the RDF elements, which may be shared
+     * with converters of other parts of the document
+     */
+    XML2RDFConverter(InputSource source, URI uri, String servletPrefix, ParsePosition resumeFrom, List<String> usedIds, int maxElements, RDFFactory rdfFactory) throws ParserConfigurationException, SAXException {
+        assert (uri.getFragment() == null);
+        this.source = source;
+        this.rdfFactory = rdfFactory;
+        this.headResource = rdfFactory.newURIRef(uri);
+        this.nodePrefix = uri.toString() + "#";
+        this.ontologyPrefix = servletPrefix + Re_SourceServlet.ontologyPath();
+        this.valueProperty = rdfFactory.newProperty(valueProperty());
+        this.indexProperty = rdfFactory.newProperty(indexProperty());
+        this.root = headResource;
+        this.resumeFrom = resumeFrom;
+        // The parts of a document are joined by their shared nodes
+        this.shareNodes = true;
+        this.maxElements = maxElements;
+        if (resumeFrom == null) {
+            this.rootIndex = 0;
+            this.nodeIds = new NodeIdAllocator();
+        } else {
+            this.rootIndex = resumeFrom.children[0];
+            this.nodeIds = new NodeIdAllocator(resumeFrom.nodeId, usedIds);
+        }
     }
 
     private void addAttributes(Resource resource, Attributes attributes) {
@@ -96,23 +200,27 @@ public class XML2RDFConverter extends DefaultHandler {
             } else if (attributes.getQName(i).equals("id")) {
                 // ignore
             } else {
-                resource.addTriple(rdfFactory.newURIRef(mkURI(attributes.getURI(i), attributes.getLocalName(i), attributes.getQName(i))), mapLiteral(attributes.getValue(i)));
+                sink.triple(resource, property(attributes.getURI(i), attributes.getLocalName(i), attributes.getQName(i)), mapLiteral(attributes.getValue(i)));
             }
         }
     }
 
-    private URI mkURI(String uri, String localName, String qName) {
-        if (uri == null || uri.equals("")) {
-            return URI.create(servletPrefix + Re_SourceServlet.ontologyPath() + qName);
-        } else {
-            return URI.create(uri + localName);
+    private URIRef property(String uri, String localName, String qName) {
+        final String key = uri == null || uri.equals("") ? qName : uri + localName;
+        URIRef property = properties.get(key);
+        if (property == null) {
+            property = rdfFactory.newProperty(uri == null || uri.equals("") ? ontologyPrefix + qName : key);
+            properties.put(key, property);
         }
+        return property;
     }
 
     private Value mapLiteral(String literal) {
-        if (literal.startsWith("http:") || literal.startsWith("https:") || literal.startsWith("ftp:")) {
+        // Most values are not URIs, so check the characters before paying for an exception
+        if ((literal.startsWith("http:") || literal.startsWith("https:") || literal.startsWith("ftp:"))
+                && URLUtils.hasURICharacters(literal)) {
             try {
-                return rdfFactory.newURIRef(new URL(literal).toURI());
+                return uriRef(new URL(literal).toURI());
             } catch (MalformedURLException x) {
                 return rdfFactory.newLiteral(literal);
             } catch (URISyntaxException x) {
@@ -125,65 +233,184 @@ public class XML2RDFConverter extends DefaultHandler {
 
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-        String id = attributes.getValue("id") == null ? ("n" + nodeId++) : attributes.getValue("id");
-        while(usedIds.contains(id)) {
-            id = ("n" + nodeId++);
+        flushText();
+        if (skipElements > 0) {
+            // The ancestors of the element we continue from, which are already on the stack
+            skipElements--;
+            return;
+        }
+        if (elements == maxElements) {
+            stoppedAt = position();
+            throw new PageFullException();
         }
-        usedIds.add(id);
-        final Resource resource = rdfFactory.newURIRef(URI.create(headResource.getURI().toString() + "#" + id));
-        final URIRef property = rdfFactory.newURIRef(mkURI(uri, localName, qName));
-        resources.peek().addTriple(property, resource);
-        resources.push(resource);
+        elements++;
+        final String id = nodeIds.allocate(attributes.getValue("id"));
+        final Resource resource = node(id);
+        sink.triple(resources[depth], property(uri, localName, qName), resource);
 
         // We add an index property so that the data remains ordered as the original document
-        resource.addTriple(rdfFactory.newURIRef(URI.create(Re_SourceServlet.contextPath() + "/property#index")), rdfFactory.newLiteral("" + indexes.peek(), URI.create(XSD + "integer")));
-        indexes.push(indexes.pop() + 1);
-        indexes.push(0);
+        sink.triple(resource, indexProperty, rdfFactory.newLiteral((long) indexes[depth]));
+        indexes[depth]++;
+        push(resource, 0, qName);
 
         addAttributes(resource, attributes);
     }
 
+    private URIRef node(String id) {
+        return uriRef(URI.create(nodePrefix + id));
+    }
+
+    // Refs are only kept in the factory if a graph is built, so that memory does not grow with the document when streaming
+    private URIRef uriRef(URI uri) {
+        return shareNodes ? rdfFactory.newURIRef(uri) : rdfFactory.newTransientURIRef(uri);
+    }
+
+    // Go down to a new element
+    private void push(Resource resource, int index, String name) {
+        if (depth + 1 == resources.length) {
+            resources = Arrays.copyOf(resources, depth * 2);
+            indexes = Arrays.copyOf(indexes, depth * 2);
+            names = Arrays.copyOf(names, depth * 2);
+        }
+        names[depth] = name;
+        depth++;
+        resources[depth] = resource;
+        indexes[depth] = index;
+    }
+
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
-        resources.pop();
-        indexes.pop();
+        flushText();
+        resources[depth] = null;
+        names[depth - 1] = null;
+        depth--;
+    }
+
+    // The position of the next element (without its offset)
+    private ParsePosition position() {
+        final String[] ancestorNames = Arrays.copyOf(names, depth), ids = new String[depth];
+        final int[] children = Arrays.copyOf(indexes, depth + 1);
+        for (int i = 0; i < depth; i++) {
+            ids[i] = ((URIRef) resources[i + 1]).getURI().toString().substring(nodePrefix.length());
+        }
+        final int ordinal = (resumeFrom == null ? 0 : resumeFrom.ordinal) + elements;
+        return new ParsePosition(-1, ordinal, nodeIds.nextNodeId(), ancestorNames, ids, children);
+    }
+
+    /**
+     * The position of the element the conversion stopped at, or null if the
+     * whole (rest of the) document was converted
+     */
+    ParsePosition stoppedAt() {
+        return stoppedAt;
+    }
+
+    /**
+     * The number of elements converted
+     */
+    int elements() {
+        return elements;
     }
 
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
-        assert (!resources.isEmpty());
-        final String string = new String(ch, start, length);
-        if (string.matches("\\s*")) {
-            return;
+        // The parser may split text into several calls
+        text.append(ch, start, length);
+        for (int i = start; blank && i < start + length; i++) {
+            final char c = ch[i];
+            blank = c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000b';
         }
-        if (language != null) {
-            resources.peek().addTriple(rdfFactory.newURIRef(URI.create(valueProperty())), rdfFactory.newLiteral(string, language));
-        } else {
-            resources.peek().addTriple(rdfFactory.newURIRef(URI.create(valueProperty())), rdfFactory.newLiteral(string));
+    }
+
+    // Convert the text since the last tag
+    private void flushText() {
+        if (!blank) {
+            final String string = text.toString();
+            if (language != null) {
+                sink.triple(resources[depth], valueProperty, rdfFactory.newLiteral(string, language));
+            } else {
+                sink.triple(resources[depth], valueProperty, rdfFactory.newLiteral(string));
+            }
         }
+        text.setLength(0);
+        blank = true;
     }
 
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) throws IOException, SAXException {
+        // Never block on the network for a DTD
+        return CatalogEntityResolver.getInstance().resolveEntity(publicId, systemId);
+    }
 
     /**
      * Get the document as RDF
      *
-     * @return The document as RDF
+     * @return The document as RDF (or the parent of the element if converting
+     * a single element)
      * @throws SourceParseException If the source could not be parsed (for any
      * reason)
      */
     public URIRef toRDF() throws SourceParseException {
+        shareNodes = true;
+        toRDF(new TripleSink() {
+            @Override
+            public void startDocument(URIRef headResource, Collection<String> namespaces) {
+            }
+
+            @Override
+            public void triple(Resource subject, URIRef property, Value object) {
+                subject.addTriple(property, object);
+            }
+
+            @Override
+            public void endDocument() {
+            }
+        });
+        return root;
+    }
+
+    /**
+     * Convert the document, sending the triples to a sink as they are produced
+     *
+     * @param sink The sink
+     * @throws SourceParseException If the source could not be parsed (for any
+     * reason)
+     */
+    public void toRDF(TripleSink sink) throws SourceParseException {
         try {
-            resources.push(headResource);
-            indexes.push(0);
-            saxParser.parse(source, this);
-            return headResource;
+            this.sink = sink;
+            resources[0] = root;
+            indexes[0] = rootIndex;
+            if (resumeFrom != null) {
+                for (int i = 0; i < resumeFrom.names.length; i++) {
+                    push(node(resumeFrom.ids[i]), resumeFrom.children[i + 1], resumeFrom.names[i]);
+                }
+                skipElements = resumeFrom.names.length;
+            }
+            sink.startDocument(root, namespaces());
+            final SAXParser saxParser = parsers.take();
+            try {
+                saxParser.parse(source, this);
+            } catch (PageFullException x) {
+                // Stopped at the end of the page
+            } finally {
+                parsers.release(saxParser);
+            }
+            sink.endDocument();
         } catch (IOException x) {
             throw new SourceParseException(x);
         } catch (SAXException x) {
             throw new SourceParseException(x);
+        } catch (ParserConfigurationException x) {
+            throw new SourceParseException(x);
         }
     }
     
+    // The namespaces of the properties and nodes this converter creates
+    private Collection<String> namespaces() {
+        return Arrays.asList(ontologyPrefix, Re_SourceServlet.contextPath() + "/property#", nodePrefix);
+    }
+
     /**
      * The property that indicates a literal value
      * @return The property's URI as a String
@@ -199,4 +426,14 @@ public class XML2RDFConverter extends DefaultHandler {
     public static String indexProperty() {
         return Re_SourceServlet.contextPath() + "/property#index";
     }
+
+    // For tests
+    RDFFactory factory() {
+        return rdfFactory;
+    }
+
+    private static final class PageFullException extends SAXException {
+
+        private static final long serialVersionUID = 1L;
+    }
 }
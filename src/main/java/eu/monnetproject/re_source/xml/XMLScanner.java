@@ -0,0 +1,321 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A fast scanner that finds the byte offsets of the elements of an XML
+ * document without fully parsing it. Only the names and id attributes of
+ * elements are decoded, and the document is assumed to be well-formed (it
+ * will still be parsed properly when it is converted). Only encodings in which
+ * the XML markup is ASCII, such as UTF-8 and ISO-8859-1, are supported.
+ *
+ * @author John McCrae
+ */
+class XMLScanner {
+
+    /**
+     * Receives the elements found by the scanner
+     */
+    public interface Handler {
+
+        /**
+         * Called at the start tag of an element
+         * @param qName The name of the element
+         * @param id The value of the id attribute or null if none
+         * @param offset The offset of the '&lt;' of the start tag
+         */
+        void startElement(String qName, String id, long offset) throws IOException;
+
+        /**
+         * Called at the end tag of an element (or straight after the start tag
+         * for an empty element)
+         * @param offset The offset just after the '&gt;' of the end tag
+         */
+        void endElement(long offset) throws IOException;
+    }
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._\\-]+)[\"']");
+    private final InputStream in;
+    private final Handler handler;
+    private final byte[] buf = new byte[65536];
+    private final ByteArrayOutputStream token = new ByteArrayOutputStream();
+    private int pos, limit;
+    // Offset of buf[0] in the document
+    private long base;
+    private Charset charset = Charset.forName("UTF-8");
+    private long rootOffset = -1;
+
+    public XMLScanner(InputStream in, Handler handler) {
+        this.in = in;
+        this.handler = handler;
+    }
+
+    /**
+     * Scan the whole document
+     * @throws IOException If the document could not be read, or is not in a
+     * supported encoding
+     */
+    public void scan() throws IOException {
+        readByteOrderMark();
+        int b;
+        while ((b = read()) != -1) {
+            if (b != '<') {
+                continue;
+            }
+            final long start = offset() - 1;
+            b = read();
+            if (b == '?') {
+                processingInstruction();
+            } else if (b == '!') {
+                declaration();
+            } else if (b == '/') {
+                skipTo('>');
+                handler.endElement(offset());
+            } else if (b != -1) {
+                startTag(b, start);
+            }
+        }
+    }
+
+    /**
+     * The offset of the root element, i.e., the length of the prolog
+     */
+    public long rootOffset() {
+        return rootOffset;
+    }
+
+    /**
+     * The encoding of the document
+     */
+    public Charset charset() {
+        return charset;
+    }
+
+    private void readByteOrderMark() throws IOException {
+        fill();
+        if (limit >= 2 && ((buf[0] == (byte) 0xfe && buf[1] == (byte) 0xff) || (buf[0] == (byte) 0xff && buf[1] == (byte) 0xfe)
+                || (buf[0] == 0 && buf[1] == '<') || (buf[0] == '<' && buf[1] == 0))) {
+            throw new IOException("Unsupported encoding (UTF-16)");
+        }
+        if (limit >= 3 && buf[0] == (byte) 0xef && buf[1] == (byte) 0xbb && buf[2] == (byte) 0xbf) {
+            pos = 3;
+        }
+    }
+
+    private void processingInstruction() throws IOException {
+        final boolean declaration = rootOffset < 0;
+        token.reset();
+        int b, last = 0;
+        while ((b = read()) != -1) {
+            if (b == '>' && last == '?') {
+                break;
+            }
+            token.write(b);
+            last = b;
+        }
+        if (declaration) {
+            final String pi = new String(token.toByteArray(), "ISO-8859-1");
+            if (pi.startsWith("xml") && pi.length() > 3 && Character.isWhitespace(pi.charAt(3))) {
+                final Matcher m = ENCODING.matcher(pi);
+                if (m.find()) {
+                    charset = Charset.forName(m.group(1));
+                    if (charset.name().startsWith("UTF-16") || charset.name().startsWith("UTF-32")) {
+                        throw new IOException("Unsupported encoding " + charset);
+                    }
+                }
+            }
+        }
+    }
+
+    // Comments, CDATA sections and the document type declaration
+    private void declaration() throws IOException {
+        int b = read();
+        if (b == '-') {
+            read();
+            skipPast('-', '-', '>');
+        } else if (b == '[') {
+            skipPast(']', ']', '>');
+        } else {
+            int depth = 0, quote = 0;
+            while ((b = read()) != -1) {
+                if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '[') {
+                    depth++;
+                } else if (b == ']') {
+                    depth--;
+                } else if (b == '>' && depth <= 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void startTag(int b, long start) throws IOException {
+        if (rootOffset < 0) {
+            rootOffset = start;
+        }
+        token.reset();
+        while (b != -1 && b != '>' && b != '/' && !isWhitespace(b)) {
+            token.write(b);
+            b = read();
+        }
+        final String qName = decode();
+        String id = null;
+        while (true) {
+            while (isWhitespace(b)) {
+                b = read();
+            }
+            if (b == '>') {
+                handler.startElement(qName, id, start);
+                return;
+            } else if (b == '/') {
+                skipTo('>');
+                handler.startElement(qName, id, start);
+                handler.endElement(offset());
+                return;
+            } else if (b == -1) {
+                return;
+            }
+            token.reset();
+            while (b != -1 && b != '=' && !isWhitespace(b)) {
+                token.write(b);
+                b = read();
+            }
+            final boolean isId = token.size() == 2 && token.toString("ISO-8859-1").equals("id");
+            while (b != -1 && b != '"' && b != '\'') {
+                b = read();
+            }
+            final int quote = b;
+            token.reset();
+            while ((b = read()) != -1 && b != quote) {
+                token.write(b);
+            }
+            if (isId) {
+                id = unescape(decode());
+            }
+            b = read();
+        }
+    }
+
+    private String decode() {
+        return new String(token.toByteArray(), charset);
+    }
+
+    // Attribute value normalization as done by a non-validating parser
+    private static String unescape(String value) {
+        if (value.indexOf('&') < 0 && value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final int semicolon = c == '&' ? value.indexOf(';', i) : -1;
+            if (semicolon > i) {
+                final String entity = value.substring(i + 1, semicolon);
+                i = semicolon;
+                if (entity.equals("lt")) {
+                    sb.append('<');
+                } else if (entity.equals("gt")) {
+                    sb.append('>');
+                } else if (entity.equals("amp")) {
+                    sb.append('&');
+                } else if (entity.equals("quot")) {
+                    sb.append('"');
+                } else if (entity.equals("apos")) {
+                    sb.append('\'');
+                } else if (entity.startsWith("#x")) {
+                    sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                } else if (entity.startsWith("#")) {
+                    sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                } else {
+                    sb.append('&').append(entity).append(';');
+                }
+            } else if (c == '\t' || c == '\n' || c == '\r') {
+                sb.append(' ');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private void skipTo(int c) throws IOException {
+        int b;
+        while ((b = read()) != -1 && b != c) {
+        }
+    }
+
+    private void skipPast(int c1, int c2, int c3) throws IOException {
+        int b, b1 = 0, b2 = 0;
+        while ((b = read()) != -1) {
+            if (b == c3 && b1 == c2 && b2 == c1) {
+                return;
+            }
+            b2 = b1;
+            b1 = b;
+        }
+    }
+
+    // The offset of the next byte to be read
+    private long offset() {
+        return base + pos;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        base += limit;
+        pos = 0;
+        limit = 0;
+        final int n = in.read(buf, 0, buf.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+}
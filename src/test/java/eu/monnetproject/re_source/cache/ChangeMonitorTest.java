@@ -0,0 +1,88 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ChangeMonitorTest {
+
+    public ChangeMonitorTest() {
+    }
+
+    /**
+     * Test of watch method, of class ChangeMonitor.
+     */
+    @Test
+    public void testWatch() throws Exception {
+        System.out.println("watch");
+        final File root = File.createTempFile("data", "");
+        root.delete();
+        final File dir = new File(root, "dir");
+        assertTrue(dir.mkdirs());
+        final BlockingQueue<Set<File>> changes = new LinkedBlockingQueue<Set<File>>();
+        final ChangeMonitor instance = new ChangeMonitor(100);
+        instance.addListener(new ChangeListener() {
+            @Override
+            public void changed(Set<File> files) {
+                changes.add(files);
+            }
+        });
+        instance.watch(root);
+        instance.start();
+        try {
+            final File file = new File(dir, "test.xml");
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write("<a/>".getBytes("UTF-8"));
+            out.close();
+            final Set<File> changed = changes.poll(10, TimeUnit.SECONDS);
+            assertNotNull(changed);
+            assertTrue(changed.contains(file.getAbsoluteFile()));
+            // Directories created after the monitor started are watched too
+            final File dir2 = new File(root, "dir2");
+            assertTrue(dir2.mkdir());
+            assertTrue(changes.poll(10, TimeUnit.SECONDS).contains(dir2.getAbsoluteFile()));
+            final File file2 = new File(dir2, "test2.xml");
+            assertTrue(file2.createNewFile());
+            assertTrue(changes.poll(10, TimeUnit.SECONDS).contains(file2.getAbsoluteFile()));
+            assertTrue(file2.delete() && dir2.delete() && file.delete() && dir.delete());
+        } finally {
+            instance.close();
+            root.delete();
+        }
+    }
+}
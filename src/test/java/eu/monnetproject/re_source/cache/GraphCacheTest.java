@@ -0,0 +1,74 @@
+package eu.monnetproject.re_source.cache;
+
+import eu.monnetproject.re_source.rdf.ColumnarGraph;
+import eu.monnetproject.re_source.rdf.RDFFactory;
+import eu.monnetproject.re_source.rdf.URIRef;
+import java.net.URI;
+import java.net.URL;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class GraphCacheTest {
+
+    public GraphCacheTest() {
+    }
+
+    private ColumnarGraph graph(String uri, int triples) {
+        final RDFFactory factory = new RDFFactory();
+        final URIRef head = factory.newURIRef(URI.create(uri));
+        for (int i = 0; i < triples; i++) {
+            head.addTriple(factory.newURIRef(URI.create("http://example.com/prop")), factory.newLiteral("v" + i));
+        }
+        return ColumnarGraph.fromResource(head);
+    }
+
+    /**
+     * Test of get method, of class GraphCache.
+     */
+    @Test
+    public void testGet() throws Exception {
+        System.out.println("get");
+        final GraphCache instance = new GraphCache(1 << 20);
+        final URL url = new URL("file:/data/test.xml");
+        final URI uri = URI.create("http://example.com/resource/test.xml");
+        final ColumnarGraph g = graph(uri.toString(), 10);
+        instance.put(url, uri, 1000l, g);
+        assertSame(g, instance.get(url, uri, 1000l));
+        assertNull(instance.get(url, URI.create("http://localhost/resource/test.xml"), 1000l));
+        // The resource was modified
+        assertNull(instance.get(url, uri, 2000l));
+        assertNull(instance.get(url, uri, 1000l));
+        assertEquals(1, instance.hits());
+        assertEquals(3, instance.misses());
+    }
+
+    /**
+     * Test of eviction by size, of class GraphCache.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        System.out.println("eviction");
+        final URI uri = URI.create("http://example.com/resource/test.xml");
+        // Room for two graphs of 40 triples but not three
+        final long size = graph(uri.toString(), 40).footprint();
+        final GraphCache instance = new GraphCache(2 * size + size / 2);
+        final URL url1 = new URL("file:/data/test1.xml"), url2 = new URL("file:/data/test2.xml"), url3 = new URL("file:/data/test3.xml");
+        instance.put(url1, uri, 0l, graph(uri.toString(), 40));
+        instance.put(url2, uri, 0l, graph(uri.toString(), 40));
+        // Make url1 most recently used
+        assertNotNull(instance.get(url1, uri, 0l));
+        instance.put(url3, uri, 0l, graph(uri.toString(), 40));
+        assertNotNull(instance.get(url1, uri, 0l));
+        assertNull(instance.get(url2, uri, 0l));
+        assertNotNull(instance.get(url3, uri, 0l));
+        // Too large to cache
+        instance.put(url2, uri, 0l, graph(uri.toString(), 200));
+        assertNull(instance.get(url2, uri, 0l));
+        instance.invalidate(url1);
+        assertNull(instance.get(url1, uri, 0l));
+    }
+}
@@ -0,0 +1,89 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ResponseCacheTest {
+
+    public ResponseCacheTest() {
+    }
+
+    /**
+     * Test of getStale method, of class ResponseCache.
+     */
+    @Test
+    public void testGetStale() {
+        System.out.println("getStale");
+        final ResponseCache instance = new ResponseCache(1000000, true);
+        final String key = ResponseCache.key("/test.xml", "text/turtle", "http://localhost/resource");
+        final long modified = System.currentTimeMillis() - 10000;
+        final CachedResponse old = new CachedResponse("text/turtle", new byte[10], "\"a\"", modified - 60000);
+        instance.put(key, old);
+        assertNull(instance.get(key, modified));
+        // Still there for the stale read
+        assertSame(old, instance.getStale(key, modified, 60000));
+        // Modified too long ago
+        assertNull(instance.getStale(key, modified, 5000));
+        assertNull(instance.getStale(key, 0, 60000));
+        // Current, so not stale
+        assertNull(instance.getStale(key, modified - 60000, 60000));
+        assertEquals(1, instance.staleHits());
+        // Earlier versions are dropped if stale responses are not kept
+        final ResponseCache fresh = new ResponseCache(1000000);
+        fresh.put(key, old);
+        assertNull(fresh.get(key, modified));
+        assertNull(fresh.getStale(key, modified, 60000));
+    }
+
+    /**
+     * Test of putEncodedBody method, of class ResponseCache.
+     */
+    @Test
+    public void testPutEncodedBody() {
+        System.out.println("putEncodedBody");
+        final ResponseCache instance = new ResponseCache(1000000);
+        final String key = ResponseCache.key("/test.xml", "text/turtle", "http://localhost/resource");
+        final long modified = System.currentTimeMillis();
+        instance.put(key, new CachedResponse("text/turtle", new byte[10], "\"a\"", modified));
+        instance.putEncodedBody(key, "\"a\"", "gzip", new byte[5]);
+        instance.putEncodedBody(key, "\"a\"", "deflate", new byte[4]);
+        // Both codings are kept
+        assertEquals(5, instance.get(key, modified).getEncodedBody("gzip").length);
+        assertEquals(4, instance.get(key, modified).getEncodedBody("deflate").length);
+        // A newer response is not replaced by a body of the old one
+        final CachedResponse newer = new CachedResponse("text/turtle", new byte[10], "\"b\"", modified);
+        instance.put(key, newer);
+        instance.putEncodedBody(key, "\"a\"", "gzip", new byte[5]);
+        assertSame(newer, instance.get(key, modified));
+    }
+}
@@ -0,0 +1,169 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.cache;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class SingleFlightTest {
+
+    public SingleFlightTest() {
+    }
+
+    /**
+     * Test of run method, of class SingleFlight.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        final SingleFlight<String, String> instance = new SingleFlight<String, String>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        final Callable<String> call = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "result";
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return instance.run("key", call, 10, TimeUnit.SECONDS);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            final Future<String> second = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return instance.run("key", call, 10, TimeUnit.SECONDS);
+                }
+            });
+            // A third caller gives up
+            try {
+                instance.run("key", call, 10, TimeUnit.MILLISECONDS);
+                fail("Did not time out");
+            } catch (TimeoutException x) {
+                // OK
+            }
+            release.countDown();
+            assertEquals("result", first.get(10, TimeUnit.SECONDS));
+            assertEquals("result", second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+            assertEquals(0, instance.running());
+            // Finished calls are not remembered
+            assertEquals("result", instance.run("key", call, 10, TimeUnit.SECONDS));
+            assertEquals(2, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of run method with a failing call, of class SingleFlight.
+     */
+    @Test
+    public void testRunFailure() throws Exception {
+        System.out.println("run (failure)");
+        final SingleFlight<String, String> instance = new SingleFlight<String, String>();
+        try {
+            instance.run("key", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new IOException("bad");
+                }
+            }, 10, TimeUnit.SECONDS);
+            fail("Failure not reported");
+        } catch (ExecutionException x) {
+            assertTrue(x.getCause() instanceof IOException);
+        }
+        assertEquals(0, instance.running());
+    }
+
+    /**
+     * Test of join method, of class SingleFlight.
+     */
+    @Test
+    public void testJoin() throws Exception {
+        System.out.println("join");
+        final SingleFlight<String, String> instance = new SingleFlight<String, String>();
+        final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1), joined = new CountDownLatch(1);
+        final Callable<String> call = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                return "result";
+            }
+        };
+        final String[] result = new String[1];
+        final SingleFlight.Callback<String> callback = new SingleFlight.Callback<String>() {
+            @Override
+            public void done(String value, Throwable failure) {
+                result[0] = failure == null ? value : failure.toString();
+                joined.countDown();
+            }
+        };
+        assertFalse(instance.join("key", callback));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return instance.run("key", call, 10, TimeUnit.SECONDS);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertFalse(instance.join("other", callback));
+            assertTrue(instance.join("key", callback));
+            release.countDown();
+            assertTrue(joined.await(10, TimeUnit.SECONDS));
+            assertEquals("result", result[0]);
+            assertEquals("result", first.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
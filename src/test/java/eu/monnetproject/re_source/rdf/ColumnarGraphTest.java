@@ -0,0 +1,147 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import eu.monnetproject.re_source.rdf.turtle.TurtleWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ColumnarGraphTest {
+
+    public ColumnarGraphTest() {
+    }
+
+    private URIRef graph(RDFFactory factory) {
+        final URIRef head = factory.newURIRef(URI.create("http://www.example.com/doc"));
+        final URIRef label = factory.newURIRef(URI.create("http://www.example.com/vocab#label"));
+        final URIRef part = factory.newURIRef(URI.create("http://www.example.com/vocab#part"));
+        final BNode node = factory.newBNode("n1");
+        head.addTriple(label, factory.newLiteral("doc", "en"));
+        head.addTriple(label, factory.newLiteral("10", URI.create("http://www.w3.org/2001/XMLSchema#int")));
+        head.addTriple(part, node);
+        node.addTriple(label, factory.newLiteral("node"));
+        // A loop, and a property that is also a subject
+        node.addTriple(part, head);
+        node.addTriple(part, label);
+        label.addTriple(label, factory.newLiteral("label"));
+        // Not reachable from the head
+        factory.newURIRef(URI.create("http://www.example.com/other")).addTriple(label, head);
+        return head;
+    }
+
+    /**
+     * Test of fromResource and toResource methods, of class ColumnarGraph.
+     */
+    @Test
+    public void testToResource() {
+        System.out.println("toResource");
+        final URIRef head = graph(new RDFFactory());
+        final ColumnarGraph instance = ColumnarGraph.fromResource(head);
+        assertEquals(7, instance.size());
+        final URIRef result = instance.toResource(new RDFFactory());
+        assertEquals(head, result);
+        assertEquals(head.getTriples(), result.getTriples());
+        final URIRef part = new RDFFactory().newURIRef(URI.create("http://www.example.com/vocab#part"));
+        final Resource node = (Resource) result.getTriples().get(part).iterator().next();
+        assertEquals(2, node.getTriples().size());
+        assertEquals(2, node.getTriples().get(part).size());
+    }
+
+    /**
+     * Test of fromResources method, of class ColumnarGraph.
+     */
+    @Test
+    public void testFromResources() {
+        System.out.println("fromResources");
+        final RDFFactory factory = new RDFFactory();
+        final URIRef head = graph(factory);
+        final URIRef other = factory.newURIRef(URI.create("http://www.example.com/other"));
+        final ColumnarGraph instance = ColumnarGraph.fromResources(head, Arrays.asList(other, head));
+        assertEquals(8, instance.size());
+        assertEquals(0, instance.start(instance.head()));
+        final StringWriter result = new StringWriter();
+        instance.replay(new TurtleWriter().sink(result));
+        assertTrue(result.toString().contains("<http://www.example.com/other>"));
+    }
+
+    /**
+     * Test of start and end methods, of class ColumnarGraph.
+     */
+    @Test
+    public void testStart() {
+        System.out.println("start");
+        final ColumnarGraph instance = ColumnarGraph.fromResource(graph(new RDFFactory()));
+        final TermDictionary terms = instance.terms();
+        assertEquals(0, instance.start(instance.head()));
+        assertEquals(3, instance.end(instance.head()));
+        int subjects = 0;
+        for (int id = 0; id < terms.size(); id++) {
+            final int start = instance.start(id), end = instance.end(id);
+            for (int i = start; i < end; i++) {
+                assertEquals(id, instance.subject(i));
+            }
+            if (start < end) {
+                subjects++;
+            }
+        }
+        assertEquals(3, subjects);
+        for (int i = 0; i < instance.size(); i++) {
+            final int object = instance.object(i);
+            if (terms.kind(object) == TermDictionary.LANG_LITERAL) {
+                assertEquals("doc", terms.lexicalForm(object));
+                assertEquals("en", terms.lexicalForm(terms.tag(object)));
+            } else if (terms.kind(object) == TermDictionary.TYPED_LITERAL) {
+                assertEquals(TermDictionary.URI, terms.kind(terms.tag(object)));
+                assertEquals("http://www.w3.org/2001/XMLSchema#int", terms.lexicalForm(terms.tag(object)));
+            }
+        }
+    }
+
+    /**
+     * Test of replay method, of class ColumnarGraph.
+     */
+    @Test
+    public void testReplay() {
+        System.out.println("replay");
+        final URIRef head = graph(new RDFFactory());
+        final StringWriter expected = new StringWriter(), result = new StringWriter();
+        final NamespaceRegistry registry = new NamespaceRegistry(10);
+        new TurtleWriter(registry).write(head, expected);
+        ColumnarGraph.fromResource(head).replay(new TurtleWriter(registry).sink(result));
+        // The order of statements may differ
+        assertEquals(new HashSet<String>(Arrays.asList(expected.toString().split("\\s*[.;,]\\s*\n\\s*"))),
+                new HashSet<String>(Arrays.asList(result.toString().split("\\s*[.;,]\\s*\n\\s*"))));
+    }
+}
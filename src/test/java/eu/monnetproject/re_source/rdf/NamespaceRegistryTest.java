@@ -0,0 +1,92 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import eu.monnetproject.re_source.rdf.turtle.TurtleWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class NamespaceRegistryTest {
+
+    public NamespaceRegistryTest() {
+    }
+
+    /**
+     * Test of register method, of class NamespaceRegistry.
+     */
+    @Test
+    public void testRegister() {
+        System.out.println("register");
+        final NamespaceRegistry registry = new NamespaceRegistry(7);
+        assertEquals(4, registry.size());
+        assertEquals("rdf", registry.register(RDFPrefixes.RDF));
+        final int fingerprint = registry.fingerprint();
+        assertTrue(registry.register("ex", "http://www.example.com/ns#"));
+        assertFalse(fingerprint == registry.fingerprint());
+        assertFalse(registry.register("ex2", "http://www.example.com/ns#"));
+        assertFalse(registry.register("ex", "http://www.example.com/other#"));
+        assertFalse(registry.register("1ex", "http://www.example.com/other#"));
+        assertEquals("onto", registry.register("http://www.example.com/onto/"));
+        assertEquals("onto2", registry.register("http://www.example.org/onto#"));
+        // Full
+        assertNull(registry.register("http://www.example.org/more#"));
+        assertEquals("onto", registry.register("http://www.example.com/onto/"));
+        assertArrayEquals(new String[]{"rdf", "rdfs", "owl", "xsd", "ex", "onto", "onto2"},
+                registry.namespaces().keySet().toArray());
+    }
+
+    /**
+     * Test that writers do not register namespaces, so a document is always
+     * written the same way.
+     */
+    @Test
+    public void testWrite() {
+        System.out.println("write");
+        final NamespaceRegistry registry = new NamespaceRegistry(256);
+        final RDFFactory factory = new RDFFactory();
+        final URIRef head = factory.newURIRef(URI.create("http://www.example.com/doc"));
+        head.addTriple(factory.newURIRef(URI.create("http://www.example.com/vocab#label")), factory.newLiteral("doc"));
+        final StringWriter first = new StringWriter();
+        new TurtleWriter(registry).write(head, first);
+        assertTrue(first.toString().contains("<http://www.example.com/doc> <http://www.example.com/vocab#label> \"doc\" ."));
+        assertEquals(4, registry.size());
+        final StringWriter second = new StringWriter();
+        new TurtleWriter(registry).write(head, second);
+        assertEquals(first.toString(), second.toString());
+        registry.register("http://www.example.com/vocab#");
+        final StringWriter third = new StringWriter();
+        new TurtleWriter(registry).write(head, third);
+        assertTrue(third.toString().contains("@prefix vocab: <http://www.example.com/vocab#> ."));
+        assertTrue(third.toString().contains("<http://www.example.com/doc> vocab:label \"doc\" ."));
+    }
+}
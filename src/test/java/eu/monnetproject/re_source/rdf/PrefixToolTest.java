@@ -0,0 +1,87 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import java.net.URI;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class PrefixToolTest {
+
+    public PrefixToolTest() {
+    }
+
+    /**
+     * Test of isValidName method, of class PrefixTool.
+     */
+    @Test
+    public void testIsValidName() {
+        System.out.println("isValidName");
+        for (char c = 0; c < 0xffff; c++) {
+            final String start = String.valueOf(c);
+            final String rest = "a" + c;
+            assertEquals(start, start.matches(PrefixTool.validPrefix), PrefixTool.isValidName(start));
+            assertEquals(rest, rest.matches(PrefixTool.validPrefix), PrefixTool.isValidName(rest));
+        }
+        assertFalse(PrefixTool.isValidName(""));
+    }
+
+    /**
+     * Test of split method, of class PrefixTool.
+     */
+    @Test
+    public void testSplit() {
+        System.out.println("split");
+        final PrefixTool prefixTool = new PrefixTool();
+        final URI uri = URI.create("http://www.example.com/onto/ontology#name");
+        assertArrayEquals(new String[]{"http://www.example.com/onto/ontology#name"}, prefixTool.split(uri));
+        prefixTool.addNamespace("http://www.example.com/onto/ontology#");
+        assertArrayEquals(new String[]{"ontology", "name"}, prefixTool.split(uri));
+        prefixTool.addNamespace("http://www.example.com/onto/ont#");
+        assertArrayEquals(new String[]{"ont", "y"}, prefixTool.split(URI.create("http://www.example.com/onto/ont#y")));
+        assertArrayEquals(new String[]{"ontology", "z"}, prefixTool.split(URI.create("http://www.example.com/onto/ontology#z")));
+        assertArrayEquals(new String[]{"http://www.example.com/onto/ontology#1z"}, prefixTool.split(URI.create("http://www.example.com/onto/ontology#1z")));
+        assertArrayEquals(new String[]{"xsd", "integer"}, prefixTool.split(URI.create(RDFPrefixes.XSD + "integer")));
+        assertEquals("xsd:integer", prefixTool.toString(new RDFFactory().newURIRef(URI.create(RDFPrefixes.XSD + "integer"))));
+    }
+
+    /**
+     * Test of splitLocal method, of class PrefixTool.
+     */
+    @Test
+    public void testSplitLocal() {
+        System.out.println("splitLocal");
+        assertArrayEquals(new String[]{"http://www.example.com/onto#", "name"}, PrefixTool.splitLocal("http://www.example.com/onto#name"));
+        assertArrayEquals(new String[]{"http://www.example.com/onto/", "name"}, PrefixTool.splitLocal("http://www.example.com/onto/name"));
+        assertArrayEquals(new String[]{"http://www.example.com/onto/1", "a"}, PrefixTool.splitLocal("http://www.example.com/onto/1a"));
+        assertNull(PrefixTool.splitLocal("http://www.example.com/onto/1"));
+    }
+}
@@ -0,0 +1,85 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import eu.monnetproject.re_source.util.EscapingWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class PrimitiveLiteralTest {
+
+    public PrimitiveLiteralTest() {
+    }
+
+    /**
+     * Test of parse method, of class PrimitiveLiteral.
+     */
+    @Test
+    public void testParse() {
+        System.out.println("parse");
+        assertEquals(42l, PrimitiveLiteral.parse("42", PrimitiveLiteral.XSD_INTEGER).longValue());
+        assertSame(PrimitiveLiteral.valueOf(42), PrimitiveLiteral.parse("42", PrimitiveLiteral.XSD_INTEGER));
+        assertEquals(PrimitiveLiteral.XSD_INT, PrimitiveLiteral.parse("-7", URI.create("http://www.w3.org/2001/XMLSchema#int")).getDatatype());
+        assertEquals(0.5, PrimitiveLiteral.parse("0.5", PrimitiveLiteral.XSD_DECIMAL).doubleValue(), 0.0);
+        assertTrue(PrimitiveLiteral.parse("true", PrimitiveLiteral.XSD_BOOLEAN).booleanValue());
+        // Not canonical, so would not be written as read
+        assertNull(PrimitiveLiteral.parse("042", PrimitiveLiteral.XSD_INTEGER));
+        assertNull(PrimitiveLiteral.parse("+1", PrimitiveLiteral.XSD_INTEGER));
+        assertNull(PrimitiveLiteral.parse("0.50", PrimitiveLiteral.XSD_DECIMAL));
+        assertNull(PrimitiveLiteral.parse("1", PrimitiveLiteral.XSD_BOOLEAN));
+        assertNull(PrimitiveLiteral.parse("x", PrimitiveLiteral.XSD_INTEGER));
+        assertNull(PrimitiveLiteral.parse("1", URI.create("http://www.w3.org/2001/XMLSchema#string")));
+        final RDFFactory factory = new RDFFactory();
+        assertEquals("\"042\"^^<http://www.w3.org/2001/XMLSchema#integer>", factory.newLiteral("042", PrimitiveLiteral.XSD_INTEGER).toString());
+        assertEquals("\"12345\"^^<http://www.w3.org/2001/XMLSchema#integer>", factory.newLiteral("12345", PrimitiveLiteral.XSD_INTEGER).toString());
+        assertEquals(factory.newLiteral(12345), factory.newLiteral("12345", PrimitiveLiteral.XSD_INTEGER));
+        assertFalse(factory.newLiteral(12345).equals(factory.newLiteral("12345", PrimitiveLiteral.XSD_LONG)));
+    }
+
+    /**
+     * Test of print method, of class PrimitiveLiteral.
+     */
+    @Test
+    public void testPrint() {
+        System.out.println("print");
+        final long[] values = {0, 9, 10, 1023, 1024, -1, -100, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            final StringWriter sw = new StringWriter();
+            final EscapingWriter out = new EscapingWriter(sw);
+            PrimitiveLiteral.valueOf(value).print(out);
+            out.flush();
+            assertEquals(Long.toString(value), sw.toString());
+            assertEquals(Long.toString(value), PrimitiveLiteral.valueOf(value).getValue());
+        }
+    }
+}
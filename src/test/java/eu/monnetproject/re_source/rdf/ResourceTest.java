@@ -0,0 +1,97 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ResourceTest {
+
+    public ResourceTest() {
+    }
+
+    /**
+     * Test of addTriple method, of class Resource.
+     */
+    @Test
+    public void testAddTriple() {
+        System.out.println("addTriple");
+        final RDFFactory factory = new RDFFactory();
+        final Resource instance = factory.newBNode("n1");
+        final Map<URIRef, Set<Value>> expected = new HashMap<URIRef, Set<Value>>();
+        final Map<URIRef, Set<Value>> view = instance.getTriples();
+        assertTrue(view.isEmpty());
+        // Enough triples that the storage changes part way through
+        for (int i = 0; i < 20; i++) {
+            final URIRef property = factory.newURIRef(URI.create("http://www.example.com/p" + (i % 3)));
+            final Value value = factory.newLiteral("v" + i);
+            if (!expected.containsKey(property)) {
+                expected.put(property, new HashSet<Value>());
+            }
+            expected.get(property).add(value);
+            assertTrue(instance.addTriple(property, value));
+            assertFalse(instance.addTriple(property, factory.newLiteral("v" + i)));
+            assertEquals(expected, instance.getTriples());
+            assertEquals(expected, view);
+            assertEquals(expected.hashCode(), view.hashCode());
+        }
+    }
+
+    /**
+     * Test of removeTriple method, of class Resource.
+     */
+    @Test
+    public void testRemoveTriple() {
+        System.out.println("removeTriple");
+        final RDFFactory factory = new RDFFactory();
+        final Resource instance = factory.newBNode("n1");
+        final URIRef p1 = factory.newURIRef(URI.create("http://www.example.com/p1"));
+        final URIRef p2 = factory.newURIRef(URI.create("http://www.example.com/p2"));
+        instance.addTriple(p1, factory.newLiteral("a"));
+        instance.addTriple(p2, factory.newLiteral("b"));
+        instance.addTriple(p1, factory.newLiteral("c"));
+        final Set<Value> values = instance.getTriples().get(p1);
+        assertEquals(2, values.size());
+        assertEquals(2, instance.getTriples().size());
+        assertFalse(instance.removeTriple(p2, factory.newLiteral("a")));
+        assertTrue(instance.removeTriple(p1, factory.newLiteral("a")));
+        assertEquals(1, values.size());
+        assertTrue(values.contains(factory.newLiteral("c")));
+        assertTrue(instance.removeTriple(p1, factory.newLiteral("c")));
+        assertNull(instance.getTriples().get(p1));
+        assertEquals(1, instance.getTriples().size());
+    }
+}
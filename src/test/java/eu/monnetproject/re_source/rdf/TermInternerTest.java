@@ -0,0 +1,82 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf;
+
+import java.net.URI;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class TermInternerTest {
+
+    public TermInternerTest() {
+    }
+
+    /**
+     * Test of sharing elements between factories, of class TermInterner.
+     */
+    @Test
+    public void testShare() {
+        System.out.println("share");
+        final TermInterner interner = new TermInterner(100, 10);
+        final RDFFactory factory1 = new RDFFactory(interner), factory2 = new RDFFactory(interner);
+        final URIRef p1 = factory1.newProperty("http://www.example.com/vocab#p");
+        final URIRef p2 = factory2.newProperty("http://www.example.com/vocab#p");
+        // Resources hold triples so must not be shared
+        assertNotSame(p1, p2);
+        assertSame(p1.getURI(), p2.getURI());
+        assertSame(p1, factory1.newURIRef(URI.create("http://www.example.com/vocab#p")));
+        assertSame(factory1.newLiteral("short"), factory2.newLiteral("short"));
+        assertNotSame(factory1.newLiteral("a longer value"), factory2.newLiteral("a longer value"));
+        assertEquals(factory1.newLiteral("a longer value"), factory2.newLiteral("a longer value"));
+        final Literal l1 = factory1.newLiteral("2012-01-01", URI.create("http://www.w3.org/2001/XMLSchema#date"));
+        final Literal l2 = factory2.newLiteral("2012-01-02", URI.create("http://www.w3.org/2001/XMLSchema#date"));
+        assertSame(l1.getDatatype(), l2.getDatatype());
+        assertSame(factory1.newLiteral("x", new String("en")).getLanguage(), factory2.newLiteral("a longer value", new String("en")).getLanguage());
+    }
+
+    /**
+     * Test of the bound on the size of the tables, of class TermInterner.
+     */
+    @Test
+    public void testBound() {
+        System.out.println("bound");
+        final TermInterner interner = new TermInterner(10, 10);
+        final String first = interner.language(new String("l0"));
+        assertSame(first, interner.language(new String("l0")));
+        for (int i = 1; i < 10; i++) {
+            interner.language("l" + i);
+        }
+        // The table was cleared when it was full
+        interner.language("l10");
+        assertNotSame(first, interner.language(new String("l0")));
+        assertNull(interner.language(null));
+    }
+}
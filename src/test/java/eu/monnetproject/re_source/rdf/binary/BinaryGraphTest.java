@@ -0,0 +1,136 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.rdf.binary;
+
+import eu.monnetproject.re_source.rdf.RDFFactory;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import static eu.monnetproject.re_source.rdf.binary.BinaryGraphWriter.*;
+import eu.monnetproject.re_source.xml.XML2RDFConverter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.xml.sax.InputSource;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class BinaryGraphTest {
+
+    public BinaryGraphTest() {
+    }
+    private final String SAMPLE_DOC1 = "<?xml version=\"1.0\"?>\n"
+            + "<Lexicon xml:lang=\"en\">\n"
+            + "\t<Entries>\n"
+            + "\t\t<Entry value=\"cat\">Cat été</Entry>\n"
+            + "\t\t<Entry value=\"dog\"/>\n"
+            + "\t</Entries>\n"
+            + "</Lexicon>";
+
+    /**
+     * Test of write and read methods, of classes BinaryGraphWriter and BinaryGraphReader.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        System.out.println("roundTrip");
+        final URI uri = URI.create("http://example.com/servlet/doc1");
+        final URIRef graph = new XML2RDFConverter(new InputSource(new StringReader(SAMPLE_DOC1)), uri, "http://example.com/servlet").toRDF();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryGraphWriter.write(graph, out);
+        final URIRef result = BinaryGraphReader.read(ByteBuffer.wrap(out.toByteArray()), new RDFFactory());
+        assertEquals(graph, result);
+        assertEquals(triples(graph), triples(result));
+    }
+
+    /**
+     * Test of read method on truncated data, of class BinaryGraphReader.
+     */
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        System.out.println("truncated");
+        final RDFFactory factory = new RDFFactory();
+        final URIRef graph = factory.newURIRef(URI.create("http://example.com/servlet/doc1"));
+        graph.addTriple(factory.newURIRef(URI.create("http://example.com/ontology#label")), factory.newLiteral("doc1", "en"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryGraphWriter.write(graph, out);
+        final byte[] data = out.toByteArray();
+        BinaryGraphReader.read(ByteBuffer.wrap(data, 0, data.length - 1), factory);
+    }
+
+    /**
+     * Test of read method on corrupt data, of class BinaryGraphReader.
+     */
+    @Test
+    public void testCorrupt() throws Exception {
+        System.out.println("corrupt");
+        final byte[][] corrupt = {
+            // Too many terms
+            {'R', 'S', 'G', VERSION, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07},
+            // A negative string length
+            {'R', 'S', 'G', VERSION, 1, TERM_URI, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f},
+            // A bad URI
+            {'R', 'S', 'G', VERSION, 1, TERM_URI, 2, ':', ':', 0, 0}
+        };
+        for (byte[] data : corrupt) {
+            try {
+                BinaryGraphReader.read(ByteBuffer.wrap(data), new RDFFactory());
+                fail("Expected an IOException");
+            } catch (IOException x) {
+            }
+        }
+    }
+
+    private static Set<String> triples(Resource head) {
+        final Set<String> triples = new HashSet<String>();
+        final Set<Resource> done = new HashSet<Resource>();
+        final LinkedList<Resource> queue = new LinkedList<Resource>();
+        queue.add(head);
+        done.add(head);
+        while (!queue.isEmpty()) {
+            final Resource resource = queue.poll();
+            for (Map.Entry<URIRef, Set<Value>> e : resource.getTriples().entrySet()) {
+                for (Value value : e.getValue()) {
+                    triples.add(resource + " " + e.getKey() + " " + value);
+                    if (value instanceof Resource && done.add((Resource) value)) {
+                        queue.add((Resource) value);
+                    }
+                }
+            }
+        }
+        return triples;
+    }
+}
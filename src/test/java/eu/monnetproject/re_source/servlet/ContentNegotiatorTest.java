@@ -0,0 +1,68 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ContentNegotiatorTest {
+
+    public ContentNegotiatorTest() {
+    }
+
+    /**
+     * Test of negotiate method, of class ContentNegotiator.
+     */
+    @Test
+    public void testNegotiate() {
+        System.out.println("negotiate");
+        final ContentNegotiator negotiator = new ContentNegotiator(Arrays.asList("application/rdf+xml",
+                "text/turtle", "application/xhtml+xml", "text/html", "text/xml"), Collections.singleton("text/xml"));
+        assertEquals("application/rdf+xml", negotiator.negotiate(null));
+        assertEquals("application/rdf+xml", negotiator.negotiate("*/*"));
+        assertEquals("text/turtle", negotiator.negotiate("text/turtle"));
+        assertEquals("text/html", negotiator.negotiate("text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
+        assertEquals("text/html", negotiator.negotiate("text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
+        assertEquals("application/rdf+xml", negotiator.negotiate("text/turtle;q=0.5, application/rdf+xml"));
+        assertEquals("text/turtle", negotiator.negotiate("text/*, */*;q=0.1"));
+        assertEquals("text/html", negotiator.negotiate("text/*;q=0.5, text/turtle;q=0, text/xml;q=0.2"));
+        assertEquals("text/xml", negotiator.negotiate("text/xml, text/*;q=0.5"));
+        assertEquals("text/turtle", negotiator.negotiate("*/*;q=0.5, application/rdf+xml;q=0, text/turtle;q=0.6"));
+        assertNull(negotiator.negotiate("image/png"));
+        assertNull(negotiator.negotiate("*/*;q=0"));
+        // The parameter name is case-insensitive and malformed values count as 1
+        assertEquals("application/rdf+xml", negotiator.negotiate("text/turtle;Q=0.5, application/rdf+xml"));
+        assertEquals("text/turtle", negotiator.negotiate("text/turtle;q=high, application/rdf+xml;q=0.5"));
+        assertEquals("text/turtle", negotiator.negotiate("text/turtle; q = 2, application/rdf+xml;q=0.5"));
+    }
+}
@@ -0,0 +1,121 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ConversionExecutorTest {
+
+    public ConversionExecutorTest() {
+    }
+
+    /**
+     * Test of submit method, of class ConversionExecutor.
+     */
+    @Test
+    public void testSubmit() throws Exception {
+        System.out.println("submit");
+        final ConversionExecutor instance = new ConversionExecutor(1, 1);
+        final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1), done = new CountDownLatch(2);
+        try {
+            assertTrue(instance.submit(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException x) {
+                    }
+                    done.countDown();
+                }
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(instance.submit(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            }));
+            assertEquals(1, instance.queued());
+            // The thread is busy and the queue is full
+            assertFalse(instance.submit(new Runnable() {
+                @Override
+                public void run() {
+                    fail("Refused task was run");
+                }
+            }));
+            assertTrue(instance.retryAfter() >= 1);
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Test of shutdown method, of class ConversionExecutor.
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        System.out.println("shutdown");
+        final ConversionExecutor instance = new ConversionExecutor(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean refused = new AtomicBoolean();
+        assertTrue(instance.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException x) {
+                }
+            }
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(instance.submit(new ConversionExecutor.Refusable() {
+            @Override
+            public void run() {
+                fail("Queued task was run after shutdown");
+            }
+
+            @Override
+            public void refuse() {
+                refused.set(true);
+            }
+        }));
+        instance.shutdown();
+        assertTrue(refused.get());
+    }
+}
@@ -0,0 +1,63 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.util.EscapingWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class FileListerTest {
+
+    public FileListerTest() {
+    }
+
+    /**
+     * Test of writeFileAsTurtle method, of class FileLister.
+     */
+    @Test
+    public void testWriteFileAsTurtle() {
+        System.out.println("writeFileAsTurtle");
+        final DirectoryListing listing = new DirectoryListing(new String[]{"a.xml", "b.xml", "c/"},
+                new long[]{10, 20, -1}, new long[]{0, 1000, -1});
+        final StringWriter sw = new StringWriter();
+        FileLister.writeFileAsTurtle(new EscapingWriter(sw), listing, 1, 2, "?page=3&limit=1", "/dir/");
+        final List<String> lines = Arrays.asList(sw.toString().split("\n"));
+        assertFalse(lines.contains("</dir/> onto:resource </dir/a.xml> ."));
+        assertTrue(lines.contains("</dir/> onto:resource </dir/b.xml> ."));
+        assertTrue(lines.contains("</dir/b.xml> dcat:byteSize \"20\"^^xsd:nonNegativeInteger ."));
+        assertTrue(lines.contains("</dir/b.xml> dcterms:modified \"1970-01-01T00:00:01Z\"^^xsd:dateTime ."));
+        assertFalse(lines.contains("</dir/> onto:resource </dir/c/> ."));
+        assertTrue(lines.contains("</dir/> hydra:next </dir/?page=3&limit=1> ."));
+    }
+}
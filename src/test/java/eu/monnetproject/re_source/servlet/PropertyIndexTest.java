@@ -0,0 +1,130 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.servlet;
+
+import eu.monnetproject.re_source.Converter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class PropertyIndexTest {
+
+    public PropertyIndexTest() {
+    }
+
+    /**
+     * Test of update method, of class PropertyIndex.
+     */
+    @Test
+    public void testUpdate() throws Exception {
+        System.out.println("update");
+        final File file1 = write(File.createTempFile("doc", ".xml"), "<a><b/></a>");
+        final File file2 = write(File.createTempFile("doc", ".xml"), "<a/>");
+        final File stored = File.createTempFile("properties", ".idx");
+        stored.delete();
+        stored.deleteOnExit();
+        final Map<String, URL> resources = new HashMap<String, URL>();
+        resources.put("/doc1.xml", file1.toURI().toURL());
+        resources.put("/doc2.xml", file2.toURI().toURL());
+        final List<Converter> converters = Collections.<Converter>singletonList(new DefaultConverter());
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final PropertyIndex instance = new PropertyIndex(converters, stored);
+            instance.update(resources, executor);
+            assertEquals(Long.valueOf(2), instance.properties().get(Re_SourceServlet.ontologyPath() + "a"));
+            assertEquals(Long.valueOf(1), instance.properties().get(Re_SourceServlet.ontologyPath() + "b"));
+            // Unchanged files are not converted again
+            final long lastModified = file1.lastModified();
+            write(file1, "<z/>").setLastModified(lastModified);
+            write(file2, "<c/>").setLastModified(lastModified + 2000);
+            instance.update(resources, executor);
+            assertEquals(Long.valueOf(1), instance.properties().get(Re_SourceServlet.ontologyPath() + "a"));
+            assertEquals(Long.valueOf(1), instance.properties().get(Re_SourceServlet.ontologyPath() + "c"));
+            assertNull(instance.properties().get(Re_SourceServlet.ontologyPath() + "z"));
+            // The index is reloaded from the stored file
+            final PropertyIndex loaded = new PropertyIndex(converters, stored);
+            loaded.load();
+            assertEquals(instance.properties(), loaded.properties());
+            resources.remove("/doc2.xml");
+            loaded.update(resources, executor);
+            assertNull(loaded.properties().get(Re_SourceServlet.ontologyPath() + "c"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test of update method with a resource that cannot be indexed, of class PropertyIndex.
+     */
+    @Test
+    public void testUpdateFailure() throws Exception {
+        System.out.println("updateFailure");
+        final File file = write(File.createTempFile("doc", ".xml"), "<a/>");
+        final File missing = File.createTempFile("doc", ".xml");
+        missing.delete();
+        final Map<String, URL> resources = new HashMap<String, URL>();
+        resources.put("/doc.xml", file.toURI().toURL());
+        resources.put("/missing.xml", missing.toURI().toURL());
+        final List<Converter> converters = Collections.<Converter>singletonList(new DefaultConverter());
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final PropertyIndex instance = new PropertyIndex(converters, null);
+            try {
+                instance.update(resources, executor);
+                fail("Expected the missing resource to be reported");
+            } catch (IOException x) {
+                assertEquals("Could not index /missing.xml", x.getMessage());
+            }
+            // The other resources are still indexed
+            assertEquals(Long.valueOf(1), instance.properties().get(Re_SourceServlet.ontologyPath() + "a"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static File write(File file, String content) throws Exception {
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+}
@@ -0,0 +1,52 @@
+package eu.monnetproject.re_source.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class CompressionUtilsTest {
+
+    public CompressionUtilsTest() {
+    }
+
+    /**
+     * Test of chooseEncoding method, of class CompressionUtils.
+     */
+    @Test
+    public void testChooseEncoding() {
+        System.out.println("chooseEncoding");
+        assertNull(CompressionUtils.chooseEncoding(null));
+        assertNull(CompressionUtils.chooseEncoding("identity"));
+        assertEquals("gzip", CompressionUtils.chooseEncoding("gzip, deflate"));
+        assertEquals("gzip", CompressionUtils.chooseEncoding("deflate, x-gzip"));
+        assertEquals("deflate", CompressionUtils.chooseEncoding("gzip;q=0.5, deflate"));
+        assertEquals("deflate", CompressionUtils.chooseEncoding("gzip;q=0, *"));
+        assertEquals("gzip", CompressionUtils.chooseEncoding("*"));
+        assertNull(CompressionUtils.chooseEncoding("*;q=0"));
+        assertEquals("deflate", CompressionUtils.chooseEncoding("gzip;Q=0, deflate"));
+        assertEquals("gzip", CompressionUtils.chooseEncoding("gzip;q=x, deflate;q=0.5"));
+    }
+
+    /**
+     * Test of compress method, of class CompressionUtils.
+     */
+    @Test
+    public void testCompress() throws Exception {
+        System.out.println("compress");
+        final byte[] data = "<rdf:RDF></rdf:RDF><rdf:RDF></rdf:RDF><rdf:RDF></rdf:RDF>".getBytes("UTF-8");
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(CompressionUtils.compress(data, CompressionUtils.GZIP)));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        assertArrayEquals(data, out.toByteArray());
+    }
+}
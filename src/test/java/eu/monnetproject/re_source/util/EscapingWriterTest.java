@@ -0,0 +1,90 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class EscapingWriterTest {
+
+    public EscapingWriterTest() {
+    }
+
+    /**
+     * Test of escapeXML method, of class EscapingWriter.
+     */
+    @Test
+    public void testEscapeXML() {
+        System.out.println("escapeXML");
+        final String plain = "no markup here";
+        assertSame(plain, EscapingWriter.escapeXML(plain));
+        assertEquals("&quot;a&quot; &amp; &lt;b&gt; &apos;c&apos;", EscapingWriter.escapeXML("\"a\" & <b> 'c'"));
+        final StringWriter sw = new StringWriter();
+        new EscapingWriter(sw).printXML("\"a\" & <b> 'c'").flush();
+        assertEquals("&quot;a&quot; &amp; &lt;b&gt; &apos;c&apos;", sw.toString());
+    }
+
+    /**
+     * Test of escapeLiteral method, of class EscapingWriter.
+     */
+    @Test
+    public void testEscapeLiteral() {
+        System.out.println("escapeLiteral");
+        final String plain = "no escapes here";
+        assertSame(plain, EscapingWriter.escapeLiteral(plain));
+        assertEquals("a\\\"b\\\\c\\nd\\re\\tf\\u0001", EscapingWriter.escapeLiteral("a\"b\\c\nd\re\tf\u0001"));
+        final StringWriter sw = new StringWriter();
+        new EscapingWriter(sw).printLiteral("a\"b\\c\nd\re\tf\u0001").flush();
+        assertEquals("a\\\"b\\\\c\\nd\\re\\tf\\u0001", sw.toString());
+    }
+
+    /**
+     * Test of UTF-8 output of class EscapingWriter.
+     */
+    @Test
+    public void testUTF8() throws Exception {
+        System.out.println("UTF8");
+        final StringBuilder sb = new StringBuilder();
+        // Long enough to cross the buffer boundary at every offset
+        for (int i = 0; i < 3000; i++) {
+            sb.append("aé漢😀");
+        }
+        final String text = sb.toString();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final EscapingWriter out = new EscapingWriter(buffer);
+        out.print(text.substring(0, 5)).write(text, 5, text.length() - 5);
+        out.flush();
+        assertFalse(out.checkError());
+        assertArrayEquals(text.getBytes("UTF-8"), buffer.toByteArray());
+    }
+}
@@ -0,0 +1,114 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import eu.monnetproject.re_source.SourceParseException;
+import eu.monnetproject.re_source.rdf.turtle.TurtleWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.xml.sax.InputSource;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class CatalogEntityResolverTest {
+
+    public CatalogEntityResolverTest() {
+    }
+
+    private static final URI DOC = URI.create("http://example.com/servlet/doc1");
+
+    private static String convert(String doc) throws Exception {
+        final StringWriter turtle = new StringWriter();
+        new XML2RDFConverter(new InputSource(new StringReader(doc)), DOC, "http://example.com/servlet").toRDF(new TurtleWriter().sink(turtle));
+        return turtle.toString();
+    }
+
+    private static void write(File file, String content) throws Exception {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Test of loadCatalog method, of class CatalogEntityResolver.
+     */
+    @Test
+    public void testLoadCatalog() throws Exception {
+        System.out.println("loadCatalog");
+        final File dir = File.createTempFile("catalog", "");
+        dir.delete();
+        dir.mkdir();
+        final File dtd = new File(dir, "lexicon.dtd"), catalog = new File(dir, "catalog.xml");
+        try {
+            write(dtd, "<!ENTITY animal \"cat\">");
+            write(catalog, "<catalog xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">\n"
+                    + "  <system systemId=\"http://unreachable.invalid/lexicon.dtd\" uri=\"lexicon.dtd\"/>\n"
+                    + "</catalog>");
+            assertEquals(1, CatalogEntityResolver.getInstance().loadCatalog(catalog.toURI().toURL()));
+        } finally {
+            dtd.delete();
+            catalog.delete();
+            dir.delete();
+        }
+        // The entity was read when the catalog was loaded
+        final String turtle = convert("<!DOCTYPE Lexicon SYSTEM \"http://unreachable.invalid/lexicon.dtd\">\n<Lexicon><Entry>&animal;</Entry></Lexicon>");
+        assertTrue(turtle.contains(":value \"cat\" ."));
+    }
+
+    /**
+     * Test of setPolicy method, of class CatalogEntityResolver.
+     */
+    @Test
+    public void testSetPolicy() throws Exception {
+        System.out.println("setPolicy");
+        final String doc = "<!DOCTYPE Lexicon SYSTEM \"http://unreachable.invalid/other.dtd\">\n<Lexicon><Entry>dog</Entry></Lexicon>";
+        final CatalogEntityResolver instance = CatalogEntityResolver.getInstance();
+        try {
+            instance.setPolicy(CatalogEntityResolver.Policy.IGNORE);
+            assertTrue(convert(doc).contains(":value \"dog\" ."));
+            instance.setPolicy(CatalogEntityResolver.Policy.REJECT);
+            try {
+                convert(doc);
+                fail("Entity not in catalog was read");
+            } catch (SourceParseException x) {
+                // OK
+            }
+        } finally {
+            instance.setPolicy(CatalogEntityResolver.Policy.LOCAL);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import eu.monnetproject.re_source.Page;
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.xml.sax.InputSource;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ElementIndexTest {
+
+    public ElementIndexTest() {
+    }
+    // Includes ids that collide with each other and with generated ids
+    private final String SAMPLE_DOC1 = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!DOCTYPE Lexicon [ <!ENTITY dog \"dog\"> ]>\n"
+            + "<Lexicon id=\"n4\" xml:lang=\"en\">\n"
+            + "\t<!-- <Entry value=\"comment\"/> -->\n"
+            + "\t<Entries>\n"
+            + "\t\t<Entry value=\"cat\" id=\"a\">Café<Form id=\"n5\"/></Entry>\n"
+            + "\t\t<Entry value=\"&dog;\" id=\"a\"><Form id=\"a\"/><![CDATA[<Entry>]]></Entry>\n"
+            + "\t\t<Entry value=\"x > y\" id='n3'><Form/><Form id=\"n11\"/></Entry>\n"
+            + "\t</Entries>\n"
+            + "</Lexicon>";
+
+    /**
+     * Test of build and get methods, of class ElementIndex.
+     */
+    @Test
+    public void testConvertElement() throws Exception {
+        System.out.println("convertElement");
+        final File file = File.createTempFile("doc", ".xml");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(SAMPLE_DOC1.getBytes("UTF-8"));
+        out.close();
+        final URL url = file.toURI().toURL();
+        final URI uri = URI.create("http://example.com/servlet/doc1");
+        final Set<String> all = triples(new XML2RDFConverter(new InputSource(url.openStream()), uri, "http://example.com/servlet").toRDF());
+
+        final ElementIndex index = ElementIndex.build(url, file.lastModified(), null);
+        assertEquals(9, index.size());
+        final ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        index.write(saved);
+        final ElementIndex index2 = ElementIndex.read(new ByteArrayInputStream(saved.toByteArray()));
+        final Set<String> union = new HashSet<String>();
+        for (String id : new String[]{"n4", "n1", "a", "n5", "n2", "n6", "n3", "n7", "n11"}) {
+            final ElementIndex.Entry entry = index2.get(id);
+            assertNotNull(id, entry);
+            final InputStream in = index2.open(url, entry);
+            final Set<String> element = triples(new XML2RDFConverter(new InputSource(in), uri, "http://example.com/servlet", entry).toRDF());
+            in.close();
+            assertTrue(id + " " + element, all.containsAll(element));
+            union.addAll(element);
+        }
+        assertEquals(all, union);
+        assertNull(index.get("n8"));
+    }
+
+    /**
+     * Test of build method with record elements, of class ElementIndex.
+     */
+    @Test
+    public void testRecords() throws Exception {
+        System.out.println("records");
+        final File file = File.createTempFile("doc", ".xml");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(SAMPLE_DOC1.getBytes("UTF-8"));
+        out.close();
+        final Set<String> records = new HashSet<String>();
+        records.add("Entries");
+        final ElementIndex index = ElementIndex.build(file.toURI().toURL(), file.lastModified(), records);
+        // Entries and the elements that kept their id attributes
+        assertNotNull(index.get("n1"));
+        assertNotNull(index.get("n4"));
+        assertNotNull(index.get("a"));
+        assertNull(index.get("n2"));
+        assertEquals(5, index.size());
+    }
+
+    /**
+     * Test of page method, of class DocumentPager.
+     */
+    @Test
+    public void testPages() throws Exception {
+        System.out.println("pages");
+        final File file = File.createTempFile("doc", ".xml");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(SAMPLE_DOC1.getBytes("UTF-8"));
+        out.close();
+        final URL url = file.toURI().toURL();
+        final URI uri = URI.create("http://example.com/servlet/doc1");
+        final Set<String> all = triples(new XML2RDFConverter(new InputSource(url.openStream()), uri, "http://example.com/servlet").toRDF());
+        final ElementIndex index = ElementIndex.build(url, file.lastModified(), Collections.singleton("Entries"));
+        assertEquals(9, index.getElementCount());
+        for (int pageSize = 1; pageSize <= 10; pageSize++) {
+            final DocumentPager pager = new DocumentPager(url, index, pageSize);
+            final Set<String> union = new HashSet<String>();
+            int size = 0, pages = 0;
+            String token = null;
+            do {
+                final Page page = pager.page(uri, "http://example.com/servlet", token);
+                final Set<String> triples = new HashSet<String>();
+                for (Resource resource : page.getResources()) {
+                    triples.addAll(triples(resource));
+                }
+                size += triples.size();
+                union.addAll(triples);
+                token = page.getNext();
+                pages++;
+            } while (token != null);
+            assertEquals(all, union);
+            assertEquals(all.size(), size);
+            assertEquals((9 + pageSize - 1) / pageSize, pages);
+        }
+        final String token = new DocumentPager(url, index, 5).page(uri, "http://example.com/servlet", null).getNext();
+        final ElementIndex changed = ElementIndex.build(url, file.lastModified() + 1000, null);
+        try {
+            new DocumentPager(url, changed, 5).page(uri, "http://example.com/servlet", token);
+            fail("Token of a previous version accepted");
+        } catch (IllegalArgumentException x) {
+        }
+    }
+
+    /**
+     * Test of convert method, of class ParallelConverter.
+     */
+    @Test
+    public void testConvertParallel() throws Exception {
+        System.out.println("convertParallel");
+        final File file = File.createTempFile("doc", ".xml");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(SAMPLE_DOC1.getBytes("UTF-8"));
+        out.close();
+        final URL url = file.toURI().toURL();
+        final URI uri = URI.create("http://example.com/servlet/doc1");
+        final Set<String> all = triples(new XML2RDFConverter(new InputSource(url.openStream()), uri, "http://example.com/servlet").toRDF());
+        final ElementIndex index = ElementIndex.build(url, file.lastModified(), Collections.<String>emptySet());
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int depth = 0; depth <= 3; depth++) {
+                for (int minElements = 1; minElements <= 3; minElements++) {
+                    final URIRef head = new ParallelConverter(url, index, pool, depth, minElements).convert(uri, "http://example.com/servlet");
+                    assertEquals(all, triples(head));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Set<String> triples(Resource head) {
+        final Set<String> triples = new HashSet<String>();
+        final Set<Resource> done = new HashSet<Resource>();
+        final LinkedList<Resource> queue = new LinkedList<Resource>();
+        queue.add(head);
+        done.add(head);
+        while (!queue.isEmpty()) {
+            final Resource resource = queue.poll();
+            for (Map.Entry<URIRef, Set<Value>> e : resource.getTriples().entrySet()) {
+                for (Value value : e.getValue()) {
+                    triples.add(resource + " " + e.getKey() + " " + value);
+                    if (value instanceof Resource && done.add((Resource) value)) {
+                        queue.add((Resource) value);
+                    }
+                }
+            }
+        }
+        return triples;
+    }
+}
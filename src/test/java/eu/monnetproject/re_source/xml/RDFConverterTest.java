@@ -4,11 +4,17 @@
  */
 package eu.monnetproject.re_source.xml;
 
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.TripleSink;
 import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
 import eu.monnetproject.re_source.rdf.turtle.TurtleWriter;
+import eu.monnetproject.re_source.rdf.xml.RDFXMLWriter;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URI;
+import java.util.Collection;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -63,4 +69,68 @@ public class RDFConverterTest {
         assertFalse(result.getTriples().isEmpty());
         new TurtleWriter().write(result, new OutputStreamWriter(System.out));
     }
+
+    /**
+     * Test of toRDF method with a sink, of class RDFConverter.
+     */
+    @Test
+    public void testToRDFStreaming() throws Exception {
+        System.out.println("toRDF(sink)");
+        final URI uri = URI.create("http://example.com/servlet/doc1");
+        final StringWriter turtle = new StringWriter();
+        new XML2RDFConverter(new InputSource(new StringReader(SAMPLE_DOC1)), uri, "http://example.com/servlet").toRDF(new TurtleWriter().sink(turtle));
+        assertTrue(turtle.toString().contains("doc1:n2 ontology:Entry doc1:n4 .\n"));
+        assertTrue(turtle.toString().contains("\tontology:value \"dog\" .\n"));
+        assertTrue(turtle.toString().trim().endsWith("."));
+        final StringWriter rdfXML = new StringWriter();
+        new XML2RDFConverter(new InputSource(new StringReader(SAMPLE_DOC1)), uri, "http://example.com/servlet").toRDF(new RDFXMLWriter().sink(rdfXML));
+        assertTrue(rdfXML.toString().contains("<rdf:Description rdf:about=\"http://example.com/servlet/doc1#n4\">"));
+        assertTrue(rdfXML.toString().trim().endsWith("</rdf:RDF>"));
+    }
+
+    /**
+     * Test of the conversion of text, of class RDFConverter.
+     */
+    @Test
+    public void testText() throws Exception {
+        System.out.println("text");
+        final URI uri = URI.create("http://example.com/servlet/doc1");
+        final StringWriter turtle = new StringWriter();
+        // The parser reports the entity as a separate piece of text
+        new XML2RDFConverter(new InputSource(new StringReader("<Lexicon>\n\t<Entry>cat &amp; dog</Entry>\n</Lexicon>")), uri, "http://example.com/servlet").toRDF(new TurtleWriter().sink(turtle));
+        assertTrue(turtle.toString().contains(":value \"cat & dog\" ."));
+        assertFalse(turtle.toString().contains(":value \"\\n"));
+    }
+
+    /**
+     * Test of the memory used by toRDF with a sink, of class RDFConverter.
+     */
+    @Test
+    public void testToRDFStreamingBounded() throws Exception {
+        System.out.println("toRDF(sink) bounded");
+        final StringBuilder doc = new StringBuilder("<Lexicon>");
+        for (int i = 0; i < 10000; i++) {
+            doc.append("<Entry source=\"http://www.example.com/source/").append(i).append("\">e").append(i).append("</Entry>");
+        }
+        doc.append("</Lexicon>");
+        final XML2RDFConverter instance = new XML2RDFConverter(new InputSource(new StringReader(doc.toString())), URI.create("http://example.com/servlet/doc1"), "http://example.com/servlet");
+        final int[] triples = new int[1];
+        instance.toRDF(new TripleSink() {
+            @Override
+            public void startDocument(URIRef headResource, Collection<String> namespaces) {
+            }
+
+            @Override
+            public void triple(Resource subject, URIRef property, Value object) {
+                triples[0]++;
+            }
+
+            @Override
+            public void endDocument() {
+            }
+        });
+        assertEquals(2 + 10000 * 4, triples[0]);
+        // The factory holds the document and the properties, not the nodes
+        assertTrue(instance.factory().size() < 10);
+    }
 }
@@ -0,0 +1,114 @@
+/**********************************************************************************
+ * Copyright (c) 2011, Monnet Project
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Monnet Project nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE MONNET PROJECT BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *********************************************************************************/
+package eu.monnetproject.re_source.xml;
+
+import eu.monnetproject.re_source.rdf.Resource;
+import eu.monnetproject.re_source.rdf.TripleSink;
+import eu.monnetproject.re_source.rdf.URIRef;
+import eu.monnetproject.re_source.rdf.Value;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.Collection;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures the speed of the conversion in SAX events per second. Run with
+ * the test classpath, e.g., {@code java -cp target/classes:target/test-classes
+ * eu.monnetproject.re_source.xml.XML2RDFConverterBenchmark [entries]}
+ *
+ * @author John McCrae
+ */
+public class XML2RDFConverterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final String doc = document(entries);
+        final long events = countEvents(doc);
+        final URI uri = URI.create("http://example.com/servlet/doc");
+        final TripleSink sink = new NullSink();
+        for (int round = 0; round < 10; round++) {
+            final long start = System.nanoTime();
+            final int runs = 5;
+            for (int i = 0; i < runs; i++) {
+                new XML2RDFConverter(new InputSource(new StringReader(doc)), uri, "http://example.com/servlet").toRDF(sink);
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Round %d: %.0f events/sec", round, events * runs / seconds));
+        }
+    }
+
+    private static String document(int entries) {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\"?>\n<Lexicon language=\"en\">\n");
+        for (int i = 0; i < entries; i++) {
+            sb.append("  <Entry partOfSpeech=\"noun\" source=\"http://www.example.com/source/").append(i).append("\">\n")
+                    .append("    <Lemma writtenForm=\"word").append(i).append("\"/>\n")
+                    .append("    <Sense>\n      <Definition>The meaning of word ").append(i).append(" &amp; its uses</Definition>\n    </Sense>\n")
+                    .append("  </Entry>\n");
+        }
+        return sb.append("</Lexicon>\n").toString();
+    }
+
+    // The number of element and text events in the document
+    private static long countEvents(String doc) throws Exception {
+        final long[] count = new long[1];
+        SAXParserFactory.newInstance().newSAXParser().parse(new InputSource(new StringReader(doc)), new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                count[0]++;
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                count[0]++;
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    private static class NullSink implements TripleSink {
+
+        @Override
+        public void startDocument(URIRef head, Collection<String> namespaces) {
+        }
+
+        @Override
+        public void triple(Resource subject, URIRef property, Value object) {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+    }
+}